@@ -5,9 +5,26 @@
  */
 package cn.raytrend.utopiaframework.core;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,6 +33,12 @@ import cn.raytrend.utopiaframework.core.util.Constants;
 
 /**
  * 一个可以读入 .properites 文件配置的 Constants 静态基类.
+ * <p>
+ * 读入的配置保存在一个不可变的快照中, 并通过一个 volatile 的引用发布, 所以读取配置不需要加锁. 数值等类型的配置只在第一次读取时
+ * 解析, 之后直接返回解析好的值. 调用 {@link #startReloading(long)} 之后会定期检查属性文件的修改时间(只支持位于文件系统中的
+ * 属性文件, 不支持 jar 包中的), 文件被修改时重新读入并原子地替换快照. 注意只有每次都通过 getXXXProperty 读取的配置才能动态
+ * 更新, 比如 {@link Constants#VERSION} 这样的 static final 常量只在类初始化时读取一次.
+ * </p>
  * 
  * @author zhouych
  * @see Constants
@@ -24,43 +47,367 @@ public class ConfigurableConstants {
 
 	protected static Logger logger = LoggerFactory.getLogger(ConfigurableConstants.class);
 
-	protected static Properties properties = new Properties();
+	/**
+	 * 已经读入的属性文件, 按读入的顺序, 后读入的覆盖先读入的
+	 */
+	private static final List<PropertySource> sources = new CopyOnWriteArrayList<PropertySource>();
+	
+	private static volatile Snapshot snapshot = new Snapshot(Collections.<String, String> emptyMap());
+	
+	private static ScheduledExecutorService reloadExecutor;
+	
+	private static ScheduledFuture<?> reloadTask;
 
 	/**
-	 * 静态读入属性文件到 properties 中
+	 * 静态读入属性文件, 同一个文件只会读入一次, 重复调用时直接返回
 	 * 
 	 * @param propertyFileName
 	 *            属性文件名
 	 */
-	protected static void init(String propertyFileName) {
-		InputStream in = null;
-		try {
-			in = ConfigurableConstants.class.getClassLoader().getResourceAsStream(propertyFileName);
-			if (in != null) {
-				properties.load(in);
+	protected static synchronized void init(String propertyFileName) {
+		for (PropertySource source : sources) {
+			if (source.name.equals(propertyFileName)) {
+				return;
 			}
-		} catch (IOException e) {
-			logger.error("load {} into Constants error!", propertyFileName);
-		} finally {
-			if (in != null) {
-				try {
-					in.close();
-				} catch (IOException e) {
-					logger.error("close {} error!", propertyFileName);
+		}
+		URL url = ConfigurableConstants.class.getClassLoader().getResource(propertyFileName);
+		if (url == null) {
+			return;
+		}
+		sources.add(new PropertySource(propertyFileName, url));
+		reload();
+	}
+	
+	/**
+	 * 重新读入所有的属性文件并替换快照. 读入失败的文件保留原来的配置.
+	 */
+	protected static synchronized void reload() {
+		Properties merged = new Properties();
+		for (PropertySource source : sources) {
+			source.load();
+			merged.putAll(source.properties);
+		}
+		Map<String, String> values = new HashMap<String, String>();
+		for (String key : merged.stringPropertyNames()) {
+			values.put(key, merged.getProperty(key));
+		}
+		snapshot = new Snapshot(values);
+	}
+	
+	/**
+	 * 开始定期检查属性文件是否被修改, 被修改时重新读入. 重复调用会使用新的检查周期.
+	 * 
+	 * @param periodMillis
+	 *            检查的周期, 以毫秒为单位
+	 */
+	protected static synchronized void startReloading(long periodMillis) {
+		if (reloadExecutor == null) {
+			reloadExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "ConfigurableConstants-reloader");
+					thread.setDaemon(true);
+					return thread;
 				}
+			});
+		}
+		if (reloadTask != null) {
+			reloadTask.cancel(false);
+		}
+		reloadTask = reloadExecutor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				reloadIfModified();
 			}
+		}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * 停止检查属性文件.
+	 */
+	protected static synchronized void stopReloading() {
+		if (reloadExecutor != null) {
+			reloadExecutor.shutdownNow();
+			reloadExecutor = null;
+			reloadTask = null;
 		}
 	}
 	
+	private static void reloadIfModified() {
+		for (PropertySource source : sources) {
+			if (source.isModified()) {
+				logger.info("{} modified, reload it", source.name);
+				reload();
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * 获取所有属性文件合并后的属性.
+	 * 
+	 * @deprecated 原来的 protected 的 properties 变量已经被移除, 配置保存在不可变的快照中. 这里返回的是当前配置的副本,
+	 *             对其修改不会生效, 之后重新读入的配置也不会反映到副本中. 读取配置请使用 getXXXProperty 方法.
+	 * @return
+	 */
+	@Deprecated
+	protected static Properties getProperties() {
+		Properties copy = new Properties();
+		copy.putAll(snapshot.values);
+		return copy;
+	}
+	
 	/**
-	 * 封装了 {@link Properties} 类的 {@link Properties#getProperty(String, String)}
-	 * 函数，使得 properties 变量对子类透明化.
+	 * 读取字符串类型的配置, 没有配置时返回默认值.
 	 * 
 	 * @param key
 	 * @param defaultValue
 	 * @return
 	 */
 	protected static String getProperty(String key, String defaultValue) {
-		return properties.getProperty(key, defaultValue);
+		String value = snapshot.values.get(key);
+		return value == null ? defaultValue : value;
+	}
+	
+	/**
+	 * 读取 int 类型的配置, 没有配置或者格式不正确时返回默认值.
+	 * 
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 */
+	protected static int getIntProperty(String key, int defaultValue) {
+		Object value = snapshot.getParsed(key, ValueType.INT);
+		return value == null ? defaultValue : ((Integer) value).intValue();
+	}
+	
+	/**
+	 * 读取 long 类型的配置, 没有配置或者格式不正确时返回默认值.
+	 * 
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 */
+	protected static long getLongProperty(String key, long defaultValue) {
+		Object value = snapshot.getParsed(key, ValueType.LONG);
+		return value == null ? defaultValue : ((Long) value).longValue();
+	}
+	
+	/**
+	 * 读取 boolean 类型的配置, 支持 true/yes/on/1 与 false/no/off/0, 没有配置或者格式不正确时返回默认值.
+	 * 
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 */
+	protected static boolean getBooleanProperty(String key, boolean defaultValue) {
+		Object value = snapshot.getParsed(key, ValueType.BOOLEAN);
+		return value == null ? defaultValue : ((Boolean) value).booleanValue();
+	}
+	
+	/**
+	 * 读取时间长度类型的配置, 以毫秒为单位返回. 支持 ms, s, m, h, d 等单位, 比如 "500ms", "30s", "5m", 没有单位时视为
+	 * 毫秒. 没有配置或者格式不正确时返回默认值.
+	 * 
+	 * @param key
+	 * @param defaultMillis
+	 * @return
+	 */
+	protected static long getDurationProperty(String key, long defaultMillis) {
+		Object value = snapshot.getParsed(key, ValueType.DURATION);
+		return value == null ? defaultMillis : ((Long) value).longValue();
+	}
+	
+	/**
+	 * 读取以逗号分隔的列表类型的配置, 每一项都去掉首尾的空白, 忽略空项. 没有配置时返回空的列表. 返回的列表不可修改.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	protected static List<String> getListProperty(String key) {
+		Object value = snapshot.getParsed(key, ValueType.LIST);
+		return value == null ? Collections.<String> emptyList() : (List<String>) value;
+	}
+	
+	/**
+	 * 配置的类型, 负责将字符串解析成相应的值.
+	 */
+	private enum ValueType {
+		
+		INT {
+			@Override
+			Object parse(String value) {
+				return Integer.valueOf(value.trim());
+			}
+		},
+		
+		LONG {
+			@Override
+			Object parse(String value) {
+				return Long.valueOf(value.trim());
+			}
+		},
+		
+		BOOLEAN {
+			@Override
+			Object parse(String value) {
+				String str = value.trim();
+				if ("true".equalsIgnoreCase(str) || "yes".equalsIgnoreCase(str) || "on".equalsIgnoreCase(str)
+						|| "1".equals(str)) {
+					return Boolean.TRUE;
+				}
+				if ("false".equalsIgnoreCase(str) || "no".equalsIgnoreCase(str) || "off".equalsIgnoreCase(str)
+						|| "0".equals(str)) {
+					return Boolean.FALSE;
+				}
+				throw new IllegalArgumentException("not a boolean: " + value);
+			}
+		},
+		
+		DURATION {
+			@Override
+			Object parse(String value) {
+				String str = value.trim().toLowerCase();
+				int end = str.length();
+				while (end > 0 && !Character.isDigit(str.charAt(end - 1))) {
+					end--;
+				}
+				long amount = Long.parseLong(str.substring(0, end).trim());
+				String unit = str.substring(end).trim();
+				long multiplier;
+				if (unit.length() == 0 || "ms".equals(unit)) {
+					multiplier = 1L;
+				} else if ("s".equals(unit)) {
+					multiplier = 1000L;
+				} else if ("m".equals(unit) || "min".equals(unit)) {
+					multiplier = 60 * 1000L;
+				} else if ("h".equals(unit)) {
+					multiplier = 60 * 60 * 1000L;
+				} else if ("d".equals(unit)) {
+					multiplier = 24 * 60 * 60 * 1000L;
+				} else {
+					throw new IllegalArgumentException("unknown duration unit: " + value);
+				}
+				return Long.valueOf(amount * multiplier);
+			}
+		},
+		
+		LIST {
+			@Override
+			Object parse(String value) {
+				List<String> list = new ArrayList<String>();
+				for (String item : value.split(",")) {
+					String str = item.trim();
+					if (str.length() > 0) {
+						list.add(str);
+					}
+				}
+				return Collections.unmodifiableList(list);
+			}
+		};
+		
+		abstract Object parse(String value);
+	}
+	
+	/**
+	 * 某一时刻的全部配置, 创建后不再修改. 解析后的值按类型缓存在快照中, 重新读入配置时随快照一起被替换.
+	 */
+	private static final class Snapshot {
+		
+		/**
+		 * 格式不正确的配置的解析结果
+		 */
+		private static final Object INVALID = new Object();
+		
+		private final Map<String, String> values;
+		
+		private final Map<ValueType, ConcurrentMap<String, Object>> parsed =
+			new EnumMap<ValueType, ConcurrentMap<String, Object>>(ValueType.class);
+		
+		Snapshot(Map<String, String> values) {
+			this.values = values;
+			for (ValueType type : ValueType.values()) {
+				parsed.put(type, new ConcurrentHashMap<String, Object>());
+			}
+		}
+		
+		/**
+		 * 获取解析后的值, 没有配置或者格式不正确时返回 null.
+		 */
+		Object getParsed(String key, ValueType type) {
+			ConcurrentMap<String, Object> cache = parsed.get(type);
+			Object value = cache.get(key);
+			if (value == null) {
+				String str = values.get(key);
+				if (str == null) {
+					return null;
+				}
+				try {
+					value = type.parse(str);
+				} catch (RuntimeException e) {
+					logger.warn("invalid {} value for {}: {}", new Object[] {type, key, str});
+					value = INVALID;
+				}
+				cache.put(key, value);
+			}
+			return value == INVALID ? null : value;
+		}
+	}
+	
+	/**
+	 * 一个属性文件, 位于文件系统中时记录其修改时间.
+	 */
+	private static final class PropertySource {
+		
+		private final String name;
+		
+		private final URL url;
+		
+		private final File file;
+		
+		private volatile long lastModified;
+		
+		private volatile Properties properties = new Properties();
+		
+		PropertySource(String name, URL url) {
+			this.name = name;
+			this.url = url;
+			File f = null;
+			if ("file".equals(url.getProtocol())) {
+				try {
+					f = new File(url.toURI());
+				} catch (URISyntaxException e) {
+					f = new File(url.getPath());
+				}
+			}
+			this.file = f;
+		}
+		
+		boolean isModified() {
+			return file != null && file.lastModified() != lastModified;
+		}
+		
+		void load() {
+			long modified = file == null ? 0L : file.lastModified();
+			InputStream in = null;
+			try {
+				in = url.openStream();
+				Properties loaded = new Properties();
+				loaded.load(in);
+				properties = loaded;
+			} catch (IOException e) {
+				logger.error("load {} into Constants error!", name);
+			} finally {
+				lastModified = modified;
+				if (in != null) {
+					try {
+						in.close();
+					} catch (IOException e) {
+						logger.error("close {} error!", name);
+					}
+				}
+			}
+		}
 	}
 }
@@ -61,6 +61,10 @@ public class PropertyFilter {
 		}
 	}
 	
+	private static final MatchType[] MATCH_TYPES = MatchType.values();
+	
+	private static final PropertyType[] PROPERTY_TYPES = PropertyType.values();
+	
 	/**
 	 * 比较类型
 	 */
@@ -90,30 +94,51 @@ public class PropertyFilter {
 	 *            待比较的值, 比如如果是 Boolean 类型可以为 "true", Date 类型可以为 "2011-07-28"
 	 */
 	public PropertyFilter(String filterName, String value) {
+		this(filterName, 0, value);
+	}
+	
+	/**
+	 * 构造方法, 从 parameterName 的 offset 处开始解析比较属性字符串, 这样可以直接使用带前缀的请求参数名, 不需要先截取出
+	 * filterName. 比较类型和属性值类型直接在原字符串上比较, 不会产生中间字符串.
+	 * 
+	 * @param parameterName
+	 *            带前缀的比较属性字符串, 比如: filter_LIKE_S_NAME_OR_LOGIN_NAME
+	 * @param offset
+	 *            比较属性字符串的起始位置, 比如上例中为前缀 filter_ 的长度
+	 * @param value
+	 *            待比较的值
+	 */
+	public PropertyFilter(String parameterName, int offset, String value) {
 		/*
-		 * 假设当前的 filterName 是 LIKE_S_NAME_OR_LOGIN_NAME, 则:
-		 * 1) matchTypeStr		= LIKE
-		 * 2) propertyTypeStr	= S
-		 * 3) propertyNameStr	= NAME_OR_LOGIN_NAME
-		 * 4) propertyNames[]	= [NAME, LOGIN_NAME]
+		 * 假设当前的比较属性字符串是 LIKE_S_NAME_OR_LOGIN_NAME, 则:
+		 * 1) matchType		= LIKE
+		 * 2) propertyType	= S
+		 * 3) propertyNames[]	= [NAME, LOGIN_NAME]
 		 */
-		String matchTypeStr = StringUtils.substringBefore(filterName, "_");
-		try {
-			this.matchType = Enum.valueOf(MatchType.class, matchTypeStr);
-		} catch (RuntimeException e) {
-			throw new IllegalArgumentException("PropertyFilter - " + filterName
-					+ " does not write as rule, so can not get the property match type." + e);
+		int matchTypeEnd = indexOfSeparator(parameterName, offset);
+		this.matchType = matchEnum(MATCH_TYPES, parameterName, offset, matchTypeEnd);
+		if (this.matchType == null) {
+			throw new IllegalArgumentException("PropertyFilter - " + parameterName.substring(offset)
+					+ " does not write as rule, so can not get the property match type.");
+		}
+		int propertyTypeStart = Math.min(matchTypeEnd + 1, parameterName.length());
+		int propertyTypeEnd = indexOfSeparator(parameterName, propertyTypeStart);
+		PropertyType propertyType = matchEnum(PROPERTY_TYPES, parameterName, propertyTypeStart, propertyTypeEnd);
+		if (propertyType == null) {
+			throw new IllegalArgumentException("PropertyFilter - " + parameterName.substring(offset)
+					+ " does not write as rule, so can not get the property value type.");
 		}
-		String excludeMatchTypeStr = StringUtils.substringAfter(filterName, "_");
-		String propertyTypeStr = StringUtils.substringBefore(excludeMatchTypeStr, "_");
-		try {
-			this.propertyClass = Enum.valueOf(PropertyType.class, propertyTypeStr).getValue();
-		} catch (RuntimeException e) {
-			throw new IllegalArgumentException("PropertyFilter - " + filterName
-					+ " does not write as rule, so can not get the property value type." + e);
+		this.propertyClass = propertyType.getValue();
+		int propertyNameStart = Math.min(propertyTypeEnd + 1, parameterName.length());
+		if (propertyNameStart == parameterName.length()) {
+			this.propertyNames = new String[0];
+		} else if (parameterName.indexOf(PropertyFilter.OR_SEPARATOR, propertyNameStart) == -1) {
+			// 只有一个比较属性时不需要再分割
+			this.propertyNames = new String[] { parameterName.substring(propertyNameStart) };
+		} else {
+			this.propertyNames = StringUtils.splitByWholeSeparator(parameterName.substring(propertyNameStart),
+					PropertyFilter.OR_SEPARATOR);
 		}
-		String propertyNameStr = StringUtils.substringAfter(excludeMatchTypeStr, "_");
-		this.propertyNames = StringUtils.splitByWholeSeparator(propertyNameStr, PropertyFilter.OR_SEPARATOR);
 		this.matchValue = ConvertUtil.convertStringToObject(value, this.propertyClass);
 	}
 	
@@ -154,4 +179,26 @@ public class PropertyFilter {
 	public String[] getPropertyNames() {
 		return propertyNames;
 	}
+
+	/**
+	 * 获取从 start 开始的下一个 '_' 的位置, 没有时返回字符串的长度.
+	 */
+	private static int indexOfSeparator(String str, int start) {
+		int index = str.indexOf('_', start);
+		return index == -1 ? str.length() : index;
+	}
+	
+	/**
+	 * 在不截取字符串的情况下查找名称与 str 中 [start, end) 区间相同的枚举值, 没有时返回 null.
+	 */
+	private static <E extends Enum<E>> E matchEnum(E[] constants, String str, int start, int end) {
+		int length = end - start;
+		for (E constant : constants) {
+			String name = constant.name();
+			if (name.length() == length && str.regionMatches(start, name, 0, length)) {
+				return constant;
+			}
+		}
+		return null;
+	}
 }
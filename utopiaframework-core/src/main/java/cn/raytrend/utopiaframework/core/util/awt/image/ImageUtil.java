@@ -7,9 +7,7 @@ package cn.raytrend.utopiaframework.core.util.awt.image;
 
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Iterator;
 
@@ -21,7 +19,8 @@ import javax.imageio.stream.ImageInputStream;
 import cn.raytrend.utopiaframework.core.util.lang.StringUtil;
 
 /**
- * 负责对图片进行处理的工具类, 包括裁减图片等功能, 可以应用在上传图片后对图片进行切割等场合.
+ * 负责对图片进行处理的工具类, 包括裁减图片等功能, 可以应用在上传图片后对图片进行切割等场合. 生成缩略图请使用
+ * {@link ThumbnailService}.
  * 
  * @author zhouych
  */
@@ -47,13 +46,25 @@ public class ImageUtil {
 	public static void createPreviewImage(String srcImage, String destImage, int x, int y, int width, int height)
 			throws IOException {
 
-		// 在内存中生成待处理的图像
-		BufferedImage srcBuffImage = ImageIO.read(new BufferedInputStream(new FileInputStream(srcImage)));
-
-		if (srcBuffImage != null) {
-			
-			int max_width = srcBuffImage.getWidth();	// 图片的宽度
-			int max_height = srcBuffImage.getHeight();	// 图片的高度
+		// 获取图像的后缀名，如jpg、jpeg、bmp、png或gif等
+		String formatName = StringUtil.getFileExtension(srcImage);
+		// 返回相应后缀名的图像解码器
+		Iterator<ImageReader> ite = ImageIO.getImageReadersByFormatName(formatName);
+		if (!ite.hasNext()) {
+			return;
+		}
+		ImageReader reader = ite.next();
+		// 获取当前图像文件的图像流, 只打开一次, 也不需要在内存中解码出整张图片
+		ImageInputStream iis = ImageIO.createImageInputStream(new File(srcImage));
+		if (iis == null) {
+			return;
+		}
+		try {
+			// 使用该图像解码器来处理该图像流
+			reader.setInput(iis, true, true);
+			// 图片的宽度和高度直接从文件头中读取
+			int max_width = reader.getWidth(0);
+			int max_height = reader.getHeight(0);
 			if (x < 0 || x > max_width) {
 				x = 0;
 			}
@@ -66,27 +77,18 @@ public class ImageUtil {
 			if (height < 0 || height > max_height) {
 				height = max_height;
 			}
-			// 构造图片的裁减区域
+			// 构造图片的裁减区域, 只解码该区域
 			Rectangle rectangle = new Rectangle(x, y, width, height);
-			// 获取图像的后缀名，如jpg、jpeg、bmp、png或gif等
-			String formatName = StringUtil.getFileExtension(srcImage);
-			// 返回相应后缀名的图像解码器
-			Iterator<ImageReader> ite = ImageIO.getImageReadersByFormatName(formatName);
-			ImageReader reader = ite.next();
-			// 获取当前图像文件的图像流
-			ImageInputStream iis = ImageIO.createImageInputStream(new FileInputStream(srcImage));
-			// 使用该图像解码器来处理该图像流
-			reader.setInput(iis, true);
 			ImageReadParam param = reader.getDefaultReadParam();
 			param.setSourceRegion(rectangle);
 			// 获取到的目标
 			BufferedImage destBuffImage = reader.read(0, param);
 			// 保存新图片
 			ImageIO.write(destBuffImage, formatName, new File(destImage));
+		} finally {
 			// 最后关闭文件流
-			if (iis != null) {
-				iis.close();
-			}
+			reader.dispose();
+			iis.close();
 		}
 	}
 }
@@ -0,0 +1,351 @@
+/*
+ * ThumbnailService.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.core.util.awt.image;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cn.raytrend.utopiaframework.core.util.codec.DigestUtil;
+
+/**
+ * 生成缩略图的服务, 适合在上传图片后异步生成各种尺寸的缩略图.
+ * <ul>
+ *     <li>1) 解码时使用 {@link ImageReadParam#setSourceSubsampling} 按比例跳过像素, 不会在内存中解码出整张原图.</li>
+ *     <li>2) 在线程数和队列长度都有限的线程池中生成, 队列满了的时候抛出 {@link RejectedExecutionException}, 由调用者决定是否
+ *     稍后重试, 不会占用处理请求的线程.</li>
+ *     <li>3) 生成的缩略图以原图内容的 SHA-1 和尺寸为 key 缓存在磁盘上, 同一张图片的同一尺寸只生成一次, 同时对同一 key 的多个
+ *     请求也只生成一次.</li>
+ * </ul>
+ * 缓存文件的路径为: cacheDir/SHA-1 的前两位/SHA-1-宽x高.格式, 其中格式为 png(原图为 png 或 gif)或者 jpg.
+ * 
+ * @author zhouych
+ * @see ImageUtil
+ */
+public class ThumbnailService {
+	
+	private static final Logger logger = LoggerFactory.getLogger(ThumbnailService.class);
+	
+	/**
+	 * 最多记住多少个原图的 SHA-1, 超过之后清空重新计算
+	 */
+	private static final int MAX_HASH_ENTRIES = 10000;
+	
+	private final File cacheDir;
+	
+	private final ThreadPoolExecutor executor;
+	
+	/**
+	 * 正在生成的缩略图, key 为缓存文件的路径
+	 */
+	private final ConcurrentMap<String, Future<File>> pending = new ConcurrentHashMap<String, Future<File>>();
+	
+	/**
+	 * 原图的 SHA-1, key 为原图的路径, 原图的长度或者修改时间变化后重新计算
+	 */
+	private final ConcurrentMap<String, SourceHash> hashes = new ConcurrentHashMap<String, SourceHash>();
+	
+	/**
+	 * @param cacheDir
+	 *            缓存缩略图的目录
+	 * @param threads
+	 *            生成缩略图的线程数
+	 * @param queueCapacity
+	 *            等待生成的缩略图的最大个数, 超过则拒绝
+	 */
+	public ThumbnailService(File cacheDir, int threads, int queueCapacity) {
+		if (threads <= 0 || queueCapacity <= 0) {
+			throw new IllegalArgumentException("threads and queueCapacity must be positive");
+		}
+		if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+			throw new IllegalArgumentException("cannot create cache directory: " + cacheDir);
+		}
+		this.cacheDir = cacheDir;
+		this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+			
+			private final AtomicInteger count = new AtomicInteger();
+			
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "ThumbnailService-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * 提交生成缩略图的请求, 缩略图保持原图的宽高比, 并且宽高都不超过 maxWidth 和 maxHeight, 原图更小时不放大. 已经缓存的
+	 * 缩略图直接返回, 不会进入队列.
+	 * 
+	 * @param source
+	 *            原图
+	 * @param maxWidth
+	 * @param maxHeight
+	 * @return 缓存的缩略图文件
+	 * @throws IOException
+	 *             读取原图失败
+	 * @throws RejectedExecutionException
+	 *             队列已满
+	 */
+	public Future<File> submit(final File source, final int maxWidth, final int maxHeight) throws IOException {
+		if (maxWidth <= 0 || maxHeight <= 0) {
+			throw new IllegalArgumentException("maxWidth and maxHeight must be positive");
+		}
+		String hash = getSourceHash(source);
+		File dir = new File(cacheDir, hash.substring(0, 2));
+		String baseName = hash + "-" + maxWidth + "x" + maxHeight;
+		for (String format : new String[] {"jpg", "png"}) {
+			File cached = new File(dir, baseName + "." + format);
+			if (cached.isFile()) {
+				return new CompletedFuture(cached);
+			}
+		}
+		
+		final String key = new File(dir, baseName).getPath();
+		final File targetDir = dir;
+		final String targetName = baseName;
+		FutureTask<File> task = new FutureTask<File>(new Callable<File>() {
+			@Override
+			public File call() throws IOException {
+				try {
+					return createThumbnail(source, targetDir, targetName, maxWidth, maxHeight);
+				} finally {
+					pending.remove(key);
+				}
+			}
+		});
+		Future<File> existing = pending.putIfAbsent(key, task);
+		if (existing != null) {
+			return existing;
+		}
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			pending.remove(key);
+			throw e;
+		}
+		return task;
+	}
+	
+	/**
+	 * 生成缩略图并等待, 最多等待 timeoutMillis 毫秒.
+	 * 
+	 * @param source
+	 * @param maxWidth
+	 * @param maxHeight
+	 * @param timeoutMillis
+	 * @return 缓存的缩略图文件
+	 * @throws IOException
+	 *             读取原图或者生成缩略图失败, 以及等待超时
+	 * @throws RejectedExecutionException
+	 *             队列已满
+	 */
+	public File getThumbnail(File source, int maxWidth, int maxHeight, long timeoutMillis) throws IOException {
+		Future<File> future = submit(source, maxWidth, maxHeight);
+		try {
+			return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			throw new IOException("thumbnail of " + source + " not ready after " + timeoutMillis + "ms");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while creating thumbnail of " + source);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new RuntimeException("Unexpected Checked Exception.", e.getCause());
+		}
+	}
+	
+	/**
+	 * @return 等待生成的缩略图个数
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+	
+	/**
+	 * 关闭生成缩略图的线程池.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+	
+	private String getSourceHash(File source) throws IOException {
+		String path = source.getAbsolutePath();
+		long length = source.length();
+		long lastModified = source.lastModified();
+		SourceHash sourceHash = hashes.get(path);
+		if (sourceHash != null && sourceHash.length == length && sourceHash.lastModified == lastModified) {
+			return sourceHash.hash;
+		}
+		String hash = DigestUtil.digestFileToHex(source, DigestUtil.SHA1);
+		if (hashes.size() >= MAX_HASH_ENTRIES) {
+			hashes.clear();
+		}
+		hashes.put(path, new SourceHash(length, lastModified, hash));
+		return hash;
+	}
+	
+	/**
+	 * 解码原图并生成缩略图, 先写入临时文件再改名, 其他线程不会读到写了一半的文件.
+	 */
+	private static File createThumbnail(File source, File dir, String baseName, int maxWidth, int maxHeight)
+			throws IOException {
+		
+		ImageInputStream iis = ImageIO.createImageInputStream(source);
+		if (iis == null) {
+			throw new IOException("cannot open image: " + source);
+		}
+		ImageReader reader = null;
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+			if (!readers.hasNext()) {
+				throw new IOException("unsupported image format: " + source);
+			}
+			reader = readers.next();
+			reader.setInput(iis, true, true);
+			String format = reader.getFormatName().toLowerCase();
+			format = "png".equals(format) || "gif".equals(format) ? "png" : "jpg";
+			
+			int width = reader.getWidth(0);
+			int height = reader.getHeight(0);
+			double scale = Math.min(1d, Math.min((double) maxWidth / width, (double) maxHeight / height));
+			int targetWidth = Math.max(1, (int) Math.round(width * scale));
+			int targetHeight = Math.max(1, (int) Math.round(height * scale));
+			
+			// 按整数倍跳过像素解码, 解码后的图片仍然不小于目标尺寸, 剩下的部分再做平滑缩放
+			int subsampling = Math.max(1, Math.min(width / targetWidth, height / targetHeight));
+			ImageReadParam param = reader.getDefaultReadParam();
+			param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+			BufferedImage decoded = reader.read(0, param);
+			
+			BufferedImage thumbnail = resize(decoded, targetWidth, targetHeight, "png".equals(format));
+			if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+				throw new IOException("cannot create directory: " + dir);
+			}
+			File target = new File(dir, baseName + "." + format);
+			File temp = File.createTempFile(baseName, ".tmp", dir);
+			try {
+				if (!ImageIO.write(thumbnail, format, temp)) {
+					throw new IOException("no writer for format: " + format);
+				}
+				if (!temp.renameTo(target) && !target.isFile()) {
+					throw new IOException("cannot rename " + temp + " to " + target);
+				}
+			} finally {
+				if (temp.exists() && !temp.delete()) {
+					logger.warn("cannot delete temp file {}", temp);
+				}
+			}
+			return target;
+		} finally {
+			if (reader != null) {
+				reader.dispose();
+			}
+			iis.close();
+		}
+	}
+	
+	private static BufferedImage resize(BufferedImage image, int width, int height, boolean alpha) {
+		if (image.getWidth() == width && image.getHeight() == height
+				&& image.getType() == (alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB)) {
+			return image;
+		}
+		BufferedImage result = new BufferedImage(width, height,
+				alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = result.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g.drawImage(image, 0, 0, width, height, null);
+		} finally {
+			g.dispose();
+		}
+		return result;
+	}
+	
+	/**
+	 * 原图的 SHA-1 以及计算时原图的长度和修改时间.
+	 */
+	private static final class SourceHash {
+		
+		final long length;
+		
+		final long lastModified;
+		
+		final String hash;
+		
+		SourceHash(long length, long lastModified, String hash) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.hash = hash;
+		}
+	}
+	
+	/**
+	 * 已经完成的 {@link Future}, 用于已经缓存的缩略图.
+	 */
+	private static final class CompletedFuture implements Future<File> {
+		
+		private final File file;
+		
+		CompletedFuture(File file) {
+			this.file = file;
+		}
+		
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return false;
+		}
+		
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+		
+		@Override
+		public boolean isDone() {
+			return true;
+		}
+		
+		@Override
+		public File get() {
+			return file;
+		}
+		
+		@Override
+		public File get(long timeout, TimeUnit unit) {
+			return file;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * ThumbnailUploadProcessor.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.core.util.awt.image;
+
+import java.io.IOException;
+
+import cn.raytrend.utopiaframework.core.util.io.UploadJob;
+import cn.raytrend.utopiaframework.core.util.io.UploadJobQueue;
+import cn.raytrend.utopiaframework.core.util.io.UploadProcessor;
+
+/**
+ * 在 {@link UploadJobQueue} 中为上传的图片预先生成缩略图的处理器, 缩略图由 {@link ThumbnailService} 生成并缓存.
+ * 不是图片的文件会被忽略.
+ * 
+ * @author zhouych
+ */
+public class ThumbnailUploadProcessor implements UploadProcessor {
+	
+	private final ThumbnailService thumbnailService;
+	
+	private final int maxWidth;
+	
+	private final int maxHeight;
+	
+	private final long timeoutMillis;
+	
+	/**
+	 * @param thumbnailService
+	 * @param maxWidth
+	 * @param maxHeight
+	 * @param timeoutMillis
+	 *            等待 {@link ThumbnailService} 生成的最长时间, 超时后任务会被重试
+	 */
+	public ThumbnailUploadProcessor(ThumbnailService thumbnailService, int maxWidth, int maxHeight,
+			long timeoutMillis) {
+		if (maxWidth <= 0 || maxHeight <= 0) {
+			throw new IllegalArgumentException("maxWidth and maxHeight must be positive");
+		}
+		this.thumbnailService = thumbnailService;
+		this.maxWidth = maxWidth;
+		this.maxHeight = maxHeight;
+		this.timeoutMillis = timeoutMillis;
+	}
+	
+	@Override
+	public void process(UploadJob job) throws IOException {
+		String name = job.getFile().getName().toLowerCase();
+		if (name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png") || name.endsWith(".gif")
+				|| name.endsWith(".bmp")) {
+			thumbnailService.getThumbnail(job.getFile(), maxWidth, maxHeight, timeoutMillis);
+		}
+	}
+}
@@ -0,0 +1,523 @@
+/*
+ * AesCipher.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.core.util.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * 使用 AES 加密并使用 HMAC-SHA256 认证(encrypt-then-MAC)的加解密器, 由 {@link EncryptUtil#getAesCipher(byte[])} 创建, 是线程
+ * 安全的, 应该为每个密钥创建一个实例并重复使用.
+ * <p>
+ * 加密和认证所用的 {@link SecretKeySpec} 在创建实例时就从主密钥派生出来, {@link Cipher} 和 {@link Mac} 则按线程缓存, 每次
+ * 加解密只需要使用新的 IV 重新初始化, 不再调用 getInstance. 密文的格式如下:
+ * <pre>
+ * 版本(1 字节) || IV(16 字节) || AES/CBC/PKCS5Padding 密文 || HMAC-SHA256(版本 || IV || 密文) 的前 16 字节
+ * </pre>
+ * 解密时先校验 MAC, 校验失败则抛出 {@link IllegalArgumentException}, 不会尝试解密被篡改的数据.
+ * </p>
+ * 
+ * @author zhouych
+ * @see EncryptUtil
+ */
+public class AesCipher {
+	
+	/**
+	 * 密文格式的版本
+	 */
+	private static final byte VERSION = 1;
+	
+	private static final int IV_LENGTH = 16;
+	
+	private static final int TAG_LENGTH = 16;
+	
+	private static final int HEADER_LENGTH = 1 + IV_LENGTH;
+	
+	private static final int STREAM_BUFFER_SIZE = 8 * 1024;
+	
+	private static final SecureRandom RANDOM = new SecureRandom();
+	
+	private static final ThreadLocal<Cipher> CIPHER = new ThreadLocal<Cipher>() {
+		@Override
+		protected Cipher initialValue() {
+			return newCipher();
+		}
+	};
+	
+	private static final ThreadLocal<Mac> MAC = new ThreadLocal<Mac>() {
+		@Override
+		protected Mac initialValue() {
+			return newMac();
+		}
+	};
+	
+	private final SecretKeySpec encryptionKey;
+	
+	private final SecretKeySpec macKey;
+	
+	/**
+	 * @param key
+	 *            主密钥, 长度为 16, 24 或 32 字节. 注意在 Java 6 默认的安全策略下只能使用 16 字节(AES-128)的密钥
+	 */
+	AesCipher(byte[] key) {
+		if (key == null || (key.length != 16 && key.length != 24 && key.length != 32)) {
+			throw new IllegalArgumentException("AES key must be 16, 24 or 32 bytes");
+		}
+		// 从主密钥派生出加密和认证两个子密钥, 避免同一个密钥用于两种用途
+		SecretKeySpec masterKey = new SecretKeySpec(key, EncryptUtil.HMAC_SHA256);
+		byte[] derived = deriveKey(masterKey, "encryption");
+		this.encryptionKey = new SecretKeySpec(derived, 0, key.length, EncryptUtil.AES);
+		this.macKey = new SecretKeySpec(deriveKey(masterKey, "authentication"), EncryptUtil.HMAC_SHA256);
+	}
+	
+	/**
+	 * 返回对明文加密后的密文的长度.
+	 * 
+	 * @param plainLength
+	 * @return
+	 */
+	public static int getEncryptedLength(int plainLength) {
+		return HEADER_LENGTH + (plainLength / 16 + 1) * 16 + TAG_LENGTH;
+	}
+	
+	/**
+	 * 加密.
+	 * 
+	 * @param input
+	 *            明文
+	 * @return
+	 */
+	public byte[] encrypt(byte[] input) {
+		byte[] output = new byte[getEncryptedLength(input.length)];
+		encrypt(ByteBuffer.wrap(input), ByteBuffer.wrap(output));
+		return output;
+	}
+	
+	/**
+	 * 解密.
+	 * 
+	 * @param input
+	 *            密文
+	 * @return
+	 */
+	public byte[] decrypt(byte[] input) {
+		ByteBuffer output = ByteBuffer.allocate(Math.max(input.length - HEADER_LENGTH - TAG_LENGTH, 0));
+		decrypt(ByteBuffer.wrap(input), output);
+		byte[] result = output.array();
+		if (output.position() == result.length) {
+			return result;
+		}
+		byte[] trimmed = new byte[output.position()];
+		System.arraycopy(result, 0, trimmed, 0, trimmed.length);
+		return trimmed;
+	}
+	
+	/**
+	 * 加密字符串(UTF-8), 返回 URL 安全的 Base64 编码的密文, 适合放在 Cookie 或者 URL 参数中.
+	 * 
+	 * @param input
+	 * @return
+	 */
+	public String encryptToBase64UrlSafe(String input) {
+		return EncoderUtil.base64UrlSafeEncode(encrypt(toUtf8(input)));
+	}
+	
+	/**
+	 * 解密 {@link #encryptToBase64UrlSafe(String)} 生成的密文.
+	 * 
+	 * @param input
+	 * @return
+	 */
+	public String decryptFromBase64(String input) {
+		try {
+			return new String(decrypt(EncoderUtil.base64Decode(input)), "UTF-8");
+		} catch (IOException e) {
+			throw new RuntimeException("Unexpected Checked Exception.", e);
+		}
+	}
+	
+	/**
+	 * 加密 input 中 position 到 limit 之间的数据, 写入 output 的 position 处, 两者的 position 都会相应地前移. 对于 heap buffer,
+	 * output 可以与 input 共享同一个数组(比如 input 的 duplicate()), 即原地加密, 只要 output 有足够的空间
+	 * (见 {@link #getEncryptedLength(int)}).
+	 * 
+	 * @param input
+	 * @param output
+	 * @return 写入 output 的字节数
+	 */
+	public int encrypt(ByteBuffer input, ByteBuffer output) {
+		
+		int plainLength = input.remaining();
+		int length = getEncryptedLength(plainLength);
+		if (output.remaining() < length) {
+			throw new IllegalArgumentException("output buffer too small, " + length + " bytes required");
+		}
+		byte[] iv = new byte[IV_LENGTH];
+		RANDOM.nextBytes(iv);
+		int start = output.position();
+		try {
+			Cipher cipher = CIPHER.get();
+			cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new IvParameterSpec(iv));
+			if (input.hasArray() && output.hasArray()) {
+				// Cipher 的数组版本是 copy-safe 的, 所以在同一个数组上原地加密也是正确的
+				byte[] out = output.array();
+				int offset = output.arrayOffset() + start + HEADER_LENGTH;
+				int written = cipher.doFinal(input.array(), input.arrayOffset() + input.position(), plainLength, out,
+						offset);
+				input.position(input.limit());
+				out[offset - HEADER_LENGTH] = VERSION;
+				System.arraycopy(iv, 0, out, offset - IV_LENGTH, IV_LENGTH);
+				output.position(start + HEADER_LENGTH + written);
+			} else {
+				output.put(VERSION).put(iv);
+				cipher.doFinal(input, output);
+			}
+			Mac mac = MAC.get();
+			mac.init(macKey);
+			ByteBuffer authenticated = output.duplicate();
+			authenticated.limit(output.position()).position(start);
+			mac.update(authenticated);
+			output.put(mac.doFinal(), 0, TAG_LENGTH);
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException("Unexpected Checked Exception.", e);
+		}
+		return output.position() - start;
+	}
+	
+	/**
+	 * 解密 input 中 position 到 limit 之间的密文, 写入 output 的 position 处, 两者的 position 都会相应地前移. 对于 heap buffer,
+	 * output 可以与 input 共享同一个数组, 即原地解密. 密文被篡改时抛出 {@link IllegalArgumentException}, 此时 input 和 output
+	 * 都不会被修改.
+	 * 
+	 * @param input
+	 * @param output
+	 * @return 写入 output 的字节数
+	 */
+	public int decrypt(ByteBuffer input, ByteBuffer output) {
+		
+		int length = input.remaining();
+		if (length < HEADER_LENGTH + 16 + TAG_LENGTH || (length - HEADER_LENGTH - TAG_LENGTH) % 16 != 0) {
+			throw new IllegalArgumentException("invalid ciphertext length: " + length);
+		}
+		ByteBuffer view = input.duplicate();
+		if (view.get() != VERSION) {
+			throw new IllegalArgumentException("unsupported ciphertext version");
+		}
+		try {
+			Mac mac = MAC.get();
+			mac.init(macKey);
+			view.limit(input.limit() - TAG_LENGTH).position(input.position());
+			mac.update(view);
+			byte[] expected = mac.doFinal();
+			int diff = 0;
+			for (int i = 0; i < TAG_LENGTH; i++) {
+				diff |= expected[i] ^ input.get(input.limit() - TAG_LENGTH + i);
+			}
+			if (diff != 0) {
+				throw new IllegalArgumentException("ciphertext authentication failed");
+			}
+			
+			byte[] iv = new byte[IV_LENGTH];
+			view.position(input.position() + 1);
+			view.get(iv);
+			Cipher cipher = CIPHER.get();
+			cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new IvParameterSpec(iv));
+			int cipherLength = length - HEADER_LENGTH - TAG_LENGTH;
+			if (output.remaining() < cipherLength) {
+				throw new IllegalArgumentException("output buffer too small, " + cipherLength + " bytes required");
+			}
+			int written;
+			if (view.hasArray() && output.hasArray()) {
+				written = cipher.doFinal(view.array(), view.arrayOffset() + view.position(), cipherLength,
+						output.array(), output.arrayOffset() + output.position());
+				output.position(output.position() + written);
+			} else {
+				written = cipher.doFinal(view, output);
+			}
+			input.position(input.limit());
+			return written;
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException("Unexpected Checked Exception.", e);
+		}
+	}
+	
+	/**
+	 * 返回一个加密的输出流, 写入的明文加密后写到 out 中, 关闭时写入 MAC 并关闭 out. 密文的格式与 {@link #encrypt(byte[])}
+	 * 相同, 适合加密较大的数据. 返回的流不是线程安全的.
+	 * 
+	 * @param out
+	 * @return
+	 * @throws IOException
+	 */
+	public OutputStream encryptingStream(OutputStream out) throws IOException {
+		byte[] iv = new byte[IV_LENGTH];
+		RANDOM.nextBytes(iv);
+		try {
+			Cipher cipher = newCipher();
+			cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new IvParameterSpec(iv));
+			Mac mac = newMac();
+			mac.init(macKey);
+			return new EncryptingOutputStream(out, cipher, mac, iv);
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException("Unexpected Checked Exception.", e);
+		}
+	}
+	
+	/**
+	 * 返回一个解密的输入流, 从 in 中读取 {@link #encryptingStream(OutputStream)} 或者 {@link #encrypt(byte[])} 生成的密文.
+	 * <p>
+	 * 注意: 为了不把整个密文读入内存, MAC 在读到流的末尾时才进行校验, 校验失败时抛出 {@link IOException}. 在此之前读到的明文都
+	 * 是未经认证的, 调用者必须读到流的末尾并且没有发生异常, 才能信任读到的数据.
+	 * </p>
+	 * 
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public InputStream decryptingStream(InputStream in) throws IOException {
+		byte[] header = new byte[HEADER_LENGTH];
+		int read = 0;
+		while (read < HEADER_LENGTH) {
+			int n = in.read(header, read, HEADER_LENGTH - read);
+			if (n == -1) {
+				throw new EOFException("truncated ciphertext");
+			}
+			read += n;
+		}
+		if (header[0] != VERSION) {
+			throw new IOException("unsupported ciphertext version");
+		}
+		try {
+			Cipher cipher = newCipher();
+			cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new IvParameterSpec(header, 1, IV_LENGTH));
+			Mac mac = newMac();
+			mac.init(macKey);
+			mac.update(header);
+			return new DecryptingInputStream(in, cipher, mac);
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException("Unexpected Checked Exception.", e);
+		}
+	}
+	
+	private static byte[] deriveKey(SecretKeySpec masterKey, String label) {
+		try {
+			Mac mac = newMac();
+			mac.init(masterKey);
+			return mac.doFinal(toUtf8(label));
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException("Unexpected Checked Exception.", e);
+		}
+	}
+	
+	private static byte[] toUtf8(String input) {
+		try {
+			return input.getBytes("UTF-8");
+		} catch (IOException e) {
+			throw new RuntimeException("Unexpected Checked Exception.", e);
+		}
+	}
+	
+	private static Cipher newCipher() {
+		try {
+			return Cipher.getInstance(EncryptUtil.AES_TRANSFORMATION);
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException("Unexpected Checked Exception.", e);
+		}
+	}
+	
+	private static Mac newMac() {
+		try {
+			return Mac.getInstance(EncryptUtil.HMAC_SHA256);
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException("Unexpected Checked Exception.", e);
+		}
+	}
+	
+	/**
+	 * 加密的输出流.
+	 */
+	private static final class EncryptingOutputStream extends OutputStream {
+		
+		private final OutputStream out;
+		
+		private final Cipher cipher;
+		
+		private final Mac mac;
+		
+		private final byte[] header;
+		
+		private boolean headerWritten;
+		
+		private boolean closed;
+		
+		EncryptingOutputStream(OutputStream out, Cipher cipher, Mac mac, byte[] iv) {
+			this.out = out;
+			this.cipher = cipher;
+			this.mac = mac;
+			this.header = new byte[HEADER_LENGTH];
+			header[0] = VERSION;
+			System.arraycopy(iv, 0, header, 1, IV_LENGTH);
+		}
+		
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed");
+			}
+			writeHeader();
+			byte[] encrypted = cipher.update(b, off, len);
+			if (encrypted != null && encrypted.length > 0) {
+				mac.update(encrypted);
+				out.write(encrypted);
+			}
+		}
+		
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+		
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				writeHeader();
+				byte[] encrypted = cipher.doFinal();
+				mac.update(encrypted);
+				out.write(encrypted);
+				out.write(mac.doFinal(), 0, TAG_LENGTH);
+			} catch (GeneralSecurityException e) {
+				throw new RuntimeException("Unexpected Checked Exception.", e);
+			} finally {
+				out.close();
+			}
+		}
+		
+		private void writeHeader() throws IOException {
+			if (!headerWritten) {
+				headerWritten = true;
+				mac.update(header);
+				out.write(header);
+			}
+		}
+	}
+	
+	/**
+	 * 解密的输入流, 始终保留最后读到的 {@link AesCipher#TAG_LENGTH} 个字节, 在流的末尾作为 MAC 进行校验.
+	 */
+	private static final class DecryptingInputStream extends InputStream {
+		
+		private final InputStream in;
+		
+		private final Cipher cipher;
+		
+		private final Mac mac;
+		
+		private final byte[] buffer = new byte[STREAM_BUFFER_SIZE + TAG_LENGTH];
+		
+		/**
+		 * buffer 中尚未处理的字节数, 其中最后 TAG_LENGTH 个字节可能是 MAC
+		 */
+		private int buffered;
+		
+		private byte[] plain;
+		
+		private int plainPosition;
+		
+		private boolean finished;
+		
+		DecryptingInputStream(InputStream in, Cipher cipher, Mac mac) {
+			this.in = in;
+			this.cipher = cipher;
+			this.mac = mac;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int n;
+			while ((n = read(b, 0, 1)) == 0) {
+				// 继续读取, 直到有数据或者到达流的末尾
+			}
+			return n == -1 ? -1 : b[0] & 0xff;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			while (plain == null || plainPosition == plain.length) {
+				if (finished) {
+					return -1;
+				}
+				fill();
+			}
+			int n = Math.min(len, plain.length - plainPosition);
+			System.arraycopy(plain, plainPosition, b, off, n);
+			plainPosition += n;
+			return n;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+		
+		private void fill() throws IOException {
+			int n = in.read(buffer, buffered, buffer.length - buffered);
+			plainPosition = 0;
+			if (n == -1) {
+				finished = true;
+				if (buffered != TAG_LENGTH) {
+					throw new EOFException("truncated ciphertext");
+				}
+				byte[] expected = mac.doFinal();
+				int diff = 0;
+				for (int i = 0; i < TAG_LENGTH; i++) {
+					diff |= expected[i] ^ buffer[i];
+				}
+				if (diff != 0) {
+					throw new IOException("ciphertext authentication failed");
+				}
+				try {
+					plain = cipher.doFinal();
+				} catch (GeneralSecurityException e) {
+					throw new IOException("invalid ciphertext: " + e);
+				}
+				return;
+			}
+			buffered += n;
+			int ready = buffered - TAG_LENGTH;
+			if (ready <= 0) {
+				plain = null;
+				return;
+			}
+			mac.update(buffer, 0, ready);
+			plain = cipher.update(buffer, 0, ready);
+			System.arraycopy(buffer, ready, buffer, 0, TAG_LENGTH);
+			buffered = TAG_LENGTH;
+		}
+	}
+}
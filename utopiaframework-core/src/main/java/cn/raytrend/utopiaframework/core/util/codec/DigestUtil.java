@@ -5,11 +5,24 @@
  */
 package cn.raytrend.utopiaframework.core.util.codec;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 支持 SHA-1 / MD5 消息摘要的工具类, 支持 HEX 与 Base64 两种编码方式.
@@ -23,6 +36,20 @@ import java.security.NoSuchAlgorithmException;
  * 	<li>MD5 ("message digest") = f96b697d7cb7938d525a2f31aaf161d0</li>
  * 	<li>MD5 ("abcdefghijklmnopqrstuvwxyz") = c3fcd3d76192e4007dfb496cca67e13b</li>
  * </ul>
+ * </p>
+ * <p>
+ * {@link MessageDigest#getInstance(String)} 每次都需要同步地查找 Provider, 所以 MD5/SHA-1/SHA-256 的 {@link MessageDigest}
+ * 按线程缓存起来重复使用(每次使用前 reset). 字符串直接以 UTF-8 编码分块写入线程内复用的缓冲区, 不再生成中间的字节数组.
+ * </p>
+ * <p>
+ * 对于大文件, {@link #digestFileToHex(File, String)} 通过 {@link FileChannel} 和 direct buffer 顺序读取文件;
+ * {@link #treeDigestFileToHex(File, String, int)} 则将文件分块映射到内存中并行计算, 其结果的格式如下(格式是稳定的, 可以持久化):
+ * <pre>
+ * leaf[i] = H(第 i 块的内容), 每块 chunkSize 个字节, 最后一块可能不足 chunkSize, 空文件视为一个空块
+ * root    = H(chunkSize 的 8 字节大端表示 || leaf[0] || leaf[1] || ... || leaf[n-1])
+ * </pre>
+ * 其中 H 为指定的散列算法, 返回 root 的小写 Hex 编码. 注意到同一文件使用不同的 chunkSize 会得到不同的结果.
+ * </p>
  * 
  * @author zhouych
  * @see EncoderUtil
@@ -34,6 +61,11 @@ public class DigestUtil {
 	 */
 	public static final String SHA1 = "SHA-1";
 	
+	/**
+	 * SHA-256 散列算法
+	 */
+	public static final String SHA256 = "SHA-256";
+	
 	/**
 	 * MD5 散列算法
 	 */
@@ -42,84 +74,348 @@ public class DigestUtil {
 	/**
 	 * MD5 加密需要用到的字符串
 	 */
-	private static char[] HEX_DIGITS = new char[]{
+	private static final char[] HEX_DIGITS = new char[]{
 		'0', '1', '2', '3', '4', '5',
 		'6', '7', '8', '9', 'A', 'B',
 		'C', 'D', 'E', 'F'
 	};
 	
+	/**
+	 * 小写的 Hex 字符, 与 {@link EncoderUtil#hexEncode(byte[])} 的输出保持一致
+	 */
+	private static final char[] HEX_DIGITS_LOWER = new char[]{
+		'0', '1', '2', '3', '4', '5',
+		'6', '7', '8', '9', 'a', 'b',
+		'c', 'd', 'e', 'f'
+	};
+	
+	/**
+	 * UTF-8 编码缓冲区的大小, 较长的字符串会分块写入消息摘要
+	 */
+	private static final int ENCODE_BUFFER_SIZE = 1024;
+	
+	/**
+	 * 顺序读取文件时使用的 direct buffer 的大小
+	 */
+	private static final int FILE_BUFFER_SIZE = 64 * 1024;
+	
+	/**
+	 * 分块散列时默认的块大小: 4MB
+	 */
+	public static final int DEFAULT_TREE_CHUNK_SIZE = 4 * 1024 * 1024;
+	
+	/**
+	 * 默认的分块散列线程池, 参见 {@link #getTreeDigestExecutor()}
+	 */
+	private static ExecutorService treeDigestExecutor;
+	
+	//-- 按线程缓存的对象, 只持有 JDK 的类, 不会导致 web 应用的 ClassLoader 无法回收 --//
+	
+	private static final ThreadLocal<MessageDigest> MD5_DIGEST = new DigestThreadLocal(MD5);
+	
+	private static final ThreadLocal<MessageDigest> SHA1_DIGEST = new DigestThreadLocal(SHA1);
+	
+	private static final ThreadLocal<MessageDigest> SHA256_DIGEST = new DigestThreadLocal(SHA256);
+	
+	private static final ThreadLocal<byte[]> ENCODE_BUFFER = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[ENCODE_BUFFER_SIZE];
+		}
+	};
+	
 	/**
 	 * 将输入的字符串生成 32 位的 MD5 值.
 	 * 
 	 * @param input
 	 * @return
-	 * @throws NoSuchAlgorithmException
 	 */
 	public static String getMD5String(String input) {
-		
-	    MessageDigest md = null;
-        try {
-            md = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("exception can't be happened: " + e.getMessage());
-        }
-        byte[] inputBytes;
-        try {
-            inputBytes = input.getBytes("UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException("exception can't be happened: " + e.getMessage());
-        }
-        // 将输入数据(口令)传给消息摘要
-        md.update(inputBytes);
-        // 生成消息摘要
-        byte[] tmp = md.digest();
-        char[] output = new char[16 * 2];
-        int index = 0;
-        for (int i = 0; i < 16; i++) {
-            byte b = tmp[i];
-            output[index++] = HEX_DIGITS[b >> 4 & 0xf];
-            output[index++] = HEX_DIGITS[b & 0xf];
-        }
-        return new String(output);
-	}
-	
-	/**
-     * 给输入的字符串加 salt 之后再进行 md5 转换.
-     * 
-     * @param input
-     * @param salt
-     * @return
-     * @see #getMD5String(String)
-     */
-    public static String getMD5StringWithSalt(String input, String salt) {
-        
-        MessageDigest md = null;
-        try {
-            md = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("exception can't be happened: " + e.getMessage());
-        }
-        byte[] inputBytes;
-        byte[] saltBytes;
-        try {
-            inputBytes = input.getBytes("UTF-8");
-            saltBytes = salt.getBytes("UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException("exception can't be happened: " + e.getMessage());
-        }
-        // 将 salt 传给消息摘要
-        md.update(saltBytes);
-        md.update(inputBytes);
-        byte[] tmp = md.digest();
-        char[] output = new char[16 * 2];
-        int index = 0;
-        for (int i = 0; i < 16; i++) {
-            byte b = tmp[i];
-            output[index++] = HEX_DIGITS[b >> 4 & 0xf];
-            output[index++] = HEX_DIGITS[b & 0xf];
-        }
-        return new String(output);
-    }
+		MessageDigest md = getMessageDigest(MD5);
+		// 将输入数据(口令)传给消息摘要
+		updateUtf8(md, input);
+		// 生成消息摘要
+		return encodeHex(md.digest(), HEX_DIGITS);
+	}
+	
+	/**
+	 * 给输入的字符串加 salt 之后再进行 md5 转换.
+	 * 
+	 * @param input
+	 * @param salt
+	 * @return
+	 * @see #getMD5String(String)
+	 */
+	public static String getMD5StringWithSalt(String input, String salt) {
+		MessageDigest md = getMessageDigest(MD5);
+		// 将 salt 传给消息摘要
+		updateUtf8(md, salt);
+		updateUtf8(md, input);
+		return encodeHex(md.digest(), HEX_DIGITS);
+	}
+	
+	/**
+	 * 对输入的字符串以 UTF-8 编码进行散列, 返回小写的 Hex 编码的结果, 支持 SHA-1, SHA-256 和 MD5 算法.
+	 * 
+	 * @param input
+	 * @param algorithm
+	 * @return
+	 */
+	public static String digestToHex(String input, String algorithm) {
+		MessageDigest md = getMessageDigest(algorithm);
+		updateUtf8(md, input);
+		return encodeHex(md.digest(), HEX_DIGITS_LOWER);
+	}
+	
+	/**
+	 * 通过 {@link FileChannel} 顺序读取文件并进行散列, 返回小写的 Hex 编码的结果, 与 {@link #shalToHex(InputStream)} 的结果一致.
+	 * 
+	 * @param file
+	 * @param algorithm
+	 *            散列算法, 比如 {@link #SHA1}, {@link #SHA256}
+	 * @return
+	 * @throws IOException
+	 */
+	public static String digestFileToHex(File file, String algorithm) throws IOException {
+
+		FileInputStream input = new FileInputStream(file);
+		try {
+			FileChannel channel = input.getChannel();
+			MessageDigest md = getMessageDigest(algorithm);
+			ByteBuffer buffer = ByteBuffer.allocateDirect(FILE_BUFFER_SIZE);
+			while (channel.read(buffer) != -1) {
+				buffer.flip();
+				md.update(buffer);
+				buffer.clear();
+			}
+			return encodeHex(md.digest(), HEX_DIGITS_LOWER);
+		} finally {
+			input.close();
+		}
+	}
+	
+	/**
+	 * 使用默认的块大小({@link #DEFAULT_TREE_CHUNK_SIZE})和默认的线程池对文件进行分块并行散列.
+	 * 
+	 * @param file
+	 * @param algorithm
+	 * @return
+	 * @throws IOException
+	 * @see #treeDigestFileToHex(File, String, int, ExecutorService)
+	 */
+	public static String treeDigestFileToHex(File file, String algorithm) throws IOException {
+		return treeDigestFileToHex(file, algorithm, DEFAULT_TREE_CHUNK_SIZE);
+	}
+	
+	/**
+	 * 使用默认的线程池(线程数与 CPU 个数相同的 daemon 线程)对文件进行分块并行散列. 默认的线程池在第一次使用时创建, 在 web
+	 * 应用中使用时需要在应用停止时调用 {@link #shutdownTreeDigestExecutor()}, 否则线程池会一直持有 web 应用的 ClassLoader;
+	 * 也可以使用 {@link #treeDigestFileToHex(File, String, int, ExecutorService)} 自行管理线程池.
+	 * 
+	 * @param file
+	 * @param algorithm
+	 * @param chunkSize
+	 * @return
+	 * @throws IOException
+	 * @see #treeDigestFileToHex(File, String, int, ExecutorService)
+	 */
+	public static String treeDigestFileToHex(File file, String algorithm, int chunkSize) throws IOException {
+		return treeDigestFileToHex(file, algorithm, chunkSize, getTreeDigestExecutor());
+	}
+	
+	/**
+	 * 关闭默认的分块散列线程池, 一般在 web 应用停止时(比如 ServletContextListener 的 contextDestroyed 中)调用. 之后再使用
+	 * 默认线程池的方法时会重新创建线程池.
+	 */
+	public static void shutdownTreeDigestExecutor() {
+		ExecutorService executor;
+		synchronized (DigestUtil.class) {
+			executor = treeDigestExecutor;
+			treeDigestExecutor = null;
+		}
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * 获取默认的分块散列线程池, 在第一次使用的时候才创建. 使用 daemon 线程, 不会阻止 JVM 退出.
+	 */
+	private static synchronized ExecutorService getTreeDigestExecutor() {
+		if (treeDigestExecutor == null) {
+			treeDigestExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+					new ThreadFactory() {
+				
+				private final AtomicInteger count = new AtomicInteger();
+				
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "DigestUtil-tree-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return treeDigestExecutor;
+	}
+	
+	/**
+	 * 对文件进行分块并行散列, 每一块通过 {@link FileChannel#map} 映射到内存中, 在指定的线程池中计算各块的散列值, 最后合并成一个
+	 * 结果, 格式见类的说明.
+	 * 
+	 * @param file
+	 * @param algorithm
+	 *            散列算法, 比如 {@link #SHA1}, {@link #SHA256}
+	 * @param chunkSize
+	 *            块大小, 以字节为单位
+	 * @param executor
+	 *            计算各块散列值的线程池
+	 * @return
+	 * @throws IOException
+	 */
+	public static String treeDigestFileToHex(File file, String algorithm, int chunkSize, ExecutorService executor)
+			throws IOException {
+
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+		}
+		FileInputStream input = new FileInputStream(file);
+		try {
+			final FileChannel channel = input.getChannel();
+			long size = channel.size();
+			List<Future<byte[]>> leaves = new ArrayList<Future<byte[]>>((int) (size / chunkSize) + 1);
+			long position = 0;
+			do {
+				leaves.add(executor.submit(new ChunkDigestTask(channel, algorithm, position,
+						Math.min(chunkSize, size - position))));
+				position += chunkSize;
+			} while (position < size);
+
+			MessageDigest root = getMessageDigest(algorithm);
+			for (int i = 56; i >= 0; i -= 8) {
+				root.update((byte) (((long) chunkSize) >>> i));
+			}
+			try {
+				for (Future<byte[]> leaf : leaves) {
+					root.update(leaf.get());
+				}
+			} catch (InterruptedException e) {
+				cancel(leaves);
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while hashing " + file);
+			} catch (ExecutionException e) {
+				cancel(leaves);
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IOException("hashing " + file + " failed: " + e.getCause());
+			}
+			return encodeHex(root.digest(), HEX_DIGITS_LOWER);
+		} finally {
+			input.close();
+		}
+	}
+	
+	private static void cancel(List<Future<byte[]>> futures) {
+		for (Future<byte[]> future : futures) {
+			future.cancel(true);
+		}
+	}
+	
+	/**
+	 * 获取可以使用的 {@link MessageDigest}. MD5/SHA-1/SHA-256 返回当前线程缓存的实例(已经 reset), 调用方在当前线程内使用完毕
+	 * (调用 digest()) 之前不能再次获取同一算法的实例; 其他算法则每次都创建新的实例.
+	 * 
+	 * @param algorithm
+	 * @return
+	 */
+	private static MessageDigest getMessageDigest(String algorithm) {
+		ThreadLocal<MessageDigest> pool = null;
+		if (MD5.equals(algorithm)) {
+			pool = MD5_DIGEST;
+		} else if (SHA1.equals(algorithm)) {
+			pool = SHA1_DIGEST;
+		} else if (SHA256.equals(algorithm)) {
+			pool = SHA256_DIGEST;
+		}
+		if (pool == null) {
+			return newMessageDigest(algorithm);
+		}
+		MessageDigest md = pool.get();
+		// 上一次使用可能因为异常而没有调用 digest(), 所以这里总是先 reset
+		md.reset();
+		return md;
+	}
+	
+	/**
+	 * 将字节数组编码为 Hex 字符串.
+	 * 
+	 * @param bytes
+	 * @param digits
+	 *            大写或小写的 Hex 字符
+	 * @return
+	 */
+	private static String encodeHex(byte[] bytes, char[] digits) {
+		char[] output = new char[bytes.length << 1];
+		int index = 0;
+		for (byte b : bytes) {
+			output[index++] = digits[(b >> 4) & 0xf];
+			output[index++] = digits[b & 0xf];
+		}
+		return new String(output);
+	}
+	
+	/**
+	 * 将字符串以 UTF-8 编码分块写入消息摘要, 结果与 <code>md.update(input.getBytes("UTF-8"))</code> 相同(包括不成对的代理字符被替换为
+	 * '?'), 但不会创建新的字节数组.
+	 * 
+	 * @param md
+	 * @param input
+	 */
+	private static void updateUtf8(MessageDigest md, String input) {
+		byte[] buffer = ENCODE_BUFFER.get();
+		// 保证缓冲区中至少留有一个字符编码后的最大长度(4 个字节)
+		int limit = buffer.length - 4;
+		int pos = 0;
+		int length = input.length();
+		for (int i = 0; i < length; i++) {
+			if (pos > limit) {
+				md.update(buffer, 0, pos);
+				pos = 0;
+			}
+			char c = input.charAt(i);
+			if (c < 0x80) {
+				buffer[pos++] = (byte) c;
+			} else if (c < 0x800) {
+				buffer[pos++] = (byte) (0xc0 | (c >> 6));
+				buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(input.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, input.charAt(++i));
+				buffer[pos++] = (byte) (0xf0 | (codePoint >> 18));
+				buffer[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+				buffer[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+				buffer[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+			} else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+				// 与 String.getBytes("UTF-8") 一致, 不成对的代理字符替换为 '?'
+				buffer[pos++] = (byte) '?';
+			} else {
+				buffer[pos++] = (byte) (0xe0 | (c >> 12));
+				buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+		if (pos > 0) {
+			md.update(buffer, 0, pos);
+		}
+	}
+	
+	private static MessageDigest newMessageDigest(String algorithm) {
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalArgumentException("unsupported digest algorithm: " + algorithm, e);
+		}
+	}
 	
 	/**
 	 * 对输入的字符串进行 SHA 散列, 返回其 Hex 编码的结果.
@@ -130,7 +426,7 @@ public class DigestUtil {
 	 */
 	public static String shalToHex(String input) throws NoSuchAlgorithmException {
 		byte[] digestResult = digest(input, SHA1);
-		return EncoderUtil.hexEncode(digestResult);
+		return encodeHex(digestResult, HEX_DIGITS_LOWER);
 	}
 	
 	/**
@@ -180,7 +476,7 @@ public class DigestUtil {
 	 */
 	private static String digest(InputStream input, String algorithm) throws NoSuchAlgorithmException, IOException {
 
-		MessageDigest messageDigest = MessageDigest.getInstance(algorithm);
+		MessageDigest messageDigest = getMessageDigest(algorithm);
 		int bufferSize = 1024;
 		byte[] buffer = new byte[bufferSize];
 		int read = input.read(buffer, 0, bufferSize);
@@ -188,7 +484,7 @@ public class DigestUtil {
 			messageDigest.update(buffer, 0, read);
 			read = input.read(buffer, 0, bufferSize);
 		}
-		return EncoderUtil.hexEncode(messageDigest.digest());
+		return encodeHex(messageDigest.digest(), HEX_DIGITS_LOWER);
 	}
 	
 	/**
@@ -202,6 +498,53 @@ public class DigestUtil {
 	 */
 	private static byte[] digest(String input, String algorithm) throws NoSuchAlgorithmException {
 		
-		return MessageDigest.getInstance(algorithm).digest(input.getBytes());
+		return getMessageDigest(algorithm).digest(input.getBytes());
+	}
+	
+	/**
+	 * 将文件的一块映射到内存中并计算其散列值. {@link FileChannel#map} 是线程安全的, 所以多个任务可以共享同一个 channel.
+	 */
+	private static final class ChunkDigestTask implements Callable<byte[]> {
+		
+		private final FileChannel channel;
+		
+		private final String algorithm;
+		
+		private final long position;
+		
+		private final long length;
+		
+		ChunkDigestTask(FileChannel channel, String algorithm, long position, long length) {
+			this.channel = channel;
+			this.algorithm = algorithm;
+			this.position = position;
+			this.length = length;
+		}
+		
+		@Override
+		public byte[] call() throws IOException {
+			MessageDigest md = getMessageDigest(algorithm);
+			if (length > 0) {
+				md.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+			}
+			return md.digest();
+		}
+	}
+	
+	/**
+	 * 为每个线程创建一个指定算法的 {@link MessageDigest}.
+	 */
+	private static final class DigestThreadLocal extends ThreadLocal<MessageDigest> {
+		
+		private final String algorithm;
+		
+		DigestThreadLocal(String algorithm) {
+			this.algorithm = algorithm;
+		}
+		
+		@Override
+		protected MessageDigest initialValue() {
+			return newMessageDigest(algorithm);
+		}
 	}
 }
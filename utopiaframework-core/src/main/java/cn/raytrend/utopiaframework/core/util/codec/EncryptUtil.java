@@ -5,9 +5,21 @@
  */
 package cn.raytrend.utopiaframework.core.util.codec;
 
+import java.security.SecureRandom;
 
 /**
  * 各种加解密算法的工具类, 目前支持的方法有 DES, AES 等.
+ * <p>
+ * AES 加解密使用 {@link AesCipher}, 比如:
+ * <pre>
+ * {@code
+ * AesCipher cipher = EncryptUtil.getAesCipher(key);
+ * String token = cipher.encryptToBase64UrlSafe(value);
+ * String value = cipher.decryptFromBase64(token);
+ * }
+ * </pre>
+ * {@link AesCipher} 是线程安全的, 应该为每个密钥创建一个并重复使用.
+ * </p>
  * 
  * @author zhouych
  */
@@ -22,4 +34,43 @@ public class EncryptUtil {
 	 * AES 加密算法
 	 */
 	public static final String AES = "AES";
+	
+	/**
+	 * AES 加密所用的模式与填充方式
+	 */
+	public static final String AES_TRANSFORMATION = "AES/CBC/PKCS5Padding";
+	
+	/**
+	 * HMAC-SHA256 消息认证算法
+	 */
+	public static final String HMAC_SHA256 = "HmacSHA256";
+	
+	private static final SecureRandom RANDOM = new SecureRandom();
+	
+	/**
+	 * 生成一个随机的 AES 密钥.
+	 * 
+	 * @param length
+	 *            密钥的长度, 16, 24 或 32 字节
+	 * @return
+	 */
+	public static byte[] generateAesKey(int length) {
+		if (length != 16 && length != 24 && length != 32) {
+			throw new IllegalArgumentException("AES key must be 16, 24 or 32 bytes");
+		}
+		byte[] key = new byte[length];
+		RANDOM.nextBytes(key);
+		return key;
+	}
+	
+	/**
+	 * 创建使用指定密钥的 AES 加解密器.
+	 * 
+	 * @param key
+	 *            密钥, 16, 24 或 32 字节
+	 * @return
+	 */
+	public static AesCipher getAesCipher(byte[] key) {
+		return new AesCipher(key);
+	}
 }
@@ -0,0 +1,408 @@
+/*
+ * PasswordHasher.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.core.util.codec;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.spec.KeySpec;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * 基于 PBKDF2(PBKDF2WithHmacSHA1) 的密码散列服务, 迭代次数可以配置. 生成的散列值的格式如下, 其中 salt 与 hash 均为 Base64 编码:
+ * <pre>
+ * $pbkdf2-sha1$迭代次数$salt$hash
+ * </pre>
+ * 
+ * 校验密码是一个 CPU 密集的操作, 所以异步的校验方法都在一个线程数和队列长度都有限的专用线程池中执行, 队列满了的时候直接拒绝
+ * (抛出 {@link RejectedExecutionException}), 这样即使在大量登录请求的情况下也不会占满处理请求的线程.
+ * <p>
+ * 对于使用 {@link DigestUtil#getMD5StringWithSalt(String, String)} 保存的旧密码, 校验成功后会在 {@link VerifyResult} 中返回
+ * 新的散列值, 调用者只需要将其保存下来即可完成升级. 比如:
+ * <pre>
+ * {@code
+ * VerifyResult result = passwordHasher.verify(password, user.getPassword(), user.getLoginName());
+ * if (result.isMatched() && result.isRehashNeeded()) {
+ *     user.setPassword(result.getNewHash());
+ * }
+ * }
+ * </pre>
+ * 迭代次数低于当前配置的散列值同样会被升级.
+ * </p>
+ * 
+ * @author zhouych
+ * @see DigestUtil
+ */
+public class PasswordHasher {
+	
+	/**
+	 * PBKDF2 算法
+	 */
+	public static final String PBKDF2_ALGORITHM = "PBKDF2WithHmacSHA1";
+	
+	/**
+	 * 默认的迭代次数
+	 */
+	public static final int DEFAULT_ITERATIONS = 10000;
+	
+	private static final String PREFIX = "$pbkdf2-sha1$";
+	
+	private static final int SALT_LENGTH = 16;
+	
+	private static final int HASH_LENGTH = 20;
+	
+	/**
+	 * 旧的 MD5 散列值的长度(Hex 编码)
+	 */
+	private static final int LEGACY_HASH_LENGTH = 32;
+	
+	private static final SecureRandom RANDOM = new SecureRandom();
+	
+	/**
+	 * {@link SecretKeyFactory} 不是线程安全的, 每个线程缓存一个
+	 */
+	private static final ThreadLocal<SecretKeyFactory> KEY_FACTORY = new ThreadLocal<SecretKeyFactory>() {
+		@Override
+		protected SecretKeyFactory initialValue() {
+			try {
+				return SecretKeyFactory.getInstance(PBKDF2_ALGORITHM);
+			} catch (GeneralSecurityException e) {
+				throw new RuntimeException("Unexpected Checked Exception.", e);
+			}
+		}
+	};
+	
+	private final int iterations;
+	
+	private final ThreadPoolExecutor executor;
+	
+	private final AtomicLong hashCount = new AtomicLong();
+	
+	private final AtomicLong hashNanos = new AtomicLong();
+	
+	private final AtomicLong maxHashNanos = new AtomicLong();
+	
+	private final AtomicLong rejectedCount = new AtomicLong();
+	
+	/**
+	 * 使用默认的迭代次数, 线程数与 CPU 个数相同, 队列长度为 100.
+	 */
+	public PasswordHasher() {
+		this(DEFAULT_ITERATIONS, Runtime.getRuntime().availableProcessors(), 100);
+	}
+	
+	/**
+	 * @param iterations
+	 *            PBKDF2 的迭代次数
+	 * @param threads
+	 *            校验密码的线程数
+	 * @param queueCapacity
+	 *            等待校验的请求的最大个数, 超过则拒绝
+	 */
+	public PasswordHasher(int iterations, int threads, int queueCapacity) {
+		if (iterations <= 0 || threads <= 0 || queueCapacity <= 0) {
+			throw new IllegalArgumentException("iterations, threads and queueCapacity must be positive");
+		}
+		this.iterations = iterations;
+		this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+			
+			private final AtomicInteger count = new AtomicInteger();
+			
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "PasswordHasher-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * 在当前线程中对密码进行散列, 每次都使用新的随机 salt.
+	 * 
+	 * @param password
+	 * @return
+	 */
+	public String hash(String password) {
+		byte[] salt = new byte[SALT_LENGTH];
+		RANDOM.nextBytes(salt);
+		byte[] hash = pbkdf2(password, salt, iterations);
+		return PREFIX + iterations + "$" + EncoderUtil.base64Encode(salt) + "$" + EncoderUtil.base64Encode(hash);
+	}
+	
+	/**
+	 * 在当前线程中校验密码.
+	 * 
+	 * @param password
+	 *            明文密码
+	 * @param storedHash
+	 *            保存的散列值, 可以是 {@link #hash(String)} 生成的, 也可以是旧的 MD5 散列值
+	 * @param legacySalt
+	 *            旧的 MD5 散列值所用的 salt, 对于 PBKDF2 的散列值则忽略
+	 * @return
+	 */
+	public VerifyResult verifyNow(String password, String storedHash, String legacySalt) {
+		
+		if (password == null || storedHash == null) {
+			return VerifyResult.NOT_MATCHED;
+		}
+		if (storedHash.startsWith(PREFIX)) {
+			String[] parts = storedHash.substring(PREFIX.length()).split("\\$");
+			if (parts.length != 3) {
+				return VerifyResult.NOT_MATCHED;
+			}
+			int storedIterations;
+			try {
+				storedIterations = Integer.parseInt(parts[0]);
+			} catch (NumberFormatException e) {
+				return VerifyResult.NOT_MATCHED;
+			}
+			if (storedIterations <= 0) {
+				return VerifyResult.NOT_MATCHED;
+			}
+			byte[] expected = EncoderUtil.base64Decode(parts[2]);
+			byte[] actual = pbkdf2(password, EncoderUtil.base64Decode(parts[1]), storedIterations);
+			if (!constantTimeEquals(expected, actual)) {
+				return VerifyResult.NOT_MATCHED;
+			}
+			return storedIterations < iterations ? new VerifyResult(true, hash(password)) : VerifyResult.MATCHED;
+		}
+		if (storedHash.length() == LEGACY_HASH_LENGTH && legacySalt != null) {
+			long start = System.nanoTime();
+			String actual = DigestUtil.getMD5StringWithSalt(password, legacySalt);
+			record(System.nanoTime() - start);
+			if (constantTimeEquals(EncoderUtil.hexDecode(actual), decodeLegacyHash(storedHash))) {
+				return new VerifyResult(true, hash(password));
+			}
+		}
+		return VerifyResult.NOT_MATCHED;
+	}
+	
+	/**
+	 * 在专用的线程池中异步校验密码, 线程池的队列满了的时候抛出 {@link RejectedExecutionException}.
+	 * 
+	 * @param password
+	 * @param storedHash
+	 * @param legacySalt
+	 * @return
+	 * @see #verifyNow(String, String, String)
+	 */
+	public Future<VerifyResult> verifyAsync(final String password, final String storedHash, final String legacySalt) {
+		try {
+			return executor.submit(new Callable<VerifyResult>() {
+				@Override
+				public VerifyResult call() {
+					return verifyNow(password, storedHash, legacySalt);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			rejectedCount.incrementAndGet();
+			throw e;
+		}
+	}
+	
+	/**
+	 * 在专用的线程池中校验密码并等待结果, 最多等待 timeoutMillis 毫秒, 超时则抛出 {@link RejectedExecutionException}, 与队列满
+	 * 的情况一样处理.
+	 * 
+	 * @param password
+	 * @param storedHash
+	 * @param legacySalt
+	 * @param timeoutMillis
+	 * @return
+	 */
+	public VerifyResult verify(String password, String storedHash, String legacySalt, long timeoutMillis) {
+		Future<VerifyResult> future = verifyAsync(password, storedHash, legacySalt);
+		try {
+			return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			rejectedCount.incrementAndGet();
+			throw new RejectedExecutionException("password verification timed out after " + timeoutMillis + "ms");
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException("interrupted while verifying password");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException("Unexpected Checked Exception.", e.getCause());
+		}
+	}
+	
+	/**
+	 * 在专用的线程池中校验密码并等待结果, 最多等待 10 秒.
+	 * 
+	 * @param password
+	 * @param storedHash
+	 * @param legacySalt
+	 * @return
+	 */
+	public VerifyResult verify(String password, String storedHash, String legacySalt) {
+		return verify(password, storedHash, legacySalt, 10000L);
+	}
+	
+	/**
+	 * 关闭校验密码的线程池.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+	
+	public int getIterations() {
+		return iterations;
+	}
+	
+	/**
+	 * @return 等待校验的请求个数
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+	
+	/**
+	 * @return 正在校验的请求个数
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+	
+	/**
+	 * @return 由于队列已满或者超时而被拒绝的请求个数
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+	
+	/**
+	 * @return 散列计算的总次数
+	 */
+	public long getHashCount() {
+		return hashCount.get();
+	}
+	
+	/**
+	 * @return 散列计算的平均耗时, 以毫秒为单位
+	 */
+	public double getAverageHashMillis() {
+		long count = hashCount.get();
+		return count == 0 ? 0d : hashNanos.get() / (count * 1000000d);
+	}
+	
+	/**
+	 * @return 散列计算的最大耗时, 以毫秒为单位
+	 */
+	public double getMaxHashMillis() {
+		return maxHashNanos.get() / 1000000d;
+	}
+	
+	private byte[] pbkdf2(String password, byte[] salt, int iterationCount) {
+		long start = System.nanoTime();
+		KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterationCount, HASH_LENGTH * 8);
+		try {
+			return KEY_FACTORY.get().generateSecret(spec).getEncoded();
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException("Unexpected Checked Exception.", e);
+		} finally {
+			record(System.nanoTime() - start);
+		}
+	}
+	
+	private void record(long nanos) {
+		hashCount.incrementAndGet();
+		hashNanos.addAndGet(nanos);
+		long max = maxHashNanos.get();
+		while (nanos > max && !maxHashNanos.compareAndSet(max, nanos)) {
+			max = maxHashNanos.get();
+		}
+	}
+	
+	/**
+	 * 旧的散列值不是合法的 Hex 编码时返回空数组, 保证校验失败.
+	 * 
+	 * @param storedHash
+	 * @return
+	 */
+	private static byte[] decodeLegacyHash(String storedHash) {
+		try {
+			return EncoderUtil.hexDecode(storedHash);
+		} catch (RuntimeException e) {
+			return new byte[0];
+		}
+	}
+	
+	/**
+	 * 比较两个字节数组, 耗时与第一个不同的字节的位置无关, 避免时序攻击.
+	 * 
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	private static boolean constantTimeEquals(byte[] a, byte[] b) {
+		if (a.length != b.length) {
+			return false;
+		}
+		int result = 0;
+		for (int i = 0; i < a.length; i++) {
+			result |= a[i] ^ b[i];
+		}
+		return result == 0;
+	}
+	
+	/**
+	 * 密码校验的结果.
+	 */
+	public static final class VerifyResult {
+		
+		static final VerifyResult MATCHED = new VerifyResult(true, null);
+		
+		static final VerifyResult NOT_MATCHED = new VerifyResult(false, null);
+		
+		private final boolean matched;
+		
+		private final String newHash;
+		
+		VerifyResult(boolean matched, String newHash) {
+			this.matched = matched;
+			this.newHash = newHash;
+		}
+		
+		/**
+		 * @return 密码是否正确
+		 */
+		public boolean isMatched() {
+			return matched;
+		}
+		
+		/**
+		 * @return 保存的散列值是否需要升级, 为 true 时应该使用 {@link #getNewHash()} 替换原来的散列值
+		 */
+		public boolean isRehashNeeded() {
+			return newHash != null;
+		}
+		
+		/**
+		 * @return 新的散列值, 不需要升级时为 null
+		 */
+		public String getNewHash() {
+			return newHash;
+		}
+	}
+}
@@ -0,0 +1,415 @@
+/*
+ * ContentAddressedStore.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.core.util.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cn.raytrend.utopiaframework.core.util.codec.DigestUtil;
+import cn.raytrend.utopiaframework.core.util.codec.EncoderUtil;
+
+/**
+ * 按内容寻址的文件存储, 用文件内容的 SHA-256 作为文件名, 内容相同的文件只保存一份.
+ * <p>
+ * 文件的路径为: rootDir/SHA-256 的第 1-2 位/第 3-4 位/SHA-256.扩展名, 两级目录最多 65536 个, 每个目录中的文件数量不会太多.
+ * 构造时会扫描一遍 rootDir, 将已有文件的 SHA-256 的前 8 个字节载入内存中的索引, 每个文件只占用一个 {@link Long}.
+ * 索引只用于快速判断, 命中后还会检查文件是否真的存在.
+ * </p>
+ * <p>
+ * 不超过 memoryThreshold 的文件会先读到内存中计算 SHA-256, 如果已经存在相同内容的文件则不会写磁盘; 更大的文件会通过
+ * {@link FileUtil#write(InputStream, FileChannel, MessageDigest)} 写到 rootDir/.tmp 中的临时文件, 写入的同时计算散列,
+ * 完成后再重命名或者删除. 由于文件名就是内容的散列, 不同的上传不会再有文件名冲突.
+ * </p>
+ * 
+ * @author zhouych
+ */
+public class ContentAddressedStore {
+	
+	private static final Logger logger = LoggerFactory.getLogger(ContentAddressedStore.class);
+	
+	/**
+	 * 默认在内存中计算散列的文件的最大字节数
+	 */
+	public static final int DEFAULT_MEMORY_THRESHOLD = 256 * 1024;
+	
+	private static final String TEMP_DIR = ".tmp";
+	
+	/**
+	 * 锁的分段数, 必须是 2 的幂
+	 */
+	private static final int LOCK_STRIPES = 64;
+	
+	private static final Pattern SHARD_PATTERN = Pattern.compile("[0-9a-f]{2}");
+	
+	private static final Pattern FILE_PATTERN = Pattern.compile("[0-9a-f]{64}(\\.[a-z0-9]{1,10})?");
+	
+	private static final Pattern EXTENSION_PATTERN = Pattern.compile("[a-z0-9]{0,10}");
+	
+	private final File rootDir;
+	
+	private final File tempDir;
+	
+	private final int memoryThreshold;
+	
+	/**
+	 * 已有文件的 SHA-256 的前 8 个字节
+	 */
+	private final Set<Long> index = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+	
+	/**
+	 * 按散列分段的锁, 保证相同内容的文件不会被并发地重命名
+	 */
+	private final Object[] locks = new Object[LOCK_STRIPES];
+	
+	private final AtomicLong storedCount = new AtomicLong();
+	
+	private final AtomicLong duplicateCount = new AtomicLong();
+	
+	/**
+	 * 使用默认的 {@link #DEFAULT_MEMORY_THRESHOLD} 创建.
+	 * 
+	 * @param rootDir
+	 */
+	public ContentAddressedStore(File rootDir) {
+		this(rootDir, DEFAULT_MEMORY_THRESHOLD);
+	}
+	
+	/**
+	 * @param rootDir
+	 *            存储的根目录, 不存在时会被创建
+	 * @param memoryThreshold
+	 *            在内存中计算散列的文件的最大字节数
+	 */
+	public ContentAddressedStore(File rootDir, int memoryThreshold) {
+		if (memoryThreshold < 0) {
+			throw new IllegalArgumentException("memoryThreshold must not be negative");
+		}
+		this.rootDir = rootDir;
+		this.tempDir = new File(rootDir, TEMP_DIR);
+		this.memoryThreshold = memoryThreshold;
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			locks[i] = new Object();
+		}
+		if (!tempDir.isDirectory() && !tempDir.mkdirs()) {
+			throw new IllegalArgumentException("cannot create directory " + tempDir);
+		}
+		loadIndex();
+	}
+	
+	/**
+	 * 保存输入流中的内容, 如果已经存在相同内容且相同扩展名的文件则直接返回已有的文件. 输入流不会被关闭.
+	 * 
+	 * @param input
+	 * @param extension
+	 *            文件的扩展名, 只能包含字母和数字, 可以为空
+	 * @return
+	 * @throws IOException
+	 */
+	public StoredFile store(InputStream input, String extension) throws IOException {
+		
+		String ext = normalizeExtension(extension);
+		MessageDigest md = newDigest();
+		// 先读到内存中, 多读一个字节用于判断是否超过 memoryThreshold, 超过后改为写临时文件
+		int limit = memoryThreshold + 1;
+		byte[] head = new byte[Math.min(limit, 8192)];
+		int count = 0;
+		int n;
+		while (count < limit) {
+			if (count == head.length) {
+				byte[] grown = new byte[(int) Math.min(head.length * 2L, limit)];
+				System.arraycopy(head, 0, grown, 0, count);
+				head = grown;
+			}
+			n = input.read(head, count, head.length - count);
+			if (n == -1) {
+				break;
+			}
+			count += n;
+		}
+		if (count < limit) {
+			md.update(head, 0, count);
+			String hash = EncoderUtil.hexEncode(md.digest());
+			File target = getFile(hash, ext);
+			if (isStored(hash, target)) {
+				duplicateCount.incrementAndGet();
+				return new StoredFile(hash, getPath(hash, ext), target, count, true);
+			}
+			File temp = File.createTempFile("upload", ".tmp", tempDir);
+			boolean success = false;
+			FileOutputStream output = new FileOutputStream(temp);
+			try {
+				FileUtil.write(head, 0, count, output.getChannel());
+				success = true;
+			} finally {
+				output.close();
+				if (!success) {
+					deleteQuietly(temp);
+				}
+			}
+			return commit(temp, hash, ext, count);
+		}
+		
+		// 超过 memoryThreshold 时与非去重的上传一样通过 FileChannel 和 direct buffer 写入, 同时计算散列
+		File temp = File.createTempFile("upload", ".tmp", tempDir);
+		long size = count;
+		boolean success = false;
+		FileOutputStream output = new FileOutputStream(temp);
+		try {
+			FileChannel channel = output.getChannel();
+			md.update(head, 0, count);
+			FileUtil.write(head, 0, count, channel);
+			// 之后不再需要内存中的缓冲区
+			head = null;
+			size += FileUtil.write(input, channel, md);
+			success = true;
+		} finally {
+			output.close();
+			if (!success) {
+				deleteQuietly(temp);
+			}
+		}
+		String hash = EncoderUtil.hexEncode(md.digest());
+		return commit(temp, hash, ext, size);
+	}
+	
+	/**
+	 * 判断是否已经存在内容的 SHA-256 为 hash 且扩展名为 extension 的文件.
+	 * 
+	 * @param hash
+	 * @param extension
+	 * @return
+	 */
+	public boolean contains(String hash, String extension) {
+		String ext = normalizeExtension(extension);
+		return isStored(hash, getFile(hash, ext));
+	}
+	
+	/**
+	 * 获取 hash 和 extension 对应的文件, 文件不一定存在.
+	 * 
+	 * @param hash
+	 * @param extension
+	 * @return
+	 */
+	public File getFile(String hash, String extension) {
+		return new File(rootDir, getPath(hash, normalizeExtension(extension)).replace('/', File.separatorChar));
+	}
+	
+	/**
+	 * 获取文件相对于 rootDir 的路径, 以 '/' 分隔, 比如 ab/cd/abcd....jpg.
+	 * 
+	 * @param hash
+	 * @param extension
+	 * @return
+	 */
+	public String getPath(String hash, String extension) {
+		if (hash == null || hash.length() != 64) {
+			throw new IllegalArgumentException("illegal SHA-256: " + hash);
+		}
+		String ext = normalizeExtension(extension);
+		StringBuilder path = new StringBuilder(72 + ext.length());
+		path.append(hash, 0, 2).append('/').append(hash, 2, 4).append('/').append(hash);
+		if (ext.length() > 0) {
+			path.append('.').append(ext);
+		}
+		return path.toString();
+	}
+	
+	public File getRootDir() {
+		return rootDir;
+	}
+	
+	/**
+	 * 获取索引中的文件数量.
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return index.size();
+	}
+	
+	/**
+	 * 获取实际写入磁盘的文件数量.
+	 * 
+	 * @return
+	 */
+	public long getStoredCount() {
+		return storedCount.get();
+	}
+	
+	/**
+	 * 获取因为内容重复而复用已有文件的次数.
+	 * 
+	 * @return
+	 */
+	public long getDuplicateCount() {
+		return duplicateCount.get();
+	}
+	
+	/**
+	 * 将临时文件移动到 hash 对应的位置. 如果在此期间其他线程已经保存了相同的内容, 则删除临时文件并复用已有的文件.
+	 * <p>
+	 * POSIX 上的 renameTo 会直接覆盖已有的文件, 不能用重命名是否失败来判断是否重复, 所以按散列加锁后再检查目标文件是否存在,
+	 * 保证同一个 JVM 中并发保存相同内容时只有一个返回 isDuplicate() == false. 多个进程共享同一个 rootDir 时无法保证,
+	 * 此时 isDuplicate() 只是尽力而为.
+	 * </p>
+	 */
+	private StoredFile commit(File temp, String hash, String ext, long size) throws IOException {
+		File target = getFile(hash, ext);
+		synchronized (locks[(int) (prefix(hash).longValue() & (LOCK_STRIPES - 1))]) {
+			if (target.isFile()) {
+				deleteQuietly(temp);
+				index.add(prefix(hash));
+				duplicateCount.incrementAndGet();
+				return new StoredFile(hash, getPath(hash, ext), target, size, true);
+			}
+			File dir = target.getParentFile();
+			if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+				deleteQuietly(temp);
+				throw new IOException("cannot create directory " + dir);
+			}
+			if (!temp.renameTo(target)) {
+				deleteQuietly(temp);
+				throw new IOException("cannot rename " + temp + " to " + target);
+			}
+			index.add(prefix(hash));
+		}
+		storedCount.incrementAndGet();
+		return new StoredFile(hash, getPath(hash, ext), target, size, false);
+	}
+	
+	private boolean isStored(String hash, File target) {
+		return index.contains(prefix(hash)) && target.isFile();
+	}
+	
+	/**
+	 * 扫描 rootDir 下的两级目录, 载入已有文件的索引.
+	 */
+	private void loadIndex() {
+		long start = System.currentTimeMillis();
+		File[] level1 = rootDir.listFiles();
+		if (level1 != null) {
+			for (File dir1 : level1) {
+				if (!dir1.isDirectory() || !SHARD_PATTERN.matcher(dir1.getName()).matches()) {
+					continue;
+				}
+				File[] level2 = dir1.listFiles();
+				if (level2 == null) {
+					continue;
+				}
+				for (File dir2 : level2) {
+					if (!dir2.isDirectory() || !SHARD_PATTERN.matcher(dir2.getName()).matches()) {
+						continue;
+					}
+					String[] names = dir2.list();
+					if (names == null) {
+						continue;
+					}
+					for (String name : names) {
+						if (FILE_PATTERN.matcher(name).matches()) {
+							index.add(prefix(name));
+						}
+					}
+				}
+			}
+		}
+		logger.info("loaded {} files from {} in {} ms", new Object[] {index.size(), rootDir,
+				System.currentTimeMillis() - start});
+	}
+	
+	private static Long prefix(String hash) {
+		return Long.valueOf(Long.parseLong(hash.substring(0, 8), 16) << 32 | Long.parseLong(hash.substring(8, 16), 16));
+	}
+	
+	private static String normalizeExtension(String extension) {
+		String ext = extension == null ? "" : extension.toLowerCase();
+		if (!EXTENSION_PATTERN.matcher(ext).matches()) {
+			throw new IllegalArgumentException("illegal extension: " + extension);
+		}
+		return ext;
+	}
+	
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(DigestUtil.SHA256);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("Unexpected Checked Exception.", e);
+		}
+	}
+	
+	private static void deleteQuietly(File file) {
+		if (!file.delete() && file.exists()) {
+			logger.warn("cannot delete {}", file);
+		}
+	}
+	
+	/**
+	 * 保存的结果.
+	 */
+	public static final class StoredFile {
+		
+		private final String hash;
+		
+		private final String path;
+		
+		private final File file;
+		
+		private final long size;
+		
+		private final boolean duplicate;
+		
+		StoredFile(String hash, String path, File file, long size, boolean duplicate) {
+			this.hash = hash;
+			this.path = path;
+			this.file = file;
+			this.size = size;
+			this.duplicate = duplicate;
+		}
+		
+		/**
+		 * 文件内容的 SHA-256, 小写的 Hex 编码.
+		 */
+		public String getHash() {
+			return hash;
+		}
+		
+		/**
+		 * 文件相对于 rootDir 的路径, 以 '/' 分隔.
+		 */
+		public String getPath() {
+			return path;
+		}
+		
+		public File getFile() {
+			return file;
+		}
+		
+		public long getSize() {
+			return size;
+		}
+		
+		/**
+		 * 是否复用了已有的文件, 为 true 时本次没有写入任何文件. 同一个 JVM 中并发保存相同的内容时只有一个结果为 false,
+		 * 多个进程共享同一个 rootDir 时不保证.
+		 */
+		public boolean isDuplicate() {
+			return duplicate;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * FileUtil.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.core.util.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+
+/**
+ * 文件读写的工具类.
+ * <p>
+ * 写文件时使用每个线程复用的 64K direct buffer 和 {@link FileChannel}, 在写入的同时计算消息摘要, 不需要再读一遍文件, 也
+ * 不会为每次写入分配缓冲区.
+ * </p>
+ * 
+ * @author zhouych
+ */
+public class FileUtil {
+	
+	/**
+	 * 每个线程复用的 direct buffer
+	 */
+	private static final ThreadLocal<ByteBuffer> TRANSFER_BUFFER = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocateDirect(64 * 1024);
+		}
+	};
+	
+	/**
+	 * 将输入流中剩余的内容写入 channel, 同时更新消息摘要. 输入流和 channel 都不会被关闭.
+	 * 
+	 * @param input
+	 * @param channel
+	 * @param md
+	 *            为 null 时不计算摘要
+	 * @return 写入的字节数
+	 * @throws IOException
+	 */
+	public static long write(InputStream input, FileChannel channel, MessageDigest md) throws IOException {
+		// 不能关闭这个 channel, 否则会同时关闭输入流
+		ReadableByteChannel in = Channels.newChannel(input);
+		ByteBuffer buffer = TRANSFER_BUFFER.get();
+		long size = 0;
+		buffer.clear();
+		while (in.read(buffer) != -1) {
+			buffer.flip();
+			size += buffer.remaining();
+			if (md != null) {
+				md.update(buffer.duplicate());
+			}
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+		return size;
+	}
+	
+	/**
+	 * 将字节数组中的内容写入 channel.
+	 * 
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @param channel
+	 * @throws IOException
+	 */
+	public static void write(byte[] bytes, int offset, int length, FileChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
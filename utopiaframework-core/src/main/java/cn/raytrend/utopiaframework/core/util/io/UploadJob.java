@@ -0,0 +1,92 @@
+/*
+ * UploadJob.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.core.util.io;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * {@link UploadJobQueue} 中的一个任务, 表示用某个 {@link UploadProcessor} 处理某个文件.
+ * 
+ * @author zhouych
+ */
+public final class UploadJob {
+	
+	private final String id;
+	
+	private final String processor;
+	
+	private final File file;
+	
+	private final Map<String, String> attributes;
+	
+	private final long createdTime;
+	
+	private volatile int attempts;
+	
+	UploadJob(String id, String processor, File file, Map<String, String> attributes, long createdTime,
+			int attempts) {
+		this.id = id;
+		this.processor = processor;
+		this.file = file;
+		this.attributes = Collections.unmodifiableMap(attributes);
+		this.createdTime = createdTime;
+		this.attempts = attempts;
+	}
+	
+	/**
+	 * 任务的 id, 同时也是任务文件的文件名.
+	 */
+	public String getId() {
+		return id;
+	}
+	
+	/**
+	 * 处理器注册时的名字.
+	 */
+	public String getProcessor() {
+		return processor;
+	}
+	
+	/**
+	 * 需要处理的文件.
+	 */
+	public File getFile() {
+		return file;
+	}
+	
+	/**
+	 * 提交任务时附带的属性, 比如文件的类型, url 和散列值.
+	 */
+	public Map<String, String> getAttributes() {
+		return attributes;
+	}
+	
+	public String getAttribute(String name) {
+		return attributes.get(name);
+	}
+	
+	public long getCreatedTime() {
+		return createdTime;
+	}
+	
+	/**
+	 * 已经失败的次数.
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+	
+	void incrementAttempts() {
+		attempts++;
+	}
+	
+	@Override
+	public String toString() {
+		return id + "[" + processor + ", " + file + ", attempts=" + attempts + "]";
+	}
+}
@@ -0,0 +1,492 @@
+/*
+ * UploadJobQueue.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.core.util.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 上传文件后续处理的任务队列, 让上传请求立即返回, 耗时的处理(缩略图, 散列, 病毒扫描等)在后台的工作线程中进行.
+ * <ul>
+ *     <li>1) 每个任务在入队之前先保存为 queueDir 中的一个 .job 文件, 处理成功后删除, 所以重启之后 {@link #start()} 会继续处理
+ *     未完成的任务.</li>
+ *     <li>2) 处理器通过 {@link #register(String, UploadProcessor)} 注册, {@link #submit(File, Map)} 为每个处理器各生成一个
+ *     任务, 某个处理器失败只会重试这个处理器.</li>
+ *     <li>3) 失败的任务按 retryDelayMillis * 2^(失败次数 - 1) 的间隔重试, 失败 maxAttempts 次后移到 queueDir/failed 中.</li>
+ *     <li>4) 工作线程的数量固定, 未完成的任务数达到 capacity 时 submit 会抛出 {@link RejectedExecutionException}.</li>
+ * </ul>
+ * 任务文件使用 {@link Properties} 格式, 文件名为任务的 id.
+ * 
+ * @author zhouych
+ * @see UploadProcessor
+ */
+public class UploadJobQueue {
+	
+	private static final Logger logger = LoggerFactory.getLogger(UploadJobQueue.class);
+	
+	/**
+	 * 默认的最大尝试次数
+	 */
+	public static final int DEFAULT_MAX_ATTEMPTS = 5;
+	
+	/**
+	 * 默认的第一次重试的间隔
+	 */
+	public static final long DEFAULT_RETRY_DELAY_MILLIS = 1000L;
+	
+	private static final String JOB_SUFFIX = ".job";
+	
+	private static final String FAILED_DIR = "failed";
+	
+	private static final String ATTRIBUTE_PREFIX = "attr.";
+	
+	/**
+	 * 重试间隔最多翻倍的次数
+	 */
+	private static final int MAX_BACKOFF_SHIFT = 10;
+	
+	private final File queueDir;
+	
+	private final File failedDir;
+	
+	private final int threads;
+	
+	private final int capacity;
+	
+	private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	
+	private volatile long retryDelayMillis = DEFAULT_RETRY_DELAY_MILLIS;
+	
+	private final ConcurrentMap<String, UploadProcessor> processors = new ConcurrentHashMap<String, UploadProcessor>();
+	
+	private final DelayQueue<DelayedJob> queue = new DelayQueue<DelayedJob>();
+	
+	private final AtomicLong sequence = new AtomicLong();
+	
+	/**
+	 * 已经接受但还没有完成的任务数, 包括正在处理的任务
+	 */
+	private final AtomicInteger pendingCount = new AtomicInteger();
+	
+	private final AtomicInteger activeCount = new AtomicInteger();
+	
+	private final AtomicLong completedCount = new AtomicLong();
+	
+	private final AtomicLong failedCount = new AtomicLong();
+	
+	private final AtomicLong retryCount = new AtomicLong();
+	
+	private final AtomicLong rejectedCount = new AtomicLong();
+	
+	private Thread[] workers;
+	
+	private volatile boolean running;
+	
+	/**
+	 * @param queueDir
+	 *            保存任务文件的目录, 不存在时会被创建
+	 * @param threads
+	 *            工作线程的数量
+	 * @param capacity
+	 *            未完成的任务的最大数量
+	 */
+	public UploadJobQueue(File queueDir, int threads, int capacity) {
+		if (threads <= 0 || capacity <= 0) {
+			throw new IllegalArgumentException("threads and capacity must be positive");
+		}
+		this.queueDir = queueDir;
+		this.failedDir = new File(queueDir, FAILED_DIR);
+		this.threads = threads;
+		this.capacity = capacity;
+		if (!failedDir.isDirectory() && !failedDir.mkdirs()) {
+			throw new IllegalArgumentException("cannot create directory " + failedDir);
+		}
+	}
+	
+	/**
+	 * 注册处理器, 应该在 {@link #start()} 之前调用, 否则重启前未完成的这个处理器的任务不会被载入.
+	 * 
+	 * @param name
+	 *            处理器的名字, 会保存在任务文件中, 所以重启前后应该保持一致
+	 * @param processor
+	 */
+	public void register(String name, UploadProcessor processor) {
+		if (name == null || processor == null) {
+			throw new IllegalArgumentException("name and processor must not be null");
+		}
+		processors.put(name, processor);
+	}
+	
+	/**
+	 * 载入 queueDir 中未完成的任务并启动工作线程.
+	 */
+	public synchronized void start() {
+		if (running) {
+			throw new IllegalStateException("already started");
+		}
+		// 重新启动时丢弃内存中的任务, 以磁盘上的任务文件为准
+		queue.clear();
+		pendingCount.set(0);
+		recover();
+		running = true;
+		workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread(new Worker(), "UploadJobQueue-" + (i + 1));
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+	
+	/**
+	 * 停止工作线程, 正在处理的任务会被中断, 未完成的任务保留在 queueDir 中, 下次启动时继续处理.
+	 */
+	public synchronized void shutdown() {
+		running = false;
+		if (workers != null) {
+			for (Thread worker : workers) {
+				worker.interrupt();
+			}
+			workers = null;
+		}
+	}
+	
+	/**
+	 * 为每个已注册的处理器提交一个处理 file 的任务.
+	 * 
+	 * @param file
+	 * @param attributes
+	 *            任务附带的属性, 可以为 null
+	 * @return 提交的任务
+	 * @throws IOException
+	 *             保存任务文件失败
+	 * @throws RejectedExecutionException
+	 *             未完成的任务太多
+	 */
+	public List<UploadJob> submit(File file, Map<String, String> attributes) throws IOException {
+		List<String> names = new ArrayList<String>(processors.keySet());
+		if (names.isEmpty()) {
+			return Collections.emptyList();
+		}
+		reserve(names.size());
+		List<UploadJob> jobs = new ArrayList<UploadJob>(names.size());
+		for (int i = 0; i < names.size(); i++) {
+			try {
+				jobs.add(enqueue(names.get(i), file, attributes));
+			} catch (IOException e) {
+				pendingCount.addAndGet(i - names.size());
+				throw e;
+			}
+		}
+		return jobs;
+	}
+	
+	/**
+	 * 提交一个用名字为 processor 的处理器处理 file 的任务.
+	 * 
+	 * @param processor
+	 * @param file
+	 * @param attributes
+	 *            任务附带的属性, 可以为 null
+	 * @return
+	 * @throws IOException
+	 *             保存任务文件失败
+	 * @throws RejectedExecutionException
+	 *             未完成的任务太多
+	 */
+	public UploadJob submit(String processor, File file, Map<String, String> attributes) throws IOException {
+		if (!processors.containsKey(processor)) {
+			throw new IllegalArgumentException("unknown processor: " + processor);
+		}
+		reserve(1);
+		try {
+			return enqueue(processor, file, attributes);
+		} catch (IOException e) {
+			pendingCount.decrementAndGet();
+			throw e;
+		}
+	}
+	
+	public void setMaxAttempts(int maxAttempts) {
+		if (maxAttempts <= 0) {
+			throw new IllegalArgumentException("maxAttempts must be positive");
+		}
+		this.maxAttempts = maxAttempts;
+	}
+	
+	public void setRetryDelayMillis(long retryDelayMillis) {
+		if (retryDelayMillis < 0) {
+			throw new IllegalArgumentException("retryDelayMillis must not be negative");
+		}
+		this.retryDelayMillis = retryDelayMillis;
+	}
+	
+	/**
+	 * 获取未完成的任务数, 包括等待重试和正在处理的任务.
+	 * 
+	 * @return
+	 */
+	public int getPendingCount() {
+		return pendingCount.get();
+	}
+	
+	/**
+	 * 获取正在处理的任务数.
+	 * 
+	 * @return
+	 */
+	public int getActiveCount() {
+		return activeCount.get();
+	}
+	
+	public long getCompletedCount() {
+		return completedCount.get();
+	}
+	
+	/**
+	 * 获取失败 maxAttempts 次后被放弃的任务数.
+	 * 
+	 * @return
+	 */
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+	
+	public long getRetryCount() {
+		return retryCount.get();
+	}
+	
+	/**
+	 * 获取因为队列满了而被拒绝的任务数.
+	 * 
+	 * @return
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+	
+	private void reserve(int count) {
+		if (pendingCount.addAndGet(count) > capacity) {
+			pendingCount.addAndGet(-count);
+			rejectedCount.addAndGet(count);
+			throw new RejectedExecutionException("upload job queue is full");
+		}
+	}
+	
+	private UploadJob enqueue(String processor, File file, Map<String, String> attributes) throws IOException {
+		String id = Long.toString(System.currentTimeMillis(), 36) + "-" + sequence.incrementAndGet();
+		Map<String, String> copy = attributes == null ? new HashMap<String, String>(0)
+				: new HashMap<String, String>(attributes);
+		UploadJob job = new UploadJob(id, processor, file, copy, System.currentTimeMillis(), 0);
+		save(job);
+		queue.put(new DelayedJob(job, 0));
+		return job;
+	}
+	
+	/**
+	 * 载入 queueDir 中的任务文件, 没有注册处理器的任务保留在磁盘上.
+	 */
+	private void recover() {
+		File[] files = queueDir.listFiles();
+		if (files == null) {
+			return;
+		}
+		int count = 0;
+		for (File file : files) {
+			String name = file.getName();
+			if (!file.isFile() || !name.endsWith(JOB_SUFFIX)) {
+				continue;
+			}
+			try {
+				UploadJob job = load(name.substring(0, name.length() - JOB_SUFFIX.length()), file);
+				if (!processors.containsKey(job.getProcessor())) {
+					logger.warn("no processor registered for upload job {}", job);
+					continue;
+				}
+				pendingCount.incrementAndGet();
+				queue.put(new DelayedJob(job, 0));
+				count++;
+			} catch (IOException e) {
+				logger.warn("cannot load upload job " + file, e);
+			}
+		}
+		if (count > 0) {
+			logger.info("recovered {} upload jobs from {}", count, queueDir);
+		}
+	}
+	
+	private void process(UploadJob job) {
+		UploadProcessor processor = processors.get(job.getProcessor());
+		activeCount.incrementAndGet();
+		try {
+			if (processor == null) {
+				throw new IllegalStateException("no processor registered: " + job.getProcessor());
+			}
+			processor.process(job);
+			deleteJobFile(new File(queueDir, job.getId() + JOB_SUFFIX));
+			pendingCount.decrementAndGet();
+			completedCount.incrementAndGet();
+		} catch (Throwable e) {
+			// 处理器抛出的 Error(比如解码大图片时的 OutOfMemoryError)也作为一次失败, 否则工作线程会退出
+			if (!running) {
+				// 关闭时被中断的任务不计入失败次数, 下次启动时重新处理
+				return;
+			}
+			job.incrementAttempts();
+			if (job.getAttempts() >= maxAttempts) {
+				logger.warn("upload job " + job + " failed, giving up", e);
+				File jobFile = new File(queueDir, job.getId() + JOB_SUFFIX);
+				if (!jobFile.renameTo(new File(failedDir, jobFile.getName()))) {
+					deleteJobFile(jobFile);
+				}
+				pendingCount.decrementAndGet();
+				failedCount.incrementAndGet();
+				return;
+			}
+			logger.info("upload job {} failed, will retry: {}", job, e.toString());
+			try {
+				save(job);
+			} catch (IOException ioe) {
+				logger.warn("cannot save upload job " + job, ioe);
+			}
+			retryCount.incrementAndGet();
+			long delay = retryDelayMillis << Math.min(job.getAttempts() - 1, MAX_BACKOFF_SHIFT);
+			queue.put(new DelayedJob(job, delay));
+		} finally {
+			activeCount.decrementAndGet();
+		}
+	}
+	
+	/**
+	 * 先写到临时文件再重命名, 保证任务文件总是完整的.
+	 */
+	private void save(UploadJob job) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("processor", job.getProcessor());
+		properties.setProperty("file", job.getFile().getPath());
+		properties.setProperty("created", String.valueOf(job.getCreatedTime()));
+		properties.setProperty("attempts", String.valueOf(job.getAttempts()));
+		for (Map.Entry<String, String> entry : job.getAttributes().entrySet()) {
+			if (entry.getValue() != null) {
+				properties.setProperty(ATTRIBUTE_PREFIX + entry.getKey(), entry.getValue());
+			}
+		}
+		File target = new File(queueDir, job.getId() + JOB_SUFFIX);
+		File temp = new File(queueDir, job.getId() + JOB_SUFFIX + ".tmp");
+		OutputStream output = new FileOutputStream(temp);
+		try {
+			properties.store(output, null);
+		} finally {
+			output.close();
+		}
+		// renameTo 在 Windows 上不能覆盖已有的文件
+		if (!temp.renameTo(target) && !(target.delete() && temp.renameTo(target))) {
+			temp.delete();
+			throw new IOException("cannot rename " + temp + " to " + target);
+		}
+	}
+	
+	private static UploadJob load(String id, File file) throws IOException {
+		Properties properties = new Properties();
+		InputStream input = new FileInputStream(file);
+		try {
+			properties.load(input);
+		} finally {
+			input.close();
+		}
+		String processor = properties.getProperty("processor");
+		String path = properties.getProperty("file");
+		if (processor == null || path == null) {
+			throw new IOException("corrupt upload job file " + file);
+		}
+		Map<String, String> attributes = new HashMap<String, String>();
+		for (String key : properties.stringPropertyNames()) {
+			if (key.startsWith(ATTRIBUTE_PREFIX)) {
+				attributes.put(key.substring(ATTRIBUTE_PREFIX.length()), properties.getProperty(key));
+			}
+		}
+		try {
+			return new UploadJob(id, processor, new File(path), attributes,
+					Long.parseLong(properties.getProperty("created", "0")),
+					Integer.parseInt(properties.getProperty("attempts", "0")));
+		} catch (NumberFormatException e) {
+			throw new IOException("corrupt upload job file " + file);
+		}
+	}
+	
+	private static void deleteJobFile(File file) {
+		if (!file.delete() && file.exists()) {
+			logger.warn("cannot delete upload job file {}", file);
+		}
+	}
+	
+	private class Worker implements Runnable {
+		
+		@Override
+		public void run() {
+			while (running) {
+				DelayedJob delayed;
+				try {
+					delayed = queue.take();
+				} catch (InterruptedException e) {
+					break;
+				}
+				try {
+					process(delayed.job);
+				} catch (Throwable e) {
+					// process 在处理失败时又出错, 任务文件仍然保留, 下次启动时恢复, 工作线程继续运行
+					logger.error("unexpected error while processing upload job " + delayed.job, e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 在 {@link DelayQueue} 中等待到期的任务.
+	 */
+	private static final class DelayedJob implements Delayed {
+		
+		private final UploadJob job;
+		
+		private final long dueTime;
+		
+		DelayedJob(UploadJob job, long delayMillis) {
+			this.job = job;
+			this.dueTime = System.currentTimeMillis() + delayMillis;
+		}
+		
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(dueTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+		
+		@Override
+		public int compareTo(Delayed other) {
+			long diff = getDelay(TimeUnit.MILLISECONDS) - other.getDelay(TimeUnit.MILLISECONDS);
+			return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+		}
+	}
+}
@@ -0,0 +1,27 @@
+/*
+ * UploadProcessor.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.core.util.io;
+
+/**
+ * 上传文件的后续处理器, 比如生成缩略图, 病毒扫描等, 由 {@link UploadJobQueue} 的工作线程调用. 实现类必须是线程安全的.
+ * <p>
+ * 处理失败时抛出异常即可, 队列会稍后重试, 所以处理过程应该是幂等的.
+ * </p>
+ * 
+ * @author zhouych
+ * @see UploadJobQueue
+ */
+public interface UploadProcessor {
+	
+	/**
+	 * 处理一个上传的文件.
+	 * 
+	 * @param job
+	 * @throws Exception
+	 *             处理失败, 需要重试
+	 */
+	void process(UploadJob job) throws Exception;
+}
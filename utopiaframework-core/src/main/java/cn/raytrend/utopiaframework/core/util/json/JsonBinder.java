@@ -6,9 +6,24 @@
 package cn.raytrend.utopiaframework.core.util.json;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang3.StringUtils;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.ObjectReader;
+import org.codehaus.jackson.map.ObjectWriter;
+import org.codehaus.jackson.map.SerializationConfig;
 import org.codehaus.jackson.map.annotate.JsonSerialize.Inclusion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,7 +33,13 @@ import org.slf4j.LoggerFactory;
  * 字符串有很多好处, 比如往缓存中存放数据. 可以看作是对 Jackson 的简单封装, 也可以通过 {@link #getObjectMapper()}
  * 方法获得<code>objectMapper</code> 对象来完成其他操作.
  * <p>
- * 为了获得更好的效率, 采用了 singleton 模式, jackson 对此是支持的.
+ * 为了获得更好的效率, 每种 {@link Inclusion} 对应一个预先创建好的实例, 各自持有独立配置的 {@link ObjectMapper}, 在类加载的时候
+ * 就全部创建完毕, 所以 {@link #getInstance(Inclusion)} 不需要加锁, 不同的实例之间也不会互相修改配置. 启动的时候可以调用
+ * {@link #warmUp(Class...)} 预先生成实体类的序列化器, 避免第一次请求的时候才去进行内省.
+ * </p>
+ * <p>
+ * 对于较大的数据, 可以使用以流为参数的方法直接读写, 避免先生成完整的 json 字符串; 对于大的列表, 可以使用
+ * {@link #toJsonArray(Iterator, OutputStream)} 逐个元素地输出, 内存占用与列表的大小无关. 这些方法不会关闭传入的流.
  * </p>
  * 
  * @author zhouych
@@ -27,33 +48,100 @@ public class JsonBinder {
 
 	private static Logger logger = LoggerFactory.getLogger(JsonBinder.class);
 	
-	private static ObjectMapper objectMapper = new ObjectMapper();
+	/**
+	 * 每种 {@link Inclusion} 对应的实例, 在静态初始化时创建, 之后不再修改
+	 */
+	private static final Map<Inclusion, JsonBinder> INSTANCES;
+	
+	static {
+		Map<Inclusion, JsonBinder> instances = new EnumMap<Inclusion, JsonBinder>(Inclusion.class);
+		for (Inclusion inclusion : Inclusion.values()) {
+			instances.put(inclusion, new JsonBinder(inclusion));
+		}
+		INSTANCES = instances;
+	}
+	
+	private final ObjectMapper objectMapper;
+	
+	private final Inclusion inclusion;
 	
-	private static JsonBinder jsonBinder;
+	/**
+	 * 按类型缓存的 {@link ObjectReader}, 其本身是不可变且线程安全的
+	 */
+	private final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<Class<?>, ObjectReader>();
+	
+	/**
+	 * 按类型缓存的 {@link ObjectWriter}, 其本身是不可变且线程安全的
+	 */
+	private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<Class<?>, ObjectWriter>();
 	
 	private JsonBinder(Inclusion inclusion) {
-		// serializing 设置成 Inclusion.NON_DEFAULT 来提高性能
-		objectMapper.getSerializationConfig().withSerializationInclusion(inclusion);
+		this.inclusion = inclusion;
+		this.objectMapper = new ObjectMapper();
+		objectMapper.setSerializationInclusion(inclusion);
+		// 默认每次 writeValue 之后都会 flush, 逐个元素输出数组时会导致每个元素一次 flush, 改为在输出结束时统一 flush
+		objectMapper.configure(SerializationConfig.Feature.FLUSH_AFTER_WRITE_VALUE, false);
 	}
 	
 	/**
-	 * 允许修改 {@link Inclusion}, 默认是 {@link Inclusion#NON_DEFAULT}, 也即对于未修改的属性不用进行 json 转换.
+	 * 获取指定 {@link Inclusion} 对应的实例, 比如 {@link Inclusion#NON_DEFAULT} 对于未修改的属性不用进行 json 转换, 输出更短,
+	 * 但是 false, 0, null 等默认值的属性不会出现在 json 中, 需要调用方明确选择.
 	 * 
 	 * @param inclusion
 	 * @see #getInstance()
 	 */
 	public static JsonBinder getInstance(Inclusion inclusion) {
-		if (jsonBinder == null) {
-			jsonBinder = new JsonBinder(inclusion);
+		if (inclusion == null) {
+			throw new IllegalArgumentException("inclusion can't be null");
 		}
-		return jsonBinder;
+		return INSTANCES.get(inclusion);
 	}
 	
+	/**
+	 * 获取 {@link Inclusion#ALWAYS} 对应的实例, 输出所有的属性. 以前的版本虽然声明为 NON_DEFAULT, 但是该配置并没有生效,
+	 * 实际的输出一直是 ALWAYS, 为了不改变已有调用方的 json 格式这里保持 ALWAYS, 需要 NON_DEFAULT 时使用
+	 * {@link #getInstance(Inclusion)}.
+	 * 
+	 * @return
+	 */
 	public static JsonBinder getInstance() {
-		if (jsonBinder == null) {
-			jsonBinder = new JsonBinder(Inclusion.NON_DEFAULT);
+		return INSTANCES.get(Inclusion.ALWAYS);
+	}
+	
+	/**
+	 * 预先生成指定类的序列化器和反序列化器并缓存起来, 一般在应用启动的时候对需要输出为 json 的实体类调用, 比如:
+	 * <pre>
+	 * {@code
+	 * JsonBinder.getInstance().warmUp(User.class, Role.class);
+	 * }
+	 * </pre>
+	 * 
+	 * @param classes
+	 */
+	public void warmUp(Class<?>... classes) {
+		for (Class<?> clazz : classes) {
+			// canSerialize/canDeserialize 会查找并缓存对应的 (反)序列化器
+			if (!objectMapper.canSerialize(clazz)) {
+				logger.warn("{} can not be serialized by jackson", clazz.getName());
+			}
+			if (!objectMapper.canDeserialize(objectMapper.constructType(clazz))) {
+				logger.debug("{} can not be deserialized by jackson", clazz.getName());
+			}
+			getReader(clazz);
+			getWriter(clazz);
+		}
+	}
+	
+	/**
+	 * 对所有 {@link Inclusion} 对应的实例预先生成指定类的序列化器和反序列化器.
+	 * 
+	 * @param classes
+	 * @see #warmUp(Class...)
+	 */
+	public static void warmUpAll(Class<?>... classes) {
+		for (JsonBinder binder : INSTANCES.values()) {
+			binder.warmUp(classes);
 		}
-		return jsonBinder;
 	}
 	
 	/**
@@ -100,11 +188,193 @@ public class JsonBinder {
 	}
 	
 	/**
-	 * 获取 <code>objectMapper</code> 对象, 完成其他该 binder 未封装的功能.
+	 * 从输入流中读取 json 并生成相应的 java 对象, 输入流默认为 UTF-8 编码. 与 {@link #fromJson(String, Class)} 不同, 解析错误会以
+	 * {@link IOException} 的形式抛出.
+	 * 
+	 * @param <T>
+	 * @param input
+	 * @param clazz
+	 * @return
+	 * @throws IOException
+	 */
+	public <T> T fromJson(InputStream input, Class<T> clazz) throws IOException {
+		JsonParser parser = objectMapper.getJsonFactory().createJsonParser(input);
+		return readValue(parser, clazz);
+	}
+	
+	/**
+	 * 从字符流中读取 json 并生成相应的 java 对象, 解析错误会以 {@link IOException} 的形式抛出.
+	 * 
+	 * @param <T>
+	 * @param reader
+	 * @param clazz
+	 * @return
+	 * @throws IOException
+	 */
+	public <T> T fromJson(Reader reader, Class<T> clazz) throws IOException {
+		JsonParser parser = objectMapper.getJsonFactory().createJsonParser(reader);
+		return readValue(parser, clazz);
+	}
+	
+	/**
+	 * 将 java 对象以 UTF-8 编码的 json 格式直接写入输出流, 而不生成中间的字符串.
+	 * 
+	 * @param object
+	 * @param output
+	 * @throws IOException
+	 */
+	public void toJson(Object object, OutputStream output) throws IOException {
+		JsonGenerator generator = objectMapper.getJsonFactory().createJsonGenerator(output, JsonEncoding.UTF8);
+		writeValue(generator, object);
+	}
+	
+	/**
+	 * 将 java 对象以 json 格式直接写入字符流, 而不生成中间的字符串.
+	 * 
+	 * @param object
+	 * @param writer
+	 * @throws IOException
+	 */
+	public void toJson(Object object, Writer writer) throws IOException {
+		JsonGenerator generator = objectMapper.getJsonFactory().createJsonGenerator(writer);
+		writeValue(generator, object);
+	}
+	
+	/**
+	 * 将迭代器中的元素逐个输出为 UTF-8 编码的 json 数组, 每输出一个元素后不再持有该元素, 所以可以用来输出大的列表或者
+	 * DAO 的游标(比如 Hibernate 的 <code>Query.iterate()</code>), 内存占用与元素的个数无关.
+	 * 
+	 * @param iterator
+	 * @param output
+	 * @throws IOException
+	 */
+	public void toJsonArray(Iterator<?> iterator, OutputStream output) throws IOException {
+		JsonGenerator generator = objectMapper.getJsonFactory().createJsonGenerator(output, JsonEncoding.UTF8);
+		writeArray(generator, iterator);
+	}
+	
+	/**
+	 * 将迭代器中的元素逐个输出为 json 数组.
+	 * 
+	 * @param iterator
+	 * @param writer
+	 * @throws IOException
+	 * @see #toJsonArray(Iterator, OutputStream)
+	 */
+	public void toJsonArray(Iterator<?> iterator, Writer writer) throws IOException {
+		JsonGenerator generator = objectMapper.getJsonFactory().createJsonGenerator(writer);
+		writeArray(generator, iterator);
+	}
+	
+	/**
+	 * 获取某个类型的 {@link ObjectReader}, 同一类型只创建一次.
+	 * 
+	 * @param clazz
+	 * @return
+	 */
+	public ObjectReader getReader(Class<?> clazz) {
+		ObjectReader reader = readers.get(clazz);
+		if (reader == null) {
+			reader = objectMapper.reader(clazz);
+			ObjectReader existing = readers.putIfAbsent(clazz, reader);
+			if (existing != null) {
+				reader = existing;
+			}
+		}
+		return reader;
+	}
+	
+	/**
+	 * 获取某个类型的 {@link ObjectWriter}, 同一类型只创建一次.
+	 * 
+	 * @param clazz
+	 * @return
+	 */
+	public ObjectWriter getWriter(Class<?> clazz) {
+		ObjectWriter writer = writers.get(clazz);
+		if (writer == null) {
+			writer = objectMapper.writerWithType(clazz);
+			ObjectWriter existing = writers.putIfAbsent(clazz, writer);
+			if (existing != null) {
+				writer = existing;
+			}
+		}
+		return writer;
+	}
+	
+	/**
+	 * 使用缓存的 {@link ObjectReader} 读取对象, 不关闭底层的输入流.
+	 */
+	private <T> T readValue(JsonParser parser, Class<T> clazz) throws IOException {
+		parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+		try {
+			return getReader(clazz).<T>readValue(parser);
+		} finally {
+			parser.close();
+		}
+	}
+	
+	/**
+	 * 使用缓存的 {@link ObjectWriter} 输出对象, 不关闭底层的输出流.
+	 */
+	private void writeValue(JsonGenerator generator, Object object) throws IOException {
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		try {
+			if (object == null) {
+				generator.writeNull();
+			} else {
+				getWriter(object.getClass()).writeValue(generator, object);
+			}
+			generator.flush();
+		} finally {
+			generator.close();
+		}
+	}
+	
+	/**
+	 * 逐个元素地输出 json 数组, 不关闭底层的输出流. 相邻元素的类型通常相同, 所以记住上一个元素的 {@link ObjectWriter}.
+	 */
+	private void writeArray(JsonGenerator generator, Iterator<?> iterator) throws IOException {
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		try {
+			generator.writeStartArray();
+			Class<?> lastClass = null;
+			ObjectWriter writer = null;
+			while (iterator.hasNext()) {
+				Object element = iterator.next();
+				if (element == null) {
+					generator.writeNull();
+					continue;
+				}
+				if (element.getClass() != lastClass) {
+					lastClass = element.getClass();
+					writer = getWriter(lastClass);
+				}
+				writer.writeValue(generator, element);
+			}
+			generator.writeEndArray();
+			generator.flush();
+		} finally {
+			generator.close();
+		}
+	}
+	
+	/**
+	 * 获取 <code>objectMapper</code> 对象, 完成其他该 binder 未封装的功能. 注意到该对象被所有使用同一 {@link Inclusion}
+	 * 的调用方共享, 请不要修改其配置, 需要不同配置的时候应该自行创建 {@link ObjectMapper}.
 	 * 
 	 * @return
 	 */
 	public ObjectMapper getObjectMapper() {
 		return objectMapper;
 	}
+	
+	/**
+	 * 获取当前实例的 {@link Inclusion}.
+	 * 
+	 * @return
+	 */
+	public Inclusion getInclusion() {
+		return inclusion;
+	}
 }
@@ -0,0 +1,380 @@
+/*
+ * HtmlTextExtractor.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.core.util.lang;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 从 html 中提取纯文本的状态机, 只扫描一遍输入, 提取到足够的字符后立即停止, 所以耗时只与输出的长度有关, 与 html 的长度无关.
+ * <p>
+ * 处理规则如下:
+ * <ul>
+ *     <li>1) 去掉所有的标签, 注释与 &lt;!DOCTYPE&gt; 等声明, 标签的属性中可以含有被引号括起来的 '&gt;'.</li>
+ *     <li>2) 去掉 &lt;script&gt; 与 &lt;style&gt; 中的内容.</li>
+ *     <li>3) 解码常用的命名实体以及 &amp;#123; 和 &amp;#x7B; 形式的数字实体, 无法识别的命名实体会被去掉.</li>
+ *     <li>4) 连续的空白字符(包括 &amp;nbsp;)合并成一个空格, 并去掉首尾的空白.</li>
+ * </ul>
+ * 不是标签开头的 '&lt;' (比如 "a &lt; b") 以及没有以 ';' 结尾的 '&amp;' 会作为文本保留.
+ * </p>
+ * <p>
+ * 输出可以直接放到 html 页面中: 解码后的文本中的 '&lt;', '&gt;', '&amp;', '"' 和单引号会重新转义为 &amp;lt;, &amp;gt;,
+ * &amp;amp;, &amp;quot; 和 &amp;#39;, 所以 "&amp;lt;img&amp;gt;" 这样转义过的标签不会变成真正的标签. length 按解码后的字符数
+ * 计算, 不包括转义增加的字符.
+ * </p>
+ * 
+ * @author zhouych
+ * @see ParseUtil#parseHtml2String(CharSequence, int)
+ */
+final class HtmlTextExtractor {
+	
+	/**
+	 * 实体名的最大长度
+	 */
+	private static final int MAX_ENTITY_LENGTH = 10;
+	
+	private static final Map<String, Character> ENTITIES = new HashMap<String, Character>();
+	
+	static {
+		ENTITIES.put("amp", '&');
+		ENTITIES.put("lt", '<');
+		ENTITIES.put("gt", '>');
+		ENTITIES.put("quot", '"');
+		ENTITIES.put("apos", '\'');
+		ENTITIES.put("nbsp", '\u00a0');
+		ENTITIES.put("copy", '©');
+		ENTITIES.put("reg", '®');
+		ENTITIES.put("trade", '™');
+		ENTITIES.put("middot", '·');
+		ENTITIES.put("times", '×');
+		ENTITIES.put("divide", '÷');
+		ENTITIES.put("hellip", '…');
+		ENTITIES.put("ndash", '–');
+		ENTITIES.put("mdash", '—');
+		ENTITIES.put("lsquo", '‘');
+		ENTITIES.put("rsquo", '’');
+		ENTITIES.put("ldquo", '“');
+		ENTITIES.put("rdquo", '”');
+		ENTITIES.put("laquo", '«');
+		ENTITIES.put("raquo", '»');
+		ENTITIES.put("yen", '¥');
+		ENTITIES.put("euro", '€');
+	}
+	
+	private final CharSequence sequence;
+	
+	private final Reader reader;
+	
+	private int position;
+	
+	private final char[] buffer;
+	
+	private int bufferPosition;
+	
+	private int bufferLength;
+	
+	/**
+	 * 被退回的字符, -2 表示没有
+	 */
+	private int pushback = -2;
+	
+	private final StringBuilder output;
+	
+	private final int length;
+	
+	/**
+	 * 已经输出的字符数, 转义的字符只算一个
+	 */
+	private int count;
+	
+	/**
+	 * 是否有等待输出的空白
+	 */
+	private boolean pendingSpace;
+	
+	/**
+	 * 输出是否被截断
+	 */
+	private boolean truncated;
+	
+	HtmlTextExtractor(CharSequence sequence, int length) {
+		this.sequence = sequence;
+		this.reader = null;
+		this.buffer = null;
+		this.length = length;
+		this.output = new StringBuilder(Math.min(length, 256) + 3);
+	}
+	
+	HtmlTextExtractor(Reader reader, int length) {
+		this.sequence = null;
+		this.reader = reader;
+		this.buffer = new char[1024];
+		this.length = length;
+		this.output = new StringBuilder(Math.min(length, 256) + 3);
+	}
+	
+	/**
+	 * 提取最多 length 个字符的纯文本, 如果还有更多的文本则在末尾加上 "...".
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	String extract() throws IOException {
+		int c;
+		while (!truncated && (c = read()) != -1) {
+			if (c == '<') {
+				int next = read();
+				if (isLetter(next) || next == '/' || next == '!' || next == '?') {
+					skipTag(next);
+				} else {
+					unread(next);
+					emit('<');
+				}
+			} else if (c == '&') {
+				decodeEntity();
+			} else {
+				emit((char) c);
+			}
+		}
+		if (truncated) {
+			if (output.length() > 0 && output.charAt(output.length() - 1) == ' ') {
+				output.setLength(output.length() - 1);
+			}
+			output.append("...");
+		}
+		return output.toString();
+	}
+	
+	/**
+	 * 输出一个可见字符, 连续的空白合并成一个空格, html 的特殊字符会被转义. 已经输出了 length 个字符之后再遇到非空白字符则
+	 * 标记为截断.
+	 */
+	private void emit(char c) {
+		if (Character.isWhitespace(c) || c == '\u00a0') {
+			pendingSpace = count > 0;
+			return;
+		}
+		if (pendingSpace) {
+			pendingSpace = false;
+			if (count < length) {
+				output.append(' ');
+				count++;
+			}
+		}
+		if (count >= length) {
+			truncated = true;
+			return;
+		}
+		count++;
+		switch (c) {
+			case '<':
+				output.append("&lt;");
+				break;
+			case '>':
+				output.append("&gt;");
+				break;
+			case '&':
+				output.append("&amp;");
+				break;
+			case '"':
+				output.append("&quot;");
+				break;
+			case '\'':
+				output.append("&#39;");
+				break;
+			default:
+				output.append(c);
+		}
+	}
+	
+	/**
+	 * 跳过一个标签, first 为 '&lt;' 之后的第一个字符.
+	 */
+	private void skipTag(int first) throws IOException {
+		if (first == '!') {
+			int c1 = read();
+			if (c1 == '-') {
+				int c2 = read();
+				if (c2 == '-') {
+					skipComment();
+					return;
+				}
+				unread(c2);
+			} else {
+				unread(c1);
+			}
+			skipToTagEnd();
+			return;
+		}
+		if (first == '/' || first == '?') {
+			skipToTagEnd();
+			return;
+		}
+		// 读取标签名, 只需要判断是否为 script 或 style
+		StringBuilder name = new StringBuilder(8);
+		name.append((char) first);
+		int c;
+		while (isLetter(c = read()) && name.length() < 8) {
+			name.append((char) c);
+		}
+		unread(c);
+		boolean selfClosing = skipToTagEnd();
+		if (!selfClosing) {
+			String tagName = name.toString();
+			if ("script".equalsIgnoreCase(tagName) || "style".equalsIgnoreCase(tagName)) {
+				skipUntil("</" + tagName.toLowerCase());
+				skipToTagEnd();
+			}
+		}
+	}
+	
+	/**
+	 * 跳到标签结束的 '&gt;' 之后, 忽略引号中的 '&gt;'. 返回标签是否以 "/&gt;" 结束.
+	 */
+	private boolean skipToTagEnd() throws IOException {
+		int quote = 0;
+		int previous = 0;
+		int c;
+		while ((c = read()) != -1) {
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '"' || c == '\'') {
+				quote = c;
+			} else if (c == '>') {
+				return previous == '/';
+			}
+			previous = c;
+		}
+		return false;
+	}
+	
+	/**
+	 * 跳到注释结束的 "--&gt;" 之后.
+	 */
+	private void skipComment() throws IOException {
+		int dashes = 0;
+		int c;
+		while ((c = read()) != -1) {
+			if (c == '>' && dashes >= 2) {
+				return;
+			}
+			dashes = c == '-' ? dashes + 1 : 0;
+		}
+	}
+	
+	/**
+	 * 跳到 end 之后, 不区分大小写. end 必须以 '&lt;' 开头且其中没有其他的 '&lt;', 这样匹配失败时只需要重新比较当前字符.
+	 */
+	private void skipUntil(String end) throws IOException {
+		int matched = 0;
+		int c;
+		while ((c = read()) != -1) {
+			if (Character.toLowerCase((char) c) == end.charAt(matched)) {
+				if (++matched == end.length()) {
+					return;
+				}
+			} else {
+				matched = c == '<' ? 1 : 0;
+			}
+		}
+	}
+	
+	/**
+	 * 解码一个实体, '&amp;' 已经读取.
+	 */
+	private void decodeEntity() throws IOException {
+		StringBuilder name = new StringBuilder(MAX_ENTITY_LENGTH);
+		int c;
+		while ((c = read()) != -1 && c != ';' && name.length() < MAX_ENTITY_LENGTH
+				&& (isLetter(c) || (c >= '0' && c <= '9') || (c == '#' && name.length() == 0))) {
+			name.append((char) c);
+		}
+		if (c != ';' || name.length() == 0) {
+			// 不是实体, 原样输出
+			unread(c);
+			emit('&');
+			for (int i = 0; i < name.length(); i++) {
+				emit(name.charAt(i));
+			}
+			return;
+		}
+		if (name.charAt(0) == '#') {
+			int codePoint = parseCodePoint(name);
+			if (codePoint > 0) {
+				for (char ch : Character.toChars(codePoint)) {
+					emit(ch);
+				}
+			}
+			return;
+		}
+		Character decoded = ENTITIES.get(name.toString());
+		if (decoded == null) {
+			decoded = ENTITIES.get(name.toString().toLowerCase());
+		}
+		if (decoded != null) {
+			emit(decoded.charValue());
+		}
+	}
+	
+	/**
+	 * 解析 "#123" 或者 "#x7B" 形式的数字实体, 不合法时返回 -1.
+	 */
+	private static int parseCodePoint(CharSequence name) {
+		int radix = 10;
+		int start = 1;
+		if (name.length() > 1 && (name.charAt(1) == 'x' || name.charAt(1) == 'X')) {
+			radix = 16;
+			start = 2;
+		}
+		if (start == name.length()) {
+			return -1;
+		}
+		int value = 0;
+		for (int i = start; i < name.length(); i++) {
+			int digit = Character.digit(name.charAt(i), radix);
+			if (digit < 0) {
+				return -1;
+			}
+			value = value * radix + digit;
+			if (value > Character.MAX_CODE_POINT) {
+				return -1;
+			}
+		}
+		return value;
+	}
+	
+	private static boolean isLetter(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+	
+	private int read() throws IOException {
+		if (pushback != -2) {
+			int c = pushback;
+			pushback = -2;
+			return c;
+		}
+		if (sequence != null) {
+			return position < sequence.length() ? sequence.charAt(position++) : -1;
+		}
+		if (bufferPosition == bufferLength) {
+			bufferLength = reader.read(buffer, 0, buffer.length);
+			bufferPosition = 0;
+			if (bufferLength <= 0) {
+				bufferLength = 0;
+				return -1;
+			}
+		}
+		return buffer[bufferPosition++];
+	}
+	
+	private void unread(int c) {
+		pushback = c;
+	}
+}
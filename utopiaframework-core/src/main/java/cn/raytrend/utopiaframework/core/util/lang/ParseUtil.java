@@ -5,16 +5,24 @@
  */
 package cn.raytrend.utopiaframework.core.util.lang;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.FastDateFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,6 +36,43 @@ import cn.raytrend.utopiaframework.core.util.Constants;
 public class ParseUtil {
     
     private static final Logger logger = LoggerFactory.getLogger(ParseUtil.class);
+    
+    /**
+     * 读取输入流时每个线程复用的缓冲区的初始大小
+     */
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+    
+    /**
+     * 每个线程最多保留的缓冲区的大小, 更大的缓冲区用完即丢弃, 避免长期占用内存
+     */
+    private static final int MAX_CACHED_READ_BUFFER_SIZE = 1024 * 1024;
+    
+    private static final String DATE_PATTERN = "yyyy-MM-dd";
+    
+    private static final String DATETIME_PATTERN = "yyyy-MM-dd HH:mm:ss";
+    
+    /**
+     * 按格式缓存的 {@link FastDateFormat}
+     */
+    private static final ConcurrentMap<String, FastDateFormat> DATE_FORMATS =
+        new ConcurrentHashMap<String, FastDateFormat>();
+    
+    /**
+     * 常用格式的快速格式化与解析时每个线程复用的 {@link Calendar}
+     */
+    private static final ThreadLocal<Calendar> CALENDAR = new ThreadLocal<Calendar>() {
+        @Override
+        protected Calendar initialValue() {
+            return Calendar.getInstance();
+        }
+    };
+    
+    private static final ThreadLocal<byte[]> READ_BUFFER = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[READ_BUFFER_SIZE];
+        }
+    };
 	
 	/**
 	 * 删除 input 字符串中的 html 格式并截取某一部分长度返回.
@@ -37,23 +82,55 @@ public class ParseUtil {
 	 * @param length
 	 *            需要获取到的字符串的长度
 	 * @return
+	 * @see #parseHtml2String(CharSequence, int)
 	 */
-    @Deprecated
 	public static String parseHtml2String(String input, int length) {
-		if (StringUtils.isBlank(input)) {
+		return parseHtml2String((CharSequence) input, length);
+	}
+	
+	/**
+	 * 删除 input 中的 html 格式并截取某一部分长度返回, 超过 length 的部分以 "..." 代替. 只扫描一遍输入并且在得到 length
+	 * 个字符后立即停止, 实体会被解码, 连续的空白合并成一个空格, script 与 style 中的内容会被去掉. 返回的文本中 &lt;, &gt;,
+	 * &amp;, " 和 ' 都已经转义成 html 实体, 可以直接输出到 html 页面中, 不会产生标签.
+	 * 
+	 * @param input
+	 *            需要删除其中的 html 格式的字符串
+	 * @param length
+	 *            需要获取到的字符串的长度
+	 * @return
+	 */
+	public static String parseHtml2String(CharSequence input, int length) {
+		if (length < 0) {
+			throw new IllegalArgumentException("length must not be negative: " + length);
+		}
+		if (input == null || input.length() == 0) {
 			return "";
 		}
-		// 去掉所有html元素,
-		String str = input.replaceAll("\\&[a-zA-Z]{1,10};", "").replaceAll("<[^>]*>", "");
-		str = str.replaceAll("[(/>)<]", "");
-		int len = str.length();
-		if (len <= length) {
-			return str;
-		} else {
-			str = str.substring(0, length);
-			str += "...";
+		try {
+			return new HtmlTextExtractor(input, length).extract();
+		} catch (IOException e) {
+			throw new RuntimeException("Unexpected Checked Exception.", e);
+		}
+	}
+	
+	/**
+	 * 从 input 中读取 html 并删除其中的 html 格式, 截取某一部分长度返回. 得到 length 个字符后立即停止读取, 不会关闭 input.
+	 * 返回的文本与 {@link #parseHtml2String(CharSequence, int)} 一样已经转义了 html 的特殊字符.
+	 * 
+	 * @param input
+	 * @param length
+	 * @return
+	 * @throws IOException
+	 * @see #parseHtml2String(CharSequence, int)
+	 */
+	public static String parseHtml2String(Reader input, int length) throws IOException {
+		if (length < 0) {
+			throw new IllegalArgumentException("length must not be negative: " + length);
 		}
-		return str;
+		if (input == null) {
+			return "";
+		}
+		return new HtmlTextExtractor(input, length).extract();
 	}
     
     /**
@@ -63,29 +140,164 @@ public class ParseUtil {
      * @return
      */
     public static Date parseSQLDate(String dateString) {
-        SimpleDateFormat sdf = new SimpleDateFormat(Constants.SQL_TIMESTAMP);
+        return parseDate(dateString, Constants.SQL_TIMESTAMP);
+    }
+    
+    /**
+     * 按照指定的格式将字符串转换成 Date 类型, 如果转换失败则返回 null. 对于 'yyyy-MM-dd' 和 'yyyy-MM-dd HH:mm:ss' 两种格式直接
+     * 解析数字, 其他格式使用缓存的 {@link FastDateFormat}, 与 {@link SimpleDateFormat} 的解析结果一致.
+     * 
+     * @param dateString
+     * @param pattern
+     * @return
+     */
+    public static Date parseDate(String dateString, String pattern) {
+        if (dateString == null) {
+            return null;
+        }
+        if (DATE_PATTERN.equals(pattern) || DATETIME_PATTERN.equals(pattern)) {
+            Date date = parseDateFast(dateString, pattern.length());
+            if (date != null) {
+                return date;
+            }
+        }
         try {
-            return sdf.parse(dateString);
+            return getDateFormat(pattern).parse(dateString);
         } catch (ParseException e) {
-            // cannot be happened
+            return null;
         }
-        return null;
     }
 	
 	/**
-	 * 解析日期, 返回指定的日期表示形式, 比如 'yyyy年mm月dd日' 或 'yyyy-MM-dd' 等.
+	 * 解析日期, 返回指定的日期表示形式, 比如 'yyyy年mm月dd日' 或 'yyyy-MM-dd' 等. 对于 'yyyy-MM-dd' 和 'yyyy-MM-dd HH:mm:ss'
+	 * 两种格式直接拼接字符, 其他格式使用缓存的 {@link FastDateFormat}.
 	 * 
 	 * @param date
 	 * @param pattern
 	 * @return
 	 */
 	public static String parseDate(Date date, String pattern) {
-		SimpleDateFormat sdf = new SimpleDateFormat(pattern);
-		return sdf.format(date);
+		if (DATE_PATTERN.equals(pattern) || DATETIME_PATTERN.equals(pattern)) {
+			String str = formatDateFast(date, pattern.length());
+			if (str != null) {
+				return str;
+			}
+		}
+		return getDateFormat(pattern).format(date);
+	}
+	
+	/**
+	 * 获取指定格式的 {@link FastDateFormat}, 按格式缓存. {@link FastDateFormat} 是不可变且线程安全的, 可以直接共享, 用于替代
+	 * 每次都要创建或者需要加锁共享的 {@link SimpleDateFormat}. 使用第一次创建时默认的时区和 Locale.
+	 * 
+	 * @param pattern
+	 * @return
+	 */
+	public static FastDateFormat getDateFormat(String pattern) {
+		FastDateFormat format = DATE_FORMATS.get(pattern);
+		if (format == null) {
+			format = FastDateFormat.getInstance(pattern);
+			FastDateFormat existing = DATE_FORMATS.putIfAbsent(pattern, format);
+			if (existing != null) {
+				format = existing;
+			}
+		}
+		return format;
+	}
+	
+	/**
+	 * 按 'yyyy-MM-dd'(length 为 10) 或者 'yyyy-MM-dd HH:mm:ss'(length 为 19) 格式化日期, 年份不是四位数时返回 null.
+	 * 
+	 * @param date
+	 * @param length
+	 * @return
+	 */
+	private static String formatDateFast(Date date, int length) {
+		Calendar calendar = CALENDAR.get();
+		calendar.setTime(date);
+		int year = calendar.get(Calendar.YEAR);
+		if (year < 1000 || year > 9999 || calendar.get(Calendar.ERA) != GregorianCalendar.AD) {
+			return null;
+		}
+		char[] chars = new char[length];
+		appendDigits(chars, 0, year, 4);
+		chars[4] = '-';
+		appendDigits(chars, 5, calendar.get(Calendar.MONTH) + 1, 2);
+		chars[7] = '-';
+		appendDigits(chars, 8, calendar.get(Calendar.DAY_OF_MONTH), 2);
+		if (length == DATETIME_PATTERN.length()) {
+			chars[10] = ' ';
+			appendDigits(chars, 11, calendar.get(Calendar.HOUR_OF_DAY), 2);
+			chars[13] = ':';
+			appendDigits(chars, 14, calendar.get(Calendar.MINUTE), 2);
+			chars[16] = ':';
+			appendDigits(chars, 17, calendar.get(Calendar.SECOND), 2);
+		}
+		return new String(chars);
+	}
+	
+	private static void appendDigits(char[] chars, int offset, int value, int width) {
+		for (int i = offset + width - 1; i >= offset; i--) {
+			chars[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+	
+	/**
+	 * 按 'yyyy-MM-dd'(length 为 10) 或者 'yyyy-MM-dd HH:mm:ss'(length 为 19) 解析日期, 只处理标准的写法(各部分位数固定且取值
+	 * 在正常范围内), 其他情况返回 null, 交给 {@link FastDateFormat} 处理.
+	 * 
+	 * @param str
+	 * @param length
+	 * @return
+	 */
+	private static Date parseDateFast(String str, int length) {
+		if (str.length() != length || str.charAt(4) != '-' || str.charAt(7) != '-') {
+			return null;
+		}
+		int year = parseDigits(str, 0, 4);
+		int month = parseDigits(str, 5, 2);
+		int day = parseDigits(str, 8, 2);
+		int hour = 0;
+		int minute = 0;
+		int second = 0;
+		if (length == DATETIME_PATTERN.length()) {
+			if (str.charAt(10) != ' ' || str.charAt(13) != ':' || str.charAt(16) != ':') {
+				return null;
+			}
+			hour = parseDigits(str, 11, 2);
+			minute = parseDigits(str, 14, 2);
+			second = parseDigits(str, 17, 2);
+		}
+		if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23 || minute < 0
+				|| minute > 59 || second < 0 || second > 59) {
+			return null;
+		}
+		Calendar calendar = CALENDAR.get();
+		calendar.clear();
+		// 与 SimpleDateFormat 一样是宽松的, 比如 2011-02-30 会被解析为 2011-03-02
+		calendar.set(year, month - 1, day, hour, minute, second);
+		return calendar.getTime();
+	}
+	
+	/**
+	 * 解析固定位数的十进制数字, 含有非数字字符时返回 -1.
+	 */
+	private static int parseDigits(String str, int offset, int width) {
+		int value = 0;
+		for (int i = offset; i < offset + width; i++) {
+			char c = str.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
 	}
 	
 	/**
-     * 将文件对象转换成二进制流. WARN: 该方法无经过测试, 有可能导致内存回收困难.
+     * 将文件对象转换成二进制流. 按照 {@link FileChannel#size()} 一次性分配数组, 通过 {@link FileChannel} 直接读入该数组, 不再经过
+     * 中间的缓冲区. 读取失败时返回 null.
      * 
      * @param file
      * @return
@@ -95,15 +307,23 @@ public class ParseUtil {
         if (file == null) {
             return null;
         }
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        byte[] buffer = new byte[1024];
         FileInputStream fis = null;
         try {
             fis = new FileInputStream(file);
-            int index = -1;
-            while ((index = fis.read(buffer)) != -1) {
-                baos.write(buffer, 0, index);
+            FileChannel channel = fis.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("file is too large: " + file + ", " + size + " bytes");
+            }
+            byte[] data = new byte[(int) size];
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) == -1) {
+                    // 文件在读取的过程中被截短了
+                    return Arrays.copyOf(data, buffer.position());
+                }
             }
+            return data;
         } catch (Exception e) {
             logger.error("write obj error, {}", e.getMessage());
             return null;
@@ -112,11 +332,29 @@ public class ParseUtil {
                 fis.close();
             }
         }
-        return baos.toByteArray();
     }
     
     /**
-     * 将输入流转换成二进制流. WARN: 该方法无经过测试, 有可能导致内存回收困难.
+     * 将文件以只读的方式映射到内存中, 适合较大的文件, 读取的时候不需要将整个文件复制到 java 堆中. 返回的
+     * {@link MappedByteBuffer} 在文件关闭后仍然有效.
+     * 
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static MappedByteBuffer mapFile(File file) throws IOException {
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            FileChannel channel = fis.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            fis.close();
+        }
+    }
+    
+    /**
+     * 将输入流转换成二进制流, 最多读取 fileSize 个字节, 读取完毕后关闭输入流. 会一直读取直到读满 fileSize 个字节或者到达流的
+     * 末尾, 对于 socket 之类的一次 read 读不满的输入流也是正确的; 如果提前到达末尾, 返回的数组长度为实际读到的字节数.
      * 
      * @param input
      * @param fileSize
@@ -128,15 +366,47 @@ public class ParseUtil {
             throw new IllegalArgumentException("inputsream cann't be null");
         }
         byte[] data = new byte[fileSize];
+        int offset = 0;
         try {
-            input.read(data);
+            int read;
+            while (offset < fileSize && (read = input.read(data, offset, fileSize - offset)) != -1) {
+                offset += read;
+            }
         } catch (IOException e) {
             logger.error("write obj error, {}", e.getMessage());
         } finally {
-            if (input != null) {
-                input.close();
+            input.close();
+        }
+        return offset == fileSize ? data : Arrays.copyOf(data, offset);
+    }
+    
+    /**
+     * 读取输入流的全部内容, 读取完毕后关闭输入流. 用于不知道长度的输入流, 读取时使用每个线程复用的缓冲区, 只在最后复制一次.
+     * 
+     * @param input
+     * @return
+     * @throws IOException
+     */
+    public static byte[] getBytesFromInputStream(InputStream input) throws IOException {
+        if (input == null) {
+            throw new IllegalArgumentException("inputsream cann't be null");
+        }
+        byte[] buffer = READ_BUFFER.get();
+        int length = 0;
+        try {
+            int read;
+            while ((read = input.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
             }
+        } finally {
+            input.close();
+        }
+        if (buffer.length <= MAX_CACHED_READ_BUFFER_SIZE) {
+            READ_BUFFER.set(buffer);
         }
-        return data;
+        return Arrays.copyOf(buffer, length);
     }
 }
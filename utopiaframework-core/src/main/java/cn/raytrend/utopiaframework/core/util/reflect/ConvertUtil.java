@@ -7,12 +7,8 @@ package cn.raytrend.utopiaframework.core.util.reflect;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Date;
 import java.util.List;
 
-import org.apache.commons.beanutils.ConvertUtils;
-import org.apache.commons.beanutils.PropertyUtils;
-import org.apache.commons.beanutils.converters.DateConverter;
 import org.apache.commons.lang3.StringUtils;
 
 /**
@@ -21,13 +17,9 @@ import org.apache.commons.lang3.StringUtils;
  * @author zhouych
  */
 public class ConvertUtil {
-	
-	static {
-		registerDateConverter();
-	}
 
 	/**
-	 * 通过 getter 函数提取集合中的对象的属性, 并组合成 List.
+	 * 通过 getter 函数提取集合中的对象的属性, 并组合成 List. 属性的读取使用 {@link PropertyAccessorFactory} 生成的访问器.
 	 * 
 	 * @param collection
 	 *            来源集合
@@ -35,19 +27,70 @@ public class ConvertUtil {
 	 *            要提取的属性名
 	 * @return
 	 */
-	@SuppressWarnings("unchecked")
-	public static List convertElementPropertyToList(final Collection collection, final String propertyName) {
+	@SuppressWarnings("rawtypes")
+	public static List convertElementPropertyToList(final Collection<?> collection, final String propertyName) {
 		
-		List list = new ArrayList();
+		List<Object> list = new ArrayList<Object>(collection.size());
 		try {
+			AccessorResolver resolver = new AccessorResolver(propertyName);
 			for (Object obj : collection) {
-				list.add(PropertyUtils.getProperty(obj, propertyName));
+				list.add(resolver.forElement(obj).getValue(obj));
 			}
 		} catch (Exception e) {
 			throw new RuntimeException("Unexpected Checked Exception.", e);
 		}
 		return list;
 	}
+	
+	/**
+	 * 通过 getter 函数提取集合中的对象的数值属性(比如 id), 直接写入 long 数组, 对于基本类型的属性不会产生装箱的开销.
+	 * 属性值为 null 的元素对应的值为 0.
+	 * 
+	 * @param collection
+	 *            来源集合
+	 * @param propertyName
+	 *            要提取的属性名
+	 * @return
+	 */
+	public static long[] convertElementPropertyToLongArray(final Collection<?> collection, final String propertyName) {
+		
+		long[] result = new long[collection.size()];
+		int index = 0;
+		try {
+			AccessorResolver resolver = new AccessorResolver(propertyName);
+			for (Object obj : collection) {
+				result[index++] = resolver.forElement(obj).getLongValue(obj);
+			}
+		} catch (Exception e) {
+			throw new RuntimeException("Unexpected Checked Exception.", e);
+		}
+		return result;
+	}
+	
+	/**
+	 * 通过 getter 函数提取集合中的对象的数值属性, 直接写入 int 数组, 对于基本类型的属性不会产生装箱的开销.
+	 * 属性值为 null 的元素对应的值为 0.
+	 * 
+	 * @param collection
+	 *            来源集合
+	 * @param propertyName
+	 *            要提取的属性名
+	 * @return
+	 */
+	public static int[] convertElementPropertyToIntArray(final Collection<?> collection, final String propertyName) {
+		
+		int[] result = new int[collection.size()];
+		int index = 0;
+		try {
+			AccessorResolver resolver = new AccessorResolver(propertyName);
+			for (Object obj : collection) {
+				result[index++] = resolver.forElement(obj).getIntValue(obj);
+			}
+		} catch (Exception e) {
+			throw new RuntimeException("Unexpected Checked Exception.", e);
+		}
+		return result;
+	}
 
 	/**
 	 * 通过 getter 函数提取集合中的对象的属性, 并组合成由分隔符分割的字符串.
@@ -60,41 +103,66 @@ public class ConvertUtil {
 	 *            分隔符
 	 * @return
 	 */
-	@SuppressWarnings("unchecked")
-	public static String convertElementPropertyToString(final Collection collection, final String propertyName,
+	public static String convertElementPropertyToString(final Collection<?> collection, final String propertyName,
 			final String separator) {
-		List list = convertElementPropertyToList(collection, propertyName);
+		List<?> list = convertElementPropertyToList(collection, propertyName);
 		return StringUtils.join(list, separator);
 	}
 
 	/**
-	 * 转换字符串到相应类型.
+	 * 转换字符串到相应类型, 使用 {@link ConverterRegistry} 中注册的转换器, 日期支持的格式为：yyyy-MM-dd 或者
+	 * yyyy-MM-dd HH:mm:ss.
 	 * 
 	 * @param value
 	 *            待转换的字符串
 	 * @param toType
 	 *            转换的目标类型
 	 * @return
+	 * @see ConverterRegistry
 	 */
 	public static Object convertStringToObject(String value, Class<?> toType) {
 		try {
-			return ConvertUtils.convert(value, toType);
+			return ConverterRegistry.convert(value, toType);
 		} catch (Exception e) {
 			throw new RuntimeException("Unexpected Checked Exception.", e);
 		}
 	}
 
 	/**
-	 * 定义日期 Converter 的格式为：yyyy-MM-dd 或者 yyyy-MM-dd HH:mm:ss
+	 * 获取集合元素的类, 与 commons-beanutils 一致, 不允许元素为 null.
+	 * 
+	 * @param obj
+	 * @return
 	 */
-	private static void registerDateConverter() {
+	private static Class<?> getElementClass(Object obj) {
+		if (obj == null) {
+			throw new IllegalArgumentException("No bean specified");
+		}
+		return obj.getClass();
+	}
+	
+	/**
+	 * 按集合元素的类获取属性的访问器. 集合中的元素一般都是同一个类, 这里记住上一个访问器以减少查找缓存的次数.
+	 */
+	private static final class AccessorResolver {
+		
+		private final String propertyName;
 		
-		DateConverter dc = new DateConverter();
-		dc.setUseLocaleFormat(true);
-		dc.setPatterns(new String[] {
-				"yyyy-MM-dd",
-				"yyyy-MM-dd HH:mm:ss"
-		});
-		ConvertUtils.register(dc, Date.class);
+		private Class<?> lastClass;
+		
+		private PropertyAccessor accessor;
+		
+		AccessorResolver(String propertyName) {
+			this.propertyName = propertyName;
+		}
+		
+		PropertyAccessor forElement(Object obj) {
+			Class<?> clazz = getElementClass(obj);
+			if (clazz != lastClass) {
+				accessor = PropertyAccessorFactory.getAccessor(clazz, propertyName);
+				lastClass = clazz;
+			}
+			return accessor;
+		}
 	}
 }
@@ -0,0 +1,308 @@
+/*
+ * ConverterRegistry.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.core.util.reflect;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.ParsePosition;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.beanutils.ConvertUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.FastDateFormat;
+
+/**
+ * 以目标类型为 key 的字符串转换器注册表, 用于替换 commons-beanutils 中全局的 {@link ConvertUtils}. 所有内置的转换器都是无状态的,
+ * 读取注册表也不需要加锁, 所以可以在每个请求中放心地调用, 比如 {@link cn.raytrend.utopiaframework.core.orm.PropertyFilter}.
+ * <p>
+ * 内置的转换器与 {@link ConvertUtils} 的默认行为保持一致:
+ * <ul>
+ *     <li>1) 数值类型(包括基本类型)在字符串为空或者无法转换的时候返回 0.</li>
+ *     <li>2) Boolean 类型支持 true/yes/y/on/1 与 false/no/n/off/0, 其余情况返回 false.</li>
+ *     <li>3) Date 类型支持 yyyy-MM-dd 与 yyyy-MM-dd HH:mm:ss 两种格式, 无法转换的时候抛出异常.</li>
+ * </ul>
+ * 没有注册的类型仍然交给 {@link ConvertUtils} 处理.
+ * </p>
+ * 
+ * @author zhouych
+ * @see TypeConverter
+ * @see ConvertUtil#convertStringToObject(String, Class)
+ */
+public class ConverterRegistry {
+	
+	/**
+	 * Date 类型支持的格式, {@link FastDateFormat} 是不可变且线程安全的, 可以直接共享
+	 */
+	private static final FastDateFormat[] DATE_FORMATS = new FastDateFormat[] {
+		FastDateFormat.getInstance("yyyy-MM-dd"),
+		FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss")
+	};
+	
+	private static final ConcurrentMap<Class<?>, TypeConverter<?>> CONVERTERS =
+		new ConcurrentHashMap<Class<?>, TypeConverter<?>>();
+	
+	static {
+		registerDefaultConverters();
+	}
+	
+	/**
+	 * 注册某个类型的转换器, 会覆盖之前注册的同一类型的转换器.
+	 * 
+	 * @param <T>
+	 * @param type
+	 *            目标类型
+	 * @param converter
+	 *            转换器, 必须是线程安全的
+	 */
+	public static <T> void register(Class<T> type, TypeConverter<? extends T> converter) {
+		CONVERTERS.put(type, converter);
+	}
+	
+	/**
+	 * 查找某个类型的转换器, 如果没有注册则返回 null.
+	 * 
+	 * @param type
+	 * @return
+	 */
+	public static TypeConverter<?> lookup(Class<?> type) {
+		return CONVERTERS.get(type);
+	}
+	
+	/**
+	 * 转换字符串到相应类型, 没有注册转换器的类型交给 {@link ConvertUtils} 处理.
+	 * 
+	 * @param value
+	 *            待转换的字符串
+	 * @param toType
+	 *            转换的目标类型
+	 * @return
+	 */
+	public static Object convert(String value, Class<?> toType) {
+		TypeConverter<?> converter = CONVERTERS.get(toType);
+		if (converter != null) {
+			return converter.convert(value);
+		}
+		return ConvertUtils.convert(value, toType);
+	}
+	
+	/**
+	 * 注册内置的转换器.
+	 */
+	private static void registerDefaultConverters() {
+		
+		register(String.class, new TypeConverter<String>() {
+			@Override
+			public String convert(String value) {
+				return value;
+			}
+		});
+		
+		TypeConverter<Boolean> booleanConverter = new TypeConverter<Boolean>() {
+			@Override
+			public Boolean convert(String value) {
+				return Boolean.valueOf(parseBoolean(value));
+			}
+		};
+		register(Boolean.class, booleanConverter);
+		register(boolean.class, booleanConverter);
+		
+		TypeConverter<Integer> integerConverter = new TypeConverter<Integer>() {
+			@Override
+			public Integer convert(String value) {
+				String str = StringUtils.trimToNull(value);
+				try {
+					return str == null ? Integer.valueOf(0) : Integer.valueOf(str);
+				} catch (NumberFormatException e) {
+					return Integer.valueOf(0);
+				}
+			}
+		};
+		register(Integer.class, integerConverter);
+		register(int.class, integerConverter);
+		
+		TypeConverter<Long> longConverter = new TypeConverter<Long>() {
+			@Override
+			public Long convert(String value) {
+				String str = StringUtils.trimToNull(value);
+				try {
+					return str == null ? Long.valueOf(0L) : Long.valueOf(str);
+				} catch (NumberFormatException e) {
+					return Long.valueOf(0L);
+				}
+			}
+		};
+		register(Long.class, longConverter);
+		register(long.class, longConverter);
+		
+		TypeConverter<Short> shortConverter = new TypeConverter<Short>() {
+			@Override
+			public Short convert(String value) {
+				String str = StringUtils.trimToNull(value);
+				try {
+					return str == null ? Short.valueOf((short) 0) : Short.valueOf(str);
+				} catch (NumberFormatException e) {
+					return Short.valueOf((short) 0);
+				}
+			}
+		};
+		register(Short.class, shortConverter);
+		register(short.class, shortConverter);
+		
+		TypeConverter<Byte> byteConverter = new TypeConverter<Byte>() {
+			@Override
+			public Byte convert(String value) {
+				String str = StringUtils.trimToNull(value);
+				try {
+					return str == null ? Byte.valueOf((byte) 0) : Byte.valueOf(str);
+				} catch (NumberFormatException e) {
+					return Byte.valueOf((byte) 0);
+				}
+			}
+		};
+		register(Byte.class, byteConverter);
+		register(byte.class, byteConverter);
+		
+		TypeConverter<Float> floatConverter = new TypeConverter<Float>() {
+			@Override
+			public Float convert(String value) {
+				String str = StringUtils.trimToNull(value);
+				try {
+					return str == null ? Float.valueOf(0f) : Float.valueOf(str);
+				} catch (NumberFormatException e) {
+					return Float.valueOf(0f);
+				}
+			}
+		};
+		register(Float.class, floatConverter);
+		register(float.class, floatConverter);
+		
+		TypeConverter<Double> doubleConverter = new TypeConverter<Double>() {
+			@Override
+			public Double convert(String value) {
+				String str = StringUtils.trimToNull(value);
+				try {
+					return str == null ? Double.valueOf(0d) : Double.valueOf(str);
+				} catch (NumberFormatException e) {
+					return Double.valueOf(0d);
+				}
+			}
+		};
+		register(Double.class, doubleConverter);
+		register(double.class, doubleConverter);
+		
+		register(BigDecimal.class, new TypeConverter<BigDecimal>() {
+			@Override
+			public BigDecimal convert(String value) {
+				String str = StringUtils.trimToNull(value);
+				try {
+					return str == null ? BigDecimal.ZERO : new BigDecimal(str);
+				} catch (NumberFormatException e) {
+					return BigDecimal.ZERO;
+				}
+			}
+		});
+		
+		register(BigInteger.class, new TypeConverter<BigInteger>() {
+			@Override
+			public BigInteger convert(String value) {
+				String str = StringUtils.trimToNull(value);
+				try {
+					return str == null ? BigInteger.ZERO : new BigInteger(str);
+				} catch (NumberFormatException e) {
+					return BigInteger.ZERO;
+				}
+			}
+		});
+		
+		register(Date.class, new TypeConverter<Date>() {
+			@Override
+			public Date convert(String value) {
+				return parseDate(value);
+			}
+		});
+	}
+	
+	/**
+	 * 与 commons-beanutils 的 BooleanConverter 一致, 无法识别的字符串返回 false.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	private static boolean parseBoolean(String value) {
+		String str = StringUtils.trimToNull(value);
+		if (str == null) {
+			return false;
+		}
+		switch (str.length()) {
+		case 1:
+			char c = str.charAt(0);
+			return c == '1' || c == 'y' || c == 'Y';
+		case 2:
+			return str.equalsIgnoreCase("on");
+		case 3:
+			return str.equalsIgnoreCase("yes");
+		case 4:
+			return str.equalsIgnoreCase("true");
+		default:
+			return false;
+		}
+	}
+	
+	/**
+	 * 依次使用 {@link #DATE_FORMATS} 中的格式来解析日期, 要求整个字符串都被解析. {@link FastDateFormat} 的解析是宽松的,
+	 * 比如 2012-02-30 会被解析为 2012-03-01, 所以解析之后还要检查各个字段没有进位, 与 commons-beanutils 的
+	 * DateConverter 一样拒绝不存在的日期.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	private static Date parseDate(String value) {
+		String str = StringUtils.trimToNull(value);
+		if (str == null) {
+			throw new IllegalArgumentException("No value specified for 'Date'");
+		}
+		for (FastDateFormat format : DATE_FORMATS) {
+			ParsePosition position = new ParsePosition(0);
+			Date date = format.parse(str, position);
+			if (date != null && position.getErrorIndex() < 0 && position.getIndex() == str.length()) {
+				if (isExact(str, date)) {
+					return date;
+				}
+				break;
+			}
+		}
+		throw new IllegalArgumentException("Error converting 'String' to 'Date' using patterns "
+				+ "'yyyy-MM-dd' and 'yyyy-MM-dd HH:mm:ss': " + str);
+	}
+	
+	/**
+	 * 判断 str 中的年, 月, 日, 时, 分, 秒是否与解析出的日期一致, 不一致说明宽松的解析发生了进位.
+	 */
+	private static boolean isExact(String str, Date date) {
+		String[] parts = StringUtils.split(str, "-: ");
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(date);
+		int[] fields = new int[] {calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
+				calendar.get(Calendar.DAY_OF_MONTH), calendar.get(Calendar.HOUR_OF_DAY),
+				calendar.get(Calendar.MINUTE), calendar.get(Calendar.SECOND)};
+		if (parts.length > fields.length) {
+			return false;
+		}
+		for (int i = 0; i < parts.length; i++) {
+			try {
+				if (Integer.parseInt(parts[i]) != fields[i]) {
+					return false;
+				}
+			} catch (NumberFormatException e) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * PropertyAccessor.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.core.util.reflect;
+
+/**
+ * 读取某个类的某个属性的访问器, 由 {@link PropertyAccessorFactory} 按类和属性名生成并缓存, 可以被多个线程共享.
+ * <p>
+ * 对于 long, int 等基本类型的属性, 生成的访问器会直接覆盖 {@link #getLongValue(Object)} 和 {@link #getIntValue(Object)},
+ * 这样提取 id 之类的属性时不会产生装箱的开销.
+ * </p>
+ * 
+ * @author zhouych
+ * @see PropertyAccessorFactory
+ */
+public abstract class PropertyAccessor {
+	
+	/**
+	 * 读取属性值.
+	 * 
+	 * @param bean
+	 * @return
+	 */
+	public abstract Object getValue(Object bean);
+	
+	/**
+	 * 以 long 的形式读取数值类型的属性值, 如果属性值为 null 则返回 0.
+	 * 
+	 * @param bean
+	 * @return
+	 */
+	public long getLongValue(Object bean) {
+		Object value = getValue(bean);
+		return value == null ? 0L : ((Number) value).longValue();
+	}
+	
+	/**
+	 * 以 int 的形式读取数值类型的属性值, 如果属性值为 null 则返回 0.
+	 * 
+	 * @param bean
+	 * @return
+	 */
+	public int getIntValue(Object bean) {
+		Object value = getValue(bean);
+		return value == null ? 0 : ((Number) value).intValue();
+	}
+}
@@ -0,0 +1,359 @@
+/*
+ * PropertyAccessorFactory.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.core.util.reflect;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+import org.apache.commons.beanutils.PropertyUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link PropertyAccessor} 的工厂类. 对于普通 JavaBean 的简单属性, 使用 javassist 为每个类的每个属性生成一个直接调用 getter
+ * 的访问器类, 只在第一次访问的时候生成, 之后的访问和直接调用 getter 方法的速度相当. 比如:
+ * <pre>
+ * {@code
+ * PropertyAccessor accessor = PropertyAccessorFactory.getAccessor(User.class, "id");
+ * long id = accessor.getLongValue(user);
+ * }
+ * </pre>
+ * 
+ * 以下情况不会生成访问器类, 而是退回到其他的方式:
+ * <ul>
+ *     <li>1) getter 方法不能被生成的类访问(比如 private 的方法或者类), 使用反射调用 getter 方法.</li>
+ *     <li>2) 嵌套属性(比如 "user.name")、{@link Map} 等, 使用 commons-beanutils 的 {@link PropertyUtils}.</li>
+ * </ul>
+ * 
+ * 生成的访问器类与 bean 的类位于同一个 {@link ClassLoader} 中. 由本类的 {@link ClassLoader} 或其祖先加载的类的访问器被强引用,
+ * 其他类(比如本类位于容器的共享目录时 webapp 中的类)的访问器使用弱引用的 key 和软引用的 value 缓存, 不会阻止 webapp 被卸载;
+ * 需要立即释放时(比如 webapp 停止时)可以调用 {@link #clearCache(ClassLoader)}.
+ * 
+ * @author zhouych
+ * @see PropertyAccessor
+ */
+public class PropertyAccessorFactory {
+	
+	private static final Logger logger = LoggerFactory.getLogger(PropertyAccessorFactory.class);
+	
+	/**
+	 * 按类缓存的访问器, key 为由本类的 {@link ClassLoader} 或其祖先加载的 bean 的类, value 为属性名到访问器的映射
+	 */
+	private static final ConcurrentMap<Class<?>, ConcurrentMap<String, PropertyAccessor>> ACCESSORS =
+		new ConcurrentHashMap<Class<?>, ConcurrentMap<String, PropertyAccessor>>();
+	
+	/**
+	 * 其他 bean 的类的访问器, 访问器引用了 bean 的类, 所以 value 使用软引用, 访问时需要以自身为锁
+	 */
+	private static final Map<Class<?>, Reference<ConcurrentMap<String, PropertyAccessor>>> SOFT_ACCESSORS =
+		new WeakHashMap<Class<?>, Reference<ConcurrentMap<String, PropertyAccessor>>>();
+	
+	/**
+	 * 生成的访问器类名的序号, 保证类名唯一
+	 */
+	private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+	
+	/**
+	 * 获取某个类的某个属性的访问器, 同一个类的同一个属性总是返回同一个访问器.
+	 * 
+	 * @param beanClass
+	 *            bean 的类
+	 * @param propertyName
+	 *            属性名, 支持 commons-beanutils 的属性表达式
+	 * @return
+	 */
+	public static PropertyAccessor getAccessor(Class<?> beanClass, String propertyName) {
+		
+		ConcurrentMap<String, PropertyAccessor> classAccessors = getClassAccessors(beanClass);
+		PropertyAccessor accessor = classAccessors.get(propertyName);
+		if (accessor == null) {
+			accessor = createAccessor(beanClass, propertyName);
+			PropertyAccessor existing = classAccessors.putIfAbsent(propertyName, accessor);
+			if (existing != null) {
+				accessor = existing;
+			}
+		}
+		return accessor;
+	}
+	
+	/**
+	 * 清除由 classLoader 或其子孙加载的类的访问器, 比如在 webapp 停止时调用, 使 webapp 的 {@link ClassLoader} 可以被立即回收.
+	 * 
+	 * @param classLoader
+	 *            为 null 时清除所有的访问器
+	 */
+	public static void clearCache(ClassLoader classLoader) {
+		for (Iterator<Class<?>> it = ACCESSORS.keySet().iterator(); it.hasNext();) {
+			if (ReflectionUtil.isLoadedBy(it.next(), classLoader)) {
+				it.remove();
+			}
+		}
+		synchronized (SOFT_ACCESSORS) {
+			for (Iterator<Class<?>> it = SOFT_ACCESSORS.keySet().iterator(); it.hasNext();) {
+				if (ReflectionUtil.isLoadedBy(it.next(), classLoader)) {
+					it.remove();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 获取某个类的属性名到访问器的映射, 不存在时创建.
+	 * 
+	 * @param beanClass
+	 * @return
+	 */
+	private static ConcurrentMap<String, PropertyAccessor> getClassAccessors(Class<?> beanClass) {
+		
+		ConcurrentMap<String, PropertyAccessor> classAccessors = ACCESSORS.get(beanClass);
+		if (classAccessors != null) {
+			return classAccessors;
+		}
+		if (ReflectionUtil.isCacheSafe(beanClass, PropertyAccessorFactory.class.getClassLoader())) {
+			classAccessors = new ConcurrentHashMap<String, PropertyAccessor>();
+			ConcurrentMap<String, PropertyAccessor> existing = ACCESSORS.putIfAbsent(beanClass, classAccessors);
+			return existing != null ? existing : classAccessors;
+		}
+		synchronized (SOFT_ACCESSORS) {
+			Reference<ConcurrentMap<String, PropertyAccessor>> reference = SOFT_ACCESSORS.get(beanClass);
+			classAccessors = reference != null ? reference.get() : null;
+			if (classAccessors == null) {
+				classAccessors = new ConcurrentHashMap<String, PropertyAccessor>();
+				SOFT_ACCESSORS.put(beanClass, new SoftReference<ConcurrentMap<String, PropertyAccessor>>(classAccessors));
+			}
+			return classAccessors;
+		}
+	}
+	
+	/**
+	 * 创建访问器, 优先生成直接调用 getter 的访问器类.
+	 * 
+	 * @param beanClass
+	 * @param propertyName
+	 * @return
+	 */
+	private static PropertyAccessor createAccessor(Class<?> beanClass, String propertyName) {
+		
+		if (Map.class.isAssignableFrom(beanClass) || !isSimpleProperty(propertyName)) {
+			return new BeanUtilsPropertyAccessor(propertyName);
+		}
+		Method readMethod = findReadMethod(beanClass, propertyName);
+		if (readMethod == null) {
+			// 交给 PropertyUtils 抛出与之前一致的 NoSuchMethodException
+			return new BeanUtilsPropertyAccessor(propertyName);
+		}
+		try {
+			return generateAccessor(readMethod);
+		} catch (Throwable e) {
+			logger.debug("Could not generate accessor for {}.{}, use reflection instead: {}",
+					new Object[] {beanClass.getName(), propertyName, e});
+		}
+		readMethod.setAccessible(true);
+		return new ReflectivePropertyAccessor(readMethod);
+	}
+	
+	/**
+	 * 是否简单属性, 也即不是 "a.b", "a[0]", "a(key)" 之类的属性表达式.
+	 * 
+	 * @param propertyName
+	 * @return
+	 */
+	private static boolean isSimpleProperty(String propertyName) {
+		for (int i = 0; i < propertyName.length(); i++) {
+			char c = propertyName.charAt(i);
+			if (c == '.' || c == '[' || c == '(') {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * 使用 JavaBean 规范(与 commons-beanutils 一致)查找属性的 getter 方法, 支持 boolean 类型的 isXXX(). 对于不能被强引用的
+	 * 类, 查找之后从 {@link Introspector} 的缓存中清除, 因为它的缓存同样会阻止类被卸载, 而访问器已经被缓存起来了.
+	 * 
+	 * @param beanClass
+	 * @param propertyName
+	 * @return
+	 */
+	private static Method findReadMethod(Class<?> beanClass, String propertyName) {
+		try {
+			BeanInfo beanInfo = Introspector.getBeanInfo(beanClass);
+			for (PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors()) {
+				if (descriptor.getName().equals(propertyName)) {
+					return descriptor.getReadMethod();
+				}
+			}
+		} catch (IntrospectionException e) {
+			logger.warn("Could not introspect " + beanClass.getName(), e);
+		} finally {
+			if (!ReflectionUtil.isCacheSafe(beanClass, PropertyAccessorFactory.class.getClassLoader())) {
+				Introspector.flushFromCaches(beanClass);
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * 使用 javassist 生成直接调用 getter 方法的访问器类, 生成的类与声明 getter 的类位于同一个包和 {@link ClassLoader} 中,
+	 * 所以也可以访问包内可见的类和方法.
+	 * 
+	 * @param readMethod
+	 * @return
+	 * @throws Exception
+	 */
+	private static PropertyAccessor generateAccessor(Method readMethod) throws Exception {
+		
+		Class<?> targetClass = getTargetClass(readMethod);
+		String targetName = getSourceName(targetClass);
+		if (targetName == null || Modifier.isPrivate(readMethod.getModifiers())) {
+			throw new IllegalArgumentException("method is not accessible from generated class: " + readMethod);
+		}
+		ClassLoader classLoader = targetClass.getClassLoader();
+		if (classLoader == null) {
+			throw new IllegalArgumentException("class loaded by bootstrap class loader: " + targetClass);
+		}
+		
+		ClassPool pool = new ClassPool(true);
+		pool.appendClassPath(new LoaderClassPath(classLoader));
+		pool.appendClassPath(new ClassClassPath(PropertyAccessor.class));
+		
+		String className = targetClass.getName() + "$$PropertyAccessor$$" + readMethod.getName() + "$$"
+				+ CLASS_COUNTER.incrementAndGet();
+		CtClass ctClass = pool.makeClass(className, pool.get(PropertyAccessor.class.getName()));
+		String invocation = "((" + targetName + ") $1)." + readMethod.getName() + "()";
+		
+		// $w 会对基本类型进行装箱, 对于引用类型则不做处理
+		ctClass.addMethod(CtNewMethod.make("public Object getValue(Object bean) { return ($w) " + invocation
+				+ "; }", ctClass));
+		
+		Class<?> returnType = readMethod.getReturnType();
+		if (returnType == long.class || returnType == int.class || returnType == short.class
+				|| returnType == byte.class) {
+			ctClass.addMethod(CtNewMethod.make("public long getLongValue(Object bean) { return (long) " + invocation
+					+ "; }", ctClass));
+			if (returnType != long.class) {
+				ctClass.addMethod(CtNewMethod.make("public int getIntValue(Object bean) { return (int) "
+						+ invocation + "; }", ctClass));
+			}
+		}
+		
+		Class<?> accessorClass = ctClass.toClass(classLoader, targetClass.getProtectionDomain());
+		ctClass.detach();
+		return (PropertyAccessor) accessorClass.newInstance();
+	}
+	
+	/**
+	 * 获取生成的代码中需要强制转换的类型. 沿着继承树往上找到最上层声明该 getter 的类, 这样对于 Hibernate 等生成的代理子类,
+	 * 转换的目标仍然是实体类本身.
+	 * 
+	 * @param readMethod
+	 * @return
+	 */
+	private static Class<?> getTargetClass(Method readMethod) {
+		
+		Class<?> targetClass = readMethod.getDeclaringClass();
+		for (Class<?> superClass = targetClass.getSuperclass(); superClass != null && superClass != Object.class;
+				superClass = superClass.getSuperclass()) {
+			try {
+				Method method = superClass.getDeclaredMethod(readMethod.getName());
+				if (!Modifier.isPrivate(method.getModifiers())) {
+					targetClass = superClass;
+				}
+			} catch (NoSuchMethodException e) {
+				// 当前类没有声明该方法, 继续向父类推进
+			}
+		}
+		return targetClass;
+	}
+	
+	/**
+	 * 获取类在 java 源码中的名字, 比如内部类 Outer$Inner 对应为 Outer.Inner. 对于匿名类以及名字中本身就含有 '$' 的类返回
+	 * null.
+	 * 
+	 * @param clazz
+	 * @return
+	 */
+	private static String getSourceName(Class<?> clazz) {
+		
+		String name;
+		if (clazz.isMemberClass()) {
+			String enclosingName = getSourceName(clazz.getEnclosingClass());
+			if (enclosingName == null) {
+				return null;
+			}
+			name = clazz.getSimpleName();
+			if (name.indexOf('$') != -1) {
+				return null;
+			}
+			return enclosingName + "." + name;
+		}
+		name = clazz.getName();
+		return name.indexOf('$') != -1 ? null : name;
+	}
+	
+	/**
+	 * 使用反射调用 getter 方法的访问器.
+	 */
+	private static final class ReflectivePropertyAccessor extends PropertyAccessor {
+		
+		private static final Object[] EMPTY_ARGS = new Object[0];
+		
+		private final Method readMethod;
+		
+		ReflectivePropertyAccessor(Method readMethod) {
+			this.readMethod = readMethod;
+		}
+		
+		@Override
+		public Object getValue(Object bean) {
+			try {
+				return readMethod.invoke(bean, EMPTY_ARGS);
+			} catch (Exception e) {
+				throw new RuntimeException("Unexpected Checked Exception.", e);
+			}
+		}
+	}
+	
+	/**
+	 * 使用 commons-beanutils 的 {@link PropertyUtils} 读取属性的访问器, 用于嵌套属性和 {@link Map} 等情况.
+	 */
+	private static final class BeanUtilsPropertyAccessor extends PropertyAccessor {
+		
+		private final String propertyName;
+		
+		BeanUtilsPropertyAccessor(String propertyName) {
+			this.propertyName = propertyName;
+		}
+		
+		@Override
+		public Object getValue(Object bean) {
+			try {
+				return PropertyUtils.getProperty(bean, propertyName);
+			} catch (Exception e) {
+				throw new RuntimeException("Unexpected Checked Exception.", e);
+			}
+		}
+	}
+}
@@ -5,10 +5,20 @@
  */
 package cn.raytrend.utopiaframework.core.util.reflect;
 
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -16,6 +26,14 @@ import org.slf4j.LoggerFactory;
 
 /**
  * 反射的工具类, 主要提供访问私有变量并获取泛型的类, 提取集合中元素的属性等.
+ * <p>
+ * 查找到的 {@link Field} 和 {@link Method} 会按类缓存起来(且只调用一次 <code>setAccessible</code>), 同一个类的同一个属性或方法
+ * 只会沿着继承树查找一次, 之后的访问不再产生任何查找的开销. 注意到缓存中的对象是共享的, 调用方不应再修改其可访问性.
+ * </p>
+ * <p>
+ * 缓存不会阻止类被卸载: 由本类的 {@link ClassLoader} 或其祖先加载的类被强引用, 其他的类(比如本类位于容器的共享目录时 webapp
+ * 中的类)使用弱引用的 key 和软引用的 value. 需要立即释放时(比如 webapp 停止时)可以调用 {@link #clearCache(ClassLoader)}.
+ * </p>
  * 
  * @author zhouych
  */
@@ -23,6 +41,13 @@ public class ReflectionUtil {
 
 	private static final Logger logger = LoggerFactory.getLogger(ReflectionUtil.class);
 	
+	/**
+	 * 调用无参方法时使用的空参数, 避免每次调用都创建新的数组
+	 */
+	private static final Class<?>[] EMPTY_PARAMETER_TYPES = new Class<?>[0];
+	
+	private static final Object[] EMPTY_ARGS = new Object[0];
+	
 	/**
 	 * 不断地向上寻找其父类, 获取到对象的 DeclaredField, 并强制设置为可访问, 如果一直到 {@link Object} 仍无法找到，则返回 null.
 	 * 
@@ -31,17 +56,7 @@ public class ReflectionUtil {
 	 * @return
 	 */
 	public static Field getAccessibleField(final Object obj, final String fieldName) {
-		
-		for (Class<?> superClass = obj.getClass(); superClass != Object.class; superClass = superClass.getSuperclass()) {
-			try {
-				Field field = superClass.getDeclaredField(fieldName);
-				field.setAccessible(true);
-				return field;
-			} catch (NoSuchFieldException e) {
-				// Field 不在当前类的定义当中，继续向父类推进
-			}
-		}
-		return null;
+		return ClassCache.forClass(obj.getClass()).getField(fieldName);
 	}
 	
 	/**
@@ -55,17 +70,18 @@ public class ReflectionUtil {
 	 */
 	public static Method getAccessibleMethod(final Object obj, final String methodName,
 			final Class<?>... parameterTypes) {
+		return ClassCache.forClass(obj.getClass()).getMethod(methodName, parameterTypes);
+	}
 	
-		for (Class<?> superClass = obj.getClass(); superClass != Object.class; superClass = superClass.getSuperclass()) {
-			try {
-				Method method = superClass.getDeclaredMethod(methodName, parameterTypes);
-				method.setAccessible(true);
-				return method;
-			} catch (NoSuchMethodException e) {
-				// Method 不在当前类的定义当中，继续向父类推进
-			}
-		}
-		return null;
+	/**
+	 * 获取对象的 getter 方法(风格保持 getXXX()), 如果找不到则返回 null.
+	 * 
+	 * @param obj
+	 * @param propertyName
+	 * @return
+	 */
+	public static Method getAccessibleGetterMethod(final Object obj, final String propertyName) {
+		return ClassCache.forClass(obj.getClass()).getGetter(propertyName);
 	}
 	
 	/**
@@ -84,11 +100,7 @@ public class ReflectionUtil {
 		if (method == null) {
 			throw new IllegalArgumentException("Could not find method [" + methodName + "] on target [" + obj + "]");
 		}
-		try {
-			return method.invoke(obj, args);
-		} catch (Exception e) {
-			throw new RuntimeException("Unexpected Checked Exception.", e);
-		}
+		return invoke(method, obj, args);
 	}
 	
 	/**
@@ -99,8 +111,12 @@ public class ReflectionUtil {
 	 * @return
 	 */
 	public static Object invokeGetterMethod(Object obj, String propertyName) {
-		String getterMethodName = "get" + StringUtils.capitalize(propertyName);
-		return invokeMethod(obj, getterMethodName, new Class[] {}, new Object[] {});
+		Method method = getAccessibleGetterMethod(obj, propertyName);
+		if (method == null) {
+			throw new IllegalArgumentException("Could not find method [" + ClassCache.getterName(propertyName)
+					+ "] on target [" + obj + "]");
+		}
+		return invoke(method, obj, EMPTY_ARGS);
 	}
 	
 	/**
@@ -123,8 +139,28 @@ public class ReflectionUtil {
 	 */
 	public static void invokeSetterMethod(Object obj, String propertyName, Object value, Class<?> propertyType) {
 		Class<?> type = propertyType != null ? propertyType : value.getClass();
-		String setterMethodName = "set" + StringUtils.capitalize(propertyName);
-		invokeMethod(obj, setterMethodName, new Class[] {type}, new Object[] {value});
+		Method method = ClassCache.forClass(obj.getClass()).getSetter(propertyName, type);
+		if (method == null) {
+			throw new IllegalArgumentException("Could not find method [" + ClassCache.setterName(propertyName)
+					+ "] on target [" + obj + "]");
+		}
+		invoke(method, obj, new Object[] {value});
+	}
+	
+	/**
+	 * 调用已经设置为可访问的方法, 将反射的受检异常统一转换为 {@link RuntimeException}.
+	 * 
+	 * @param method
+	 * @param obj
+	 * @param args
+	 * @return
+	 */
+	private static Object invoke(Method method, Object obj, Object[] args) {
+		try {
+			return method.invoke(obj, args);
+		} catch (Exception e) {
+			throw new RuntimeException("Unexpected Checked Exception.", e);
+		}
 	}
 	
 	/**
@@ -215,4 +251,243 @@ public class ReflectionUtil {
 		
 		return (Class) params[index];
 	}
+	
+	/**
+	 * 清除由 classLoader 或其子孙加载的类的缓存, 比如在 webapp 停止时调用, 使 webapp 的 {@link ClassLoader} 可以被立即回收.
+	 * 
+	 * @param classLoader
+	 *            为 null 时清除所有的缓存
+	 */
+	public static void clearCache(ClassLoader classLoader) {
+		ClassCache.clear(classLoader);
+	}
+	
+	/**
+	 * 类是否可以被静态的缓存强引用, 也即类由 classLoader 或其祖先加载, 至少与 classLoader 加载的缓存本身存活得一样久.
+	 * 
+	 * @param clazz
+	 * @param classLoader
+	 *            缓存所在类的 {@link ClassLoader}
+	 * @return
+	 */
+	static boolean isCacheSafe(Class<?> clazz, ClassLoader classLoader) {
+		ClassLoader target = clazz.getClassLoader();
+		if (target == null) {
+			return true;
+		}
+		for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent()) {
+			if (loader == target) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * 类是否由 classLoader 或其子孙加载.
+	 * 
+	 * @param clazz
+	 * @param classLoader
+	 *            为 null 时总是返回 true
+	 * @return
+	 */
+	static boolean isLoadedBy(Class<?> clazz, ClassLoader classLoader) {
+		if (classLoader == null) {
+			return true;
+		}
+		for (ClassLoader loader = clazz.getClassLoader(); loader != null; loader = loader.getParent()) {
+			if (loader == classLoader) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * 按类缓存沿继承树查找到的 Field 和 Method, 每个类只在第一次访问某个属性或方法的时候才真正进行查找并
+	 * <code>setAccessible</code>, 找不到的结果也会被缓存下来. 由于需要兼容 JDK 1.6, 这里使用 {@link ConcurrentHashMap}
+	 * 而不是 <code>ClassValue</code>, 读取时不需要加锁.
+	 * <p>
+	 * 缓存的 Field 和 Method 引用了类本身, 所以弱引用的 key 不足以让类被回收. 不是由本类的 {@link ClassLoader} 或其祖先加载的
+	 * 类放在 {@link #SOFT_CACHES} 中, value 为软引用, 内存不足时被回收之后 key 也随之被清除, 读取时需要加锁.
+	 * </p>
+	 */
+	private static final class ClassCache {
+		
+		/**
+		 * 由本类的 {@link ClassLoader} 或其祖先加载的类的缓存
+		 */
+		private static final ConcurrentMap<Class<?>, ClassCache> CACHES = new ConcurrentHashMap<Class<?>, ClassCache>();
+		
+		/**
+		 * 其他类的缓存, 访问时需要以自身为锁
+		 */
+		private static final Map<Class<?>, Reference<ClassCache>> SOFT_CACHES =
+			new WeakHashMap<Class<?>, Reference<ClassCache>>();
+		
+		/**
+		 * 标记查找不到的 Field, 因为 {@link ConcurrentHashMap} 不能存放 null 值
+		 */
+		private static final Object NOT_FOUND = new Object();
+		
+		private final Class<?> clazz;
+		
+		/**
+		 * key 为属性名, value 为 {@link Field} 或者 {@link #NOT_FOUND}
+		 */
+		private final ConcurrentMap<String, Object> fields = new ConcurrentHashMap<String, Object>();
+		
+		/**
+		 * key 为方法名, value 为继承树上所有同名的方法, 子类的方法排在前面
+		 */
+		private final ConcurrentMap<String, MethodGroup> methods = new ConcurrentHashMap<String, MethodGroup>();
+		
+		/**
+		 * key 为属性名, value 为 getter {@link Method} 或者 {@link #NOT_FOUND}
+		 */
+		private final ConcurrentMap<String, Object> getters = new ConcurrentHashMap<String, Object>();
+		
+		private ClassCache(Class<?> clazz) {
+			this.clazz = clazz;
+		}
+		
+		static ClassCache forClass(Class<?> clazz) {
+			ClassCache cache = CACHES.get(clazz);
+			if (cache != null) {
+				return cache;
+			}
+			if (isCacheSafe(clazz, ClassCache.class.getClassLoader())) {
+				cache = new ClassCache(clazz);
+				ClassCache existing = CACHES.putIfAbsent(clazz, cache);
+				return existing != null ? existing : cache;
+			}
+			synchronized (SOFT_CACHES) {
+				Reference<ClassCache> reference = SOFT_CACHES.get(clazz);
+				cache = reference != null ? reference.get() : null;
+				if (cache == null) {
+					cache = new ClassCache(clazz);
+					SOFT_CACHES.put(clazz, new SoftReference<ClassCache>(cache));
+				}
+				return cache;
+			}
+		}
+		
+		static void clear(ClassLoader classLoader) {
+			for (Iterator<Class<?>> it = CACHES.keySet().iterator(); it.hasNext();) {
+				if (isLoadedBy(it.next(), classLoader)) {
+					it.remove();
+				}
+			}
+			synchronized (SOFT_CACHES) {
+				for (Iterator<Class<?>> it = SOFT_CACHES.keySet().iterator(); it.hasNext();) {
+					if (isLoadedBy(it.next(), classLoader)) {
+						it.remove();
+					}
+				}
+			}
+		}
+		
+		static String getterName(String propertyName) {
+			return "get" + StringUtils.capitalize(propertyName);
+		}
+		
+		static String setterName(String propertyName) {
+			return "set" + StringUtils.capitalize(propertyName);
+		}
+		
+		Field getField(String fieldName) {
+			Object field = fields.get(fieldName);
+			if (field == null) {
+				field = findField(fieldName);
+				fields.putIfAbsent(fieldName, field);
+			}
+			return field == NOT_FOUND ? null : (Field) field;
+		}
+		
+		Method getMethod(String methodName, Class<?>[] parameterTypes) {
+			Class<?>[] types = parameterTypes != null ? parameterTypes : EMPTY_PARAMETER_TYPES;
+			MethodGroup group = getMethods(methodName);
+			for (int i = 0; i < group.methods.length; i++) {
+				if (Arrays.equals(group.parameterTypes[i], types)) {
+					return group.methods[i];
+				}
+			}
+			return null;
+		}
+		
+		Method getGetter(String propertyName) {
+			Object getter = getters.get(propertyName);
+			if (getter == null) {
+				Method method = getMethod(getterName(propertyName), EMPTY_PARAMETER_TYPES);
+				getter = method != null ? method : NOT_FOUND;
+				getters.putIfAbsent(propertyName, getter);
+			}
+			return getter == NOT_FOUND ? null : (Method) getter;
+		}
+		
+		Method getSetter(String propertyName, Class<?> type) {
+			// setter 的参数类型由调用方决定, 所以这里只缓存同名的方法列表, 再按参数类型进行匹配
+			MethodGroup group = getMethods(setterName(propertyName));
+			for (int i = 0; i < group.methods.length; i++) {
+				Class<?>[] types = group.parameterTypes[i];
+				if (types.length == 1 && types[0] == type) {
+					return group.methods[i];
+				}
+			}
+			return null;
+		}
+		
+		private MethodGroup getMethods(String methodName) {
+			MethodGroup result = methods.get(methodName);
+			if (result == null) {
+				result = findMethods(methodName);
+				methods.putIfAbsent(methodName, result);
+			}
+			return result;
+		}
+		
+		private Object findField(String fieldName) {
+			for (Class<?> superClass = clazz; superClass != Object.class; superClass = superClass.getSuperclass()) {
+				try {
+					Field field = superClass.getDeclaredField(fieldName);
+					field.setAccessible(true);
+					return field;
+				} catch (NoSuchFieldException e) {
+					// Field 不在当前类的定义当中，继续向父类推进
+				}
+			}
+			return NOT_FOUND;
+		}
+		
+		private MethodGroup findMethods(String methodName) {
+			List<Method> result = new ArrayList<Method>(2);
+			for (Class<?> superClass = clazz; superClass != Object.class; superClass = superClass.getSuperclass()) {
+				for (Method method : superClass.getDeclaredMethods()) {
+					if (method.getName().equals(methodName)) {
+						method.setAccessible(true);
+						result.add(method);
+					}
+				}
+			}
+			return new MethodGroup(result.toArray(new Method[result.size()]));
+		}
+	}
+	
+	/**
+	 * 同名方法及其参数类型, 参数类型预先取出, 因为 {@link Method#getParameterTypes()} 每次调用都会复制数组.
+	 */
+	private static final class MethodGroup {
+		
+		final Method[] methods;
+		
+		final Class<?>[][] parameterTypes;
+		
+		MethodGroup(Method[] methods) {
+			this.methods = methods;
+			this.parameterTypes = new Class<?>[methods.length][];
+			for (int i = 0; i < methods.length; i++) {
+				parameterTypes[i] = methods[i].getParameterTypes();
+			}
+		}
+	}
 }
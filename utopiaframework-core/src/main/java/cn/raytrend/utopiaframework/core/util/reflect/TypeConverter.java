@@ -0,0 +1,27 @@
+/*
+ * TypeConverter.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.core.util.reflect;
+
+/**
+ * 将字符串转换成某种类型的转换器, 实现类必须是线程安全的, 一般来说不应该持有可变的状态.
+ * 
+ * @param <T>
+ *            转换的目标类型
+ * 
+ * @author zhouych
+ * @see ConverterRegistry
+ */
+public interface TypeConverter<T> {
+	
+	/**
+	 * 转换字符串到目标类型, 转换失败的时候抛出 {@link IllegalArgumentException}.
+	 * 
+	 * @param value
+	 *            待转换的字符串, 可能为 null
+	 * @return
+	 */
+	T convert(String value);
+}
@@ -6,9 +6,10 @@
 package cn.raytrend.utopiaframework.core.util.regex;
 
 /**
- * 各种验证比如邮箱手机号码等的正则表达式.
+ * 各种验证比如邮箱手机号码等的正则表达式. 校验时应该使用 {@link ValidatorRegistry}, 不需要每次都重新编译.
  * 
  * @author zhouych
+ * @see ValidatorRegistry
  */
 public class RegularExpression {
 
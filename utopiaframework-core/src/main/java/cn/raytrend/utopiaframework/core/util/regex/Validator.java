@@ -0,0 +1,23 @@
+/*
+ * Validator.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.core.util.regex;
+
+/**
+ * 字符串格式的校验器, 实现类必须是线程安全的.
+ * 
+ * @author zhouych
+ * @see ValidatorRegistry
+ */
+public interface Validator {
+	
+	/**
+	 * 校验字符串的格式是否正确, null 总是返回 false.
+	 * 
+	 * @param input
+	 * @return
+	 */
+	boolean isValid(CharSequence input);
+}
@@ -0,0 +1,177 @@
+/*
+ * ValidatorRegistry.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.core.util.regex;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 以正则表达式为 key 的 {@link Validator} 注册表, 用于替代每次都会重新编译正则表达式的 {@link String#matches(String)}. 比如:
+ * <pre>
+ * {@code
+ * boolean valid = ValidatorRegistry.isValid(RegularExpression.REG_URL, url);
+ * }
+ * </pre>
+ * 每个正则表达式只编译一次, 每个线程复用同一个 {@link Matcher}. 对于 {@link RegularExpression} 中格式简单的几个表达式
+ * ({@link RegularExpression#REG_MOBILEPHONE}, {@link RegularExpression#REG_QQ}, {@link RegularExpression#REG_POSTALCODE}),
+ * 注册的是不使用正则表达式的校验器, 其结果与正则表达式完全一致.
+ * <p>
+ * 注意: 注册表不会清理, 所以只应该传入常量形式的正则表达式.
+ * </p>
+ * 
+ * @author zhouych
+ * @see RegularExpression
+ */
+public class ValidatorRegistry {
+	
+	private static final ConcurrentMap<String, Validator> VALIDATORS = new ConcurrentHashMap<String, Validator>();
+	
+	static {
+		register(RegularExpression.REG_MOBILEPHONE, new Validator() {
+			@Override
+			public boolean isValid(CharSequence input) {
+				// 等价于 ^[1][3,5]+\d{9}: '1', 若干个 '3' ',' '5', 最后 9 位数字
+				if (input == null || input.length() < 11 || input.charAt(0) != '1') {
+					return false;
+				}
+				int digitsStart = input.length() - 9;
+				for (int i = 1; i < digitsStart; i++) {
+					char c = input.charAt(i);
+					if (c != '3' && c != '5' && c != ',') {
+						return false;
+					}
+				}
+				return isDigits(input, digitsStart, input.length());
+			}
+		});
+		register(RegularExpression.REG_QQ, new Validator() {
+			@Override
+			public boolean isValid(CharSequence input) {
+				// 等价于 [1-9][0-9]{4,13}
+				return input != null && input.length() >= 5 && input.length() <= 14 && input.charAt(0) != '0'
+						&& isDigits(input, 0, input.length());
+			}
+		});
+		register(RegularExpression.REG_POSTALCODE, new Validator() {
+			@Override
+			public boolean isValid(CharSequence input) {
+				// 等价于 [1-9]\d{5}(?!\d)
+				return input != null && input.length() == 6 && input.charAt(0) != '0'
+						&& isDigits(input, 0, input.length());
+			}
+		});
+	}
+	
+	/**
+	 * 注册某个正则表达式对应的校验器, 会覆盖之前注册的校验器. 校验器的结果必须与正则表达式的完全匹配一致.
+	 * 
+	 * @param regex
+	 * @param validator
+	 */
+	public static void register(String regex, Validator validator) {
+		VALIDATORS.put(regex, validator);
+	}
+	
+	/**
+	 * 获取某个正则表达式对应的校验器, 没有注册的正则表达式会被编译并注册.
+	 * 
+	 * @param regex
+	 * @return
+	 */
+	public static Validator getValidator(String regex) {
+		Validator validator = VALIDATORS.get(regex);
+		if (validator == null) {
+			validator = new PatternValidator(Pattern.compile(regex));
+			Validator existing = VALIDATORS.putIfAbsent(regex, validator);
+			if (existing != null) {
+				validator = existing;
+			}
+		}
+		return validator;
+	}
+	
+	/**
+	 * 校验字符串是否完全匹配正则表达式, 与 {@link String#matches(String)} 的结果一致, 但是 input 为 null 时返回 false.
+	 * 
+	 * @param regex
+	 * @param input
+	 * @return
+	 */
+	public static boolean isValid(String regex, CharSequence input) {
+		return getValidator(regex).isValid(input);
+	}
+	
+	/**
+	 * 批量校验, 用于批量导入等场景, 返回的数组与 inputs 一一对应.
+	 * 
+	 * @param regex
+	 * @param inputs
+	 * @return
+	 */
+	public static boolean[] validate(String regex, List<? extends CharSequence> inputs) {
+		return validate(getValidator(regex), inputs);
+	}
+	
+	/**
+	 * 批量校验, 返回的数组与 inputs 一一对应.
+	 * 
+	 * @param validator
+	 * @param inputs
+	 * @return
+	 */
+	public static boolean[] validate(Validator validator, List<? extends CharSequence> inputs) {
+		boolean[] result = new boolean[inputs.size()];
+		int i = 0;
+		for (CharSequence input : inputs) {
+			result[i++] = validator.isValid(input);
+		}
+		return result;
+	}
+	
+	private static boolean isDigits(CharSequence input, int start, int end) {
+		for (int i = start; i < end; i++) {
+			char c = input.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * 使用预先编译的 {@link Pattern} 的校验器, 每个线程复用一个 {@link Matcher}.
+	 */
+	private static final class PatternValidator implements Validator {
+		
+		private final ThreadLocal<Matcher> matcher;
+		
+		PatternValidator(final Pattern pattern) {
+			this.matcher = new ThreadLocal<Matcher>() {
+				@Override
+				protected Matcher initialValue() {
+					return pattern.matcher("");
+				}
+			};
+		}
+		
+		@Override
+		public boolean isValid(CharSequence input) {
+			if (input == null) {
+				return false;
+			}
+			Matcher m = matcher.get();
+			try {
+				return m.reset(input).matches();
+			} finally {
+				// 不持有 input 的引用
+				m.reset("");
+			}
+		}
+	}
+}
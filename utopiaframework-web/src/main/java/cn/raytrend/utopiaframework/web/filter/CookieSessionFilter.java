@@ -0,0 +1,190 @@
+/*
+ * CookieSessionFilter.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.web.filter;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cn.raytrend.utopiaframework.core.util.codec.EncoderUtil;
+import cn.raytrend.utopiaframework.web.util.Constants;
+import cn.raytrend.utopiaframework.web.util.session.CookieSessionCodec;
+import cn.raytrend.utopiaframework.web.util.session.CookieSessionRequestWrapper;
+import cn.raytrend.utopiaframework.web.util.session.CookieSessionResponseWrapper;
+
+/**
+ * 将 session 保存在签名的 cookie 中, 代替容器的 HttpSession, 集群中的节点不需要复制 session, 也不需要粘性会话, 适合每个用户只
+ * 保存几百字节状态的场景. 在 web.xml 中可配置如下:
+ * 
+ * <pre>
+ * {@code
+ * <filter>
+ *     <filter-name>cookieSessionFilter</filter-name>
+ *     <filter-class>cn.raytrend.utopiaframework.web.filter.CookieSessionFilter</filter-class>
+ *     <init-param>
+ *         <param-name>keys</param-name>
+ *         <param-value>2:base64 编码的新密钥|1:base64 编码的旧密钥</param-value>
+ *     </init-param>
+ *     <init-param>
+ *         <param-name>maxInactiveInterval</param-name>
+ *         <param-value>1800</param-value>
+ *     </init-param>
+ *     <init-param>
+ *         <param-name>compressThreshold</param-name>
+ *         <param-value>128</param-value>
+ *     </init-param>
+ *     <init-param>
+ *         <param-name>secure</param-name>
+ *         <param-value>false</param-value>
+ *     </init-param>
+ * </filter>
+ * 
+ * <filter-mapping>
+ *     <filter-name>cookieSessionFilter</filter-name>
+ *     <url-pattern>/*</url-pattern>
+ * </filter-mapping>
+ * }
+ * </pre>
+ * 
+ * keys 为以 '|' 分隔的 "id:密钥", id 为 0 到 255, 第一个密钥用于签名, 其他的只用于校验, 密钥至少 16 字节, 集群中的所有节点
+ * 必须使用相同的配置. cookieName 默认为 {@link Constants#COOKIE_SESSION}, cookiePath 默认为 context path.
+ * maxInactiveInterval 以秒为单位, 默认 1800. compressThreshold 为内容超过多少字节时尝试压缩, 默认 128, -1 表示不压缩.
+ * <p>
+ * 只有 session 被修改过, 或者距离上次写入超过 maxInactiveInterval 的一半时才会写入 cookie, 没有使用 session 的请求不会解析
+ * cookie. cookie 在响应开始输出内容之前写入, 之后对 session 的修改不会被保存并会记录警告. 编码的格式参见
+ * {@link CookieSessionCodec}.
+ * </p>
+ * <p>
+ * cookie 的内容只签名而没有加密, 客户端可以读取所有的属性值, 也可以重放以前的 cookie, 所以不能在 session 中保存密码,
+ * 验证码答案等需要对客户端保密或者只能使用一次的数据. 属性值只能是 String, Integer, Long, Boolean, Double 和 byte[],
+ * 不支持 Java 序列化. {@link cn.raytrend.utopiaframework.web.servlet.ImageCaptchaServlet} 必须使用 token 模式, 在 session
+ * 模式下会拒绝生成验证码.
+ * </p>
+ * 
+ * @author zhouych
+ */
+public class CookieSessionFilter implements Filter {
+	
+	private static final Logger logger = LoggerFactory.getLogger(CookieSessionFilter.class);
+	
+	/**
+	 * 标记请求已经被包装过的属性名
+	 */
+	private static final String FILTERED_ATTRIBUTE = CookieSessionFilter.class.getName() + ".FILTERED";
+	
+	private ServletContext servletContext;
+	
+	private CookieSessionCodec codec;
+	
+	private String cookieName = Constants.COOKIE_SESSION;
+	
+	private String cookiePath;
+	
+	private boolean secure = false;
+	
+	private int maxInactiveInterval = 1800;
+	
+	@Override
+	public void init(FilterConfig config) throws ServletException {
+		
+		servletContext = config.getServletContext();
+		String keys = config.getInitParameter("keys");
+		if (StringUtils.isBlank(keys)) {
+			throw new ServletException("init-param keys is required");
+		}
+		int compressThreshold = 128;
+		String value = config.getInitParameter("compressThreshold");
+		if (StringUtils.isNotBlank(value)) {
+			compressThreshold = Integer.parseInt(value.trim());
+		}
+		value = config.getInitParameter("maxInactiveInterval");
+		if (StringUtils.isNotBlank(value)) {
+			maxInactiveInterval = Integer.parseInt(value.trim());
+		}
+		value = config.getInitParameter("secure");
+		if (StringUtils.isNotBlank(value)) {
+			secure = Boolean.parseBoolean(value.trim());
+		}
+		value = config.getInitParameter("cookieName");
+		if (StringUtils.isNotBlank(value)) {
+			cookieName = value.trim();
+		}
+		value = config.getInitParameter("cookiePath");
+		if (StringUtils.isNotBlank(value)) {
+			cookiePath = value.trim();
+		}
+		
+		try {
+			for (String entry : StringUtils.split(keys, '|')) {
+				int colon = entry.indexOf(':');
+				if (colon == -1) {
+					throw new ServletException("key must be in the form id:base64, but was " + entry);
+				}
+				int keyId = Integer.parseInt(entry.substring(0, colon).trim());
+				byte[] key = EncoderUtil.base64Decode(entry.substring(colon + 1).trim());
+				if (codec == null) {
+					codec = new CookieSessionCodec(keyId, key, compressThreshold);
+				} else {
+					codec.addKey(keyId, key);
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			throw new ServletException("invalid init-param keys", e);
+		}
+	}
+	
+	@Override
+	public void destroy() {
+		// 不做处理
+	}
+	
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+			throws IOException, ServletException {
+		
+		// 只处理 HTTP 请求, forward 和 include 时不重复包装
+		if (!(request instanceof HttpServletRequest) || request.getAttribute(FILTERED_ATTRIBUTE) != null) {
+			chain.doFilter(request, response);
+			return;
+		}
+		request.setAttribute(FILTERED_ATTRIBUTE, Boolean.TRUE);
+		
+		HttpServletRequest httpRequest = (HttpServletRequest) request;
+		HttpServletResponse httpResponse = (HttpServletResponse) response;
+		String path = cookiePath;
+		if (path == null) {
+			path = StringUtils.isEmpty(httpRequest.getContextPath()) ? "/" : httpRequest.getContextPath();
+		}
+		CookieSessionRequestWrapper requestWrapper = new CookieSessionRequestWrapper(httpRequest, servletContext,
+				codec, cookieName, path, secure, maxInactiveInterval);
+		CookieSessionResponseWrapper responseWrapper = new CookieSessionResponseWrapper(httpResponse,
+				requestWrapper);
+		try {
+			chain.doFilter(requestWrapper, responseWrapper);
+		} finally {
+			if (!httpResponse.isCommitted()) {
+				requestWrapper.commitSession(httpResponse);
+			}
+			if (requestWrapper.isModifiedAfterCommit()) {
+				logger.warn("session modified after the response was committed, changes are lost: {}",
+						httpRequest.getRequestURI());
+			}
+			request.removeAttribute(FILTERED_ATTRIBUTE);
+		}
+	}
+}
@@ -7,8 +7,6 @@ package cn.raytrend.utopiaframework.web.filter;
 
 import java.io.IOException;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Map;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -23,7 +21,8 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import cn.raytrend.utopiaframework.web.util.HttpUtil;
+import cn.raytrend.utopiaframework.web.util.cache.ExpiresRules;
+import cn.raytrend.utopiaframework.web.util.cache.ExpiresRules.Rule;
 
 /**
  * 利用浏览器端的 Expires 标记来缓存静态文件, 比如 css 和 jpg 文件, 在 web.xml 中可配置如下:
@@ -53,6 +52,14 @@ import cn.raytrend.utopiaframework.web.util.HttpUtil;
  *         <param-name>.png</param-name>
  *         <param-value>86400</param-value>
  *     </init-param>
+ *     <init-param>
+ *         <param-name>prefix:/static/</param-name>
+ *         <param-value>604800, public</param-value>
+ *     </init-param>
+ *     <init-param>
+ *         <param-name>fingerprint</param-name>
+ *         <param-value>31536000, public</param-value>
+ *     </init-param>
  * </filter>
  * 
  * <filter-mapping>
@@ -66,6 +73,11 @@ import cn.raytrend.utopiaframework.web.util.HttpUtil;
  * 
  * 以上代码表示将指定的静态文件缓存时间设置为 86400s(一天). 当然也可以通过 Apache 服务器的
  * mode_expires 模块来配置. 另外需要注意的是客户端如果采用了 F5 键来刷新的话 Expires 标记将失效.
+ * <p>
+ * 参数名以 "." 开头的是后缀规则, 以 "prefix:" 开头的是路径前缀规则(不包括 context path), fingerprint 是文件名中带有内容散列
+ * 的资源的规则, 这些资源会加上 Cache-Control: immutable, 浏览器和 CDN 不会再重新验证. 参数值为秒数, 后面可以用逗号加上其他的
+ * Cache-Control 指令. 规则的匹配和优先级参见 {@link ExpiresRules}.
+ * </p>
  * 
  * @author zhouych
  */
@@ -73,6 +85,16 @@ public class ExpiresFilter implements Filter {
 	
 	protected Logger logger = LoggerFactory.getLogger(ExpiresFilter.class);
 	
+	/**
+	 * 前缀规则的参数名前缀
+	 */
+	private static final String PREFIX_PARAM = "prefix:";
+	
+	/**
+	 * 指纹规则的参数名
+	 */
+	private static final String FINGERPRINT_PARAM = "fingerprint";
+	
 	/**
 	 * 是否开启, 默认为未启用, 用于开发阶段
 	 */
@@ -84,9 +106,9 @@ public class ExpiresFilter implements Filter {
 	private boolean isDebug = true;
 	
 	/**
-	 * 指示静态资源的 map, key 为资源的后缀名, value 为过期时间
+	 * 在 init 时编译的缓存规则
 	 */
-	private Map<String, Long> resourcesMap = new HashMap<String, Long>(5);
+	private ExpiresRules rules = new ExpiresRules();
 	
 	@SuppressWarnings("unchecked")
 	@Override
@@ -114,13 +136,21 @@ public class ExpiresFilter implements Filter {
 				// 忽略 enabled & debug 的参数
 				continue;
 			}
-			String paraValue = config.getInitParameter(paramName);
-			if (StringUtils.isNumeric(paraValue)) {
-				long time = Long.valueOf(paraValue);
-				resourcesMap.put(paramName, time);
-				if (isDebug) {
-					logger.debug("[logger] - file -> {} & expiredTime -> {}", paramName, time);
-				}
+			Rule rule = ExpiresRules.parseRule(config.getInitParameter(paramName));
+			if (rule == null) {
+				continue;
+			}
+			if (paramName.startsWith(".")) {
+				rules.addSuffix(paramName, rule);
+			} else if (paramName.startsWith(PREFIX_PARAM)) {
+				rules.addPrefix(paramName.substring(PREFIX_PARAM.length()), rule);
+			} else if (paramName.equals(FINGERPRINT_PARAM)) {
+				rules.setFingerprintRule(rule);
+			} else {
+				continue;
+			}
+			if (isDebug) {
+				logger.debug("[logger] - file -> {} & Cache-Control -> {}", paramName, rule);
 			}
 		}
 	}
@@ -150,14 +180,11 @@ public class ExpiresFilter implements Filter {
 		HttpServletResponse httpResponse = (HttpServletResponse) response;
 		
 		String uri = httpRequest.getRequestURI();
-		int tmp = uri.lastIndexOf(".");
-		if (tmp != -1) {
-			// 如果请求的是有后缀名的文件, 比如 index.jsp 和 style.css 等文件
-			String ext = uri.substring(tmp);
-			Long expiredTime = resourcesMap.get(ext);
-			if (expiredTime != null) {
-				HttpUtil.setExpiresHeader(httpResponse, expiredTime.longValue());
-			}
+		// 去掉 context path 和 ;jsessionid= 之类的路径参数, 只用下标表示, 不创建新的字符串
+		int end = uri.indexOf(';');
+		Rule rule = rules.match(uri, httpRequest.getContextPath().length(), end == -1 ? uri.length() : end);
+		if (rule != null) {
+			rule.apply(httpResponse);
 		}
 		chain.doFilter(httpRequest, httpResponse);
 	}
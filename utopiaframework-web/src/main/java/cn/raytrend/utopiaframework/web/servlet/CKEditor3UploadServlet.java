@@ -6,8 +6,13 @@
 package cn.raytrend.utopiaframework.web.servlet;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -15,6 +20,8 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -23,12 +30,21 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.fileupload.FileItemFactory;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
 import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cn.raytrend.utopiaframework.core.util.codec.DigestUtil;
+import cn.raytrend.utopiaframework.core.util.codec.EncoderUtil;
+import cn.raytrend.utopiaframework.core.util.io.ContentAddressedStore;
+import cn.raytrend.utopiaframework.core.util.io.ContentAddressedStore.StoredFile;
+import cn.raytrend.utopiaframework.core.util.io.FileUtil;
+import cn.raytrend.utopiaframework.core.util.io.UploadJobQueue;
+import cn.raytrend.utopiaframework.core.util.io.UploadProcessor;
 import cn.raytrend.utopiaframework.core.util.lang.StringUtil;
 import cn.raytrend.utopiaframework.web.util.Constants;
 
@@ -71,6 +87,30 @@ import cn.raytrend.utopiaframework.web.util.Constants;
  *         <param-name>deniedExtensionsFlash</param-name>
  *         <param-value></param-value>
  *     </init-param>
+ *     <init-param>
+ *         <param-name>streaming</param-name>
+ *         <param-value>true</param-value>
+ *     </init-param>
+ *     <init-param>
+ *         <param-name>deduplicate</param-name>
+ *         <param-value>true</param-value>
+ *     </init-param>
+ *     <init-param>
+ *         <param-name>maxFileSize</param-name>
+ *         <param-value>10485760</param-value>
+ *     </init-param>
+ *     <init-param>
+ *         <param-name>maxRequestSize</param-name>
+ *         <param-value>11534336</param-value>
+ *     </init-param>
+ *     <init-param>
+ *         <param-name>jobQueueDir</param-name>
+ *         <param-value>/WEB-INF/upload-jobs</param-value>
+ *     </init-param>
+ *     <init-param>
+ *         <param-name>uploadProcessors</param-name>
+ *         <param-value>com.example.VirusScanProcessor|com.example.IndexProcessor</param-value>
+ *     </init-param>
  * </servlet>
  * <servlet-mapping>
  *     <servlet-name>ckeditorUploader</servlet-name>
@@ -96,6 +136,19 @@ import cn.raytrend.utopiaframework.web.util.Constants;
  * }
  * </pre>
  * 
+ * streaming 为 true 时使用 fileupload 的流式 API, 在读取文件内容之前检查大小和扩展名, 并直接写入最终的文件; 为 false(默认)
+ * 时先将文件解析到临时文件中再复制. maxFileSize 和 maxRequestSize 分别限制单个文件和整个请求的字节数.
+ * 
+ * deduplicate 为 true 时按内容寻址存储, 文件保存为 baseDir/ckeditor3/类型/SHA-256 的前 2 位/第 3-4 位/SHA-256.扩展名,
+ * 重复上传的文件会复用已有的文件, 参见 {@link ContentAddressedStore}; 为 false(默认)时按上传时间加序号命名并保存在按日期划分
+ * 的目录中. 两个参数默认都为 false, 保持原有的目录结构和文件 URL, 已有的部署需要显式开启; 开启 deduplicate 后新上传的文件
+ * 会保存到新的目录结构中, 已有的文件和 URL 不受影响.
+ * 
+ * 配置了 jobQueueDir 时, 上传成功后会向 {@link UploadJobQueue} 提交后续处理任务, 上传请求不等待处理完成. uploadProcessors 为
+ * 以 '|' 分隔的 {@link UploadProcessor} 实现类名, 需要有无参的构造函数; jobWorkers(默认 2) 和 jobQueueCapacity(默认 1000)
+ * 分别为工作线程数和未完成任务的最大数量. 队列保存在 ServletContext 的 {@link #UPLOAD_JOB_QUEUE_ATTRIBUTE} 属性中, 也可以
+ * 在其他地方注册需要参数的处理器, 比如 {@code ThumbnailUploadProcessor}, 以及读取处理的统计数据.
+ * 
  * 这里指出一点的是, 用 HTTP POST 方法传输大数据的时候效率非常差, 这个时候可以考虑下 WebDAV.
  * 
  * @author zhouych
@@ -104,6 +157,11 @@ import cn.raytrend.utopiaframework.web.util.Constants;
 public class CKEditor3UploadServlet extends HttpServlet {
 
 	private static final Logger logger = LoggerFactory.getLogger(CKEditor3UploadServlet.class);
+	
+	/**
+	 * 保存 {@link UploadJobQueue} 的 ServletContext 属性名
+	 */
+	public static final String UPLOAD_JOB_QUEUE_ATTRIBUTE = UploadJobQueue.class.getName();
 
 	/**
 	 * 上传文件的根目录, 默认为 webapp/uploadfiles
@@ -124,6 +182,42 @@ public class CKEditor3UploadServlet extends HttpServlet {
 	 * 被阻止上传的文件的后缀名, 比如 File 需要限制 jsp 和 asp 等格式文件的上传
 	 */
 	private static Map<String, List<String>> deniedExtensions = new LinkedHashMap<String, List<String>>(3);
+	
+	/**
+	 * 是否使用流式上传, 默认为 false
+	 */
+	private static boolean streaming = false;
+	
+	/**
+	 * 单个文件的最大字节数, -1 表示不限制
+	 */
+	private static long maxFileSize = -1;
+	
+	/**
+	 * 整个请求的最大字节数, -1 表示不限制
+	 */
+	private static long maxRequestSize = -1;
+	
+	/**
+	 * 是否按内容寻址存储, 默认为 false
+	 */
+	private static boolean deduplicate = false;
+	
+	/**
+	 * 不按内容寻址存储时文件名的序号, 避免同一毫秒内上传的文件互相覆盖
+	 */
+	private static final AtomicInteger FILE_SEQUENCE = new AtomicInteger();
+	
+	/**
+	 * 每种文件类型(File/Image/Flash)对应的存储
+	 */
+	private static Map<String, ContentAddressedStore> stores = new LinkedHashMap<String, ContentAddressedStore>(3);
+	
+	/**
+	 * 上传文件的后续处理队列, 没有配置 jobQueueDir 时为 null
+	 */
+	private static UploadJobQueue jobQueue;
+	
 
 	/**
 	 * Servlet初始化方法
@@ -137,6 +231,22 @@ public class CKEditor3UploadServlet extends HttpServlet {
 		if (baseDir == null) {
 			baseDir = "/uploadfiles/";
 		}
+		String value = getInitParameter("streaming");
+		if (StringUtils.isNotBlank(value)) {
+			streaming = Boolean.valueOf(value.trim()).booleanValue();
+		}
+		value = getInitParameter("maxFileSize");
+		if (StringUtils.isNotBlank(value)) {
+			maxFileSize = Long.parseLong(value.trim());
+		}
+		value = getInitParameter("maxRequestSize");
+		if (StringUtils.isNotBlank(value)) {
+			maxRequestSize = Long.parseLong(value.trim());
+		}
+		value = getInitParameter("deduplicate");
+		if (StringUtils.isNotBlank(value)) {
+			deduplicate = Boolean.valueOf(value.trim()).booleanValue();
+		}
 		// 在其目录前加一个 ckeditor3 的目录
 		baseDir = baseDir + "ckeditor3/";
 		// 完整的服务器文件上传路径
@@ -155,6 +265,48 @@ public class CKEditor3UploadServlet extends HttpServlet {
 		deniedExtensions.put("File", stringToArrayList(this.getInitParameter("deniedExtensionsFile")));
 		deniedExtensions.put("Image", stringToArrayList(this.getInitParameter("deniedExtensionsImage")));
 		deniedExtensions.put("Flash", stringToArrayList(this.getInitParameter("deniedExtensionsFlash")));
+		
+		// 载入已有文件的索引
+		if (deduplicate) {
+			for (String type : allowedExtensions.keySet()) {
+				stores.put(type, new ContentAddressedStore(new File(realBaseDir, type)));
+			}
+		}
+		
+		// 启动上传文件的后续处理队列
+		String jobQueueDir = getInitParameter("jobQueueDir");
+		if (StringUtils.isNotBlank(jobQueueDir)) {
+			int workers = 2;
+			int capacity = 1000;
+			value = getInitParameter("jobWorkers");
+			if (StringUtils.isNotBlank(value)) {
+				workers = Integer.parseInt(value.trim());
+			}
+			value = getInitParameter("jobQueueCapacity");
+			if (StringUtils.isNotBlank(value)) {
+				capacity = Integer.parseInt(value.trim());
+			}
+			jobQueue = new UploadJobQueue(new File(getServletContext().getRealPath(jobQueueDir.trim())), workers,
+					capacity);
+			for (String className : stringToArrayList(getInitParameter("uploadProcessors"), false)) {
+				try {
+					jobQueue.register(className, (UploadProcessor) Class.forName(className).newInstance());
+				} catch (Exception e) {
+					throw new ServletException("cannot create upload processor " + className, e);
+				}
+			}
+			getServletContext().setAttribute(UPLOAD_JOB_QUEUE_ATTRIBUTE, jobQueue);
+			jobQueue.start();
+		}
+	}
+	
+	@Override
+	public void destroy() {
+		if (jobQueue != null) {
+			getServletContext().removeAttribute(UPLOAD_JOB_QUEUE_ATTRIBUTE);
+			jobQueue.shutdown();
+			jobQueue = null;
+		}
 	}
 
 	@Override
@@ -163,7 +315,6 @@ public class CKEditor3UploadServlet extends HttpServlet {
 		doPost(request, response);
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public void doPost(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
@@ -181,19 +332,198 @@ public class CKEditor3UploadServlet extends HttpServlet {
         String currentPath = baseDir + typeStr + "/" + Constants.FORMATTER_DIR.format(now);
         // 获得web应用的上传路径
         String currentDirPath = getServletContext().getRealPath(currentPath);
-        // 判断文件夹是否存在，不存在则创建
-        File dirTest = new File(currentDirPath);
-        if (!dirTest.exists()) {
-            dirTest.mkdirs();
+        // 判断文件夹是否存在，不存在则创建, 按内容寻址存储时不需要按日期建目录
+        if (!deduplicate) {
+            File dirTest = new File(currentDirPath);
+            if (!dirTest.exists()) {
+                dirTest.mkdirs();
+            }
         }
         // 将路径前加上web应用名
         currentPath = request.getContextPath() + currentPath;
+        // 文件名和文件真实路径
+        String fileUrl;
+
+        if (streaming) {
+            fileUrl = doStreamingUpload(request, typeStr, currentPath, currentDirPath, now);
+        } else {
+            fileUrl = doBufferedUpload(request, typeStr, currentPath, currentDirPath, now);
+        }
+
+        // CKEditorFuncNum 是回调时显示的位置, 这个参数必须有
+        String callback = request.getParameter("CKEditorFuncNum");
+        out.println("<script type=\"text/javascript\">");
+        out.println("window.parent.CKEDITOR.tools.callFunction(" + callback
+                + ",'" + fileUrl + "',''" + ")");
+        out.println("</script>");
+        out.flush();
+        out.close();
+	}
+	
+	/**
+	 * 生成不按内容寻址存储时的文件名, 由上传时间和序号组成, 比如 20111129123456789_42.jpg.
+	 */
+	private static String newFileName(Date now, String ext) {
+		return Constants.FORMATTER_FILE.format(now) + "_" + (FILE_SEQUENCE.incrementAndGet() & Integer.MAX_VALUE) + "."
+				+ ext;
+	}
+	
+	/**
+	 * 使用 fileupload 的流式 API 上传文件: 在读取文件内容之前检查大小和扩展名, 然后通过 {@link FileChannel} 和 direct buffer
+	 * 直接写入最终的文件, 同时计算文件内容的 SHA-256, 不经过临时文件.
+	 * 
+	 * @return 文件的 url, 上传失败时为空字符串
+	 */
+	private String doStreamingUpload(HttpServletRequest request, String typeStr, String currentPath,
+			String currentDirPath, Date now) {
+		
+		ServletFileUpload upload = createUpload(null);
+		try {
+			FileItemIterator iter = upload.getItemIterator(request);
+			while (iter.hasNext()) {
+				FileItemStream item = iter.next();
+				// CEKditor中 file 域的 name 值是 upload, 其他的表单项不需要读取
+				if (item.isFormField() || !"upload".equals(item.getFieldName())) {
+					continue;
+				}
+				String ext = StringUtil.getFileExtension(getBaseName(item.getName()));
+				if (!extIsAllowed(typeStr, ext)) {
+					if (debug) {
+						logger.info("无效的文件类型 {}", ext);
+					}
+					return "";
+				}
+				if (deduplicate) {
+					return storeDeduplicated(request, typeStr, item.openStream(), ext);
+				}
+				String fileName = newFileName(now, ext);
+				File pathToSave = new File(currentDirPath, fileName);
+				String hash = writeToFile(item.openStream(), pathToSave);
+				if (debug) {
+					logger.info("文件上传成功, SHA-256: {}", hash);
+				}
+				submitJobs(pathToSave, typeStr, currentPath + "/" + fileName, hash);
+				return currentPath + "/" + fileName;
+			}
+		} catch (Exception ex) {
+			if (debug) {
+				ex.printStackTrace();
+			}
+		}
+		return "";
+	}
+	
+	/**
+	 * 将文件保存到 typeStr 对应的 {@link ContentAddressedStore} 中, 内容相同的文件只保存一份.
+	 * 
+	 * @return 文件的 url
+	 */
+	private String storeDeduplicated(HttpServletRequest request, String typeStr, InputStream input, String ext)
+			throws IOException {
+		
+		ContentAddressedStore store = stores.get(typeStr);
+		if (store == null) {
+			throw new IllegalArgumentException("unknown type: " + typeStr);
+		}
+		StoredFile stored = store.store(input, ext);
+		if (debug) {
+			logger.info(stored.isDuplicate() ? "文件已存在, 复用 {}" : "文件上传成功 {}", stored.getPath());
+		}
+		String fileUrl = request.getContextPath() + baseDir + typeStr + "/" + stored.getPath();
+		// 重复的文件之前已经处理过
+		if (!stored.isDuplicate()) {
+			submitJobs(stored.getFile(), typeStr, fileUrl, stored.getHash());
+		}
+		return fileUrl;
+	}
+	
+	/**
+	 * 向 {@link UploadJobQueue} 提交上传文件的后续处理任务. 队列满了或者保存任务失败时只记录日志, 不影响上传的结果.
+	 */
+	private void submitJobs(File file, String typeStr, String fileUrl, String hash) {
+		
+		if (jobQueue == null) {
+			return;
+		}
+		Map<String, String> attributes = new HashMap<String, String>(4);
+		attributes.put("type", typeStr);
+		attributes.put("url", fileUrl);
+		if (hash != null) {
+			attributes.put("sha256", hash);
+		}
+		try {
+			jobQueue.submit(file, attributes);
+		} catch (RejectedExecutionException e) {
+			logger.warn("upload job queue is full, skip post-processing of {}", file);
+		} catch (IOException e) {
+			logger.warn("cannot submit upload job for " + file, e);
+		}
+	}
+	
+	/**
+	 * 将输入流的内容通过 {@link FileChannel} 写入文件, 同时计算 SHA-256. 写入失败时删除写了一半的文件.
+	 * 
+	 * @param input
+	 * @param file
+	 * @return 文件内容的 SHA-256, 小写的 Hex 编码
+	 * @throws IOException
+	 */
+	private static String writeToFile(InputStream input, File file) throws IOException {
+		
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance(DigestUtil.SHA256);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("Unexpected Checked Exception.", e);
+		}
+		FileOutputStream output = new FileOutputStream(file);
+		boolean success = false;
+		try {
+			FileUtil.write(input, output.getChannel(), md);
+			success = true;
+		} finally {
+			input.close();
+			output.close();
+			if (!success && !file.delete()) {
+				logger.warn("cannot delete incomplete upload {}", file);
+			}
+		}
+		return EncoderUtil.hexEncode(md.digest());
+	}
+	
+	/**
+	 * 创建 {@link ServletFileUpload} 并设置大小限制. 请求的 Content-Length 超过限制时, 在读取请求内容之前就会失败.
+	 */
+	private ServletFileUpload createUpload(FileItemFactory factory) {
+		ServletFileUpload upload = factory == null ? new ServletFileUpload() : new ServletFileUpload(factory);
+		upload.setSizeMax(maxRequestSize);
+		upload.setFileSizeMax(maxFileSize);
+		return upload;
+	}
+	
+	/**
+	 * 去掉客户端传来的文件名中的路径.
+	 */
+	private static String getBaseName(String fileNameLong) {
+		fileNameLong = fileNameLong.replace('\\', '/');
+		String[] pathParts = fileNameLong.split("/");
+		return pathParts[pathParts.length - 1];
+	}
+	
+	/**
+	 * 使用 {@link DiskFileItemFactory} 先将所有的表单项解析到内存或者临时文件中, 再写入最终的文件.
+	 * 
+	 * @return 文件的 url, 上传失败时为空字符串
+	 */
+	@SuppressWarnings("unchecked")
+	private String doBufferedUpload(HttpServletRequest request, String typeStr, String currentPath,
+			String currentDirPath, Date now) {
+		
         // 文件名和文件真实路径
         String fileUrl = "";
 
         // 使用 Apache Common 组件中的 fileupload 进行文件上传
-        FileItemFactory factory = new DiskFileItemFactory();
-        ServletFileUpload upload = new ServletFileUpload(factory);
+        ServletFileUpload upload = createUpload(new DiskFileItemFactory());
         try {
             List<FileItem> items = upload.parseRequest(request);
             Map<String, Object> fields = new HashMap<String, Object>();
@@ -216,8 +546,23 @@ public class CKEditor3UploadServlet extends HttpServlet {
             String fileName = pathParts[pathParts.length - 1];
             // 获取文件扩展名
             String ext = StringUtil.getFileExtension(fileName);
+            if (deduplicate) {
+                if (!extIsAllowed(typeStr, ext)) {
+                    if (debug) {
+                        logger.info("无效的文件类型 {}", ext);
+                    }
+                    return "";
+                }
+                InputStream input = uplFile.getInputStream();
+                try {
+                    return storeDeduplicated(request, typeStr, input, ext);
+                } finally {
+                    input.close();
+                    uplFile.delete();
+                }
+            }
             // 设置上传文件名
-            fileName = Constants.FORMATTER_FILE.format(now) + "." + ext;
+            fileName = newFileName(now, ext);
             File pathToSave = new File(currentDirPath, fileName);
             fileUrl = currentPath + "/" + fileName;
             if (extIsAllowed(typeStr, ext)) {
@@ -225,6 +570,7 @@ public class CKEditor3UploadServlet extends HttpServlet {
                 if (debug) {
                     logger.info("文件上传成功");
                 }
+                submitJobs(pathToSave, typeStr, fileUrl, null);
             } else {
                 if (debug) {
                     logger.info("无效的文件类型 {}", ext);
@@ -235,15 +581,7 @@ public class CKEditor3UploadServlet extends HttpServlet {
                 ex.printStackTrace();
             }
         }
-
-        // CKEditorFuncNum 是回调时显示的位置, 这个参数必须有
-        String callback = request.getParameter("CKEditorFuncNum");
-        out.println("<script type=\"text/javascript\">");
-        out.println("window.parent.CKEDITOR.tools.callFunction(" + callback
-                + ",'" + fileUrl + "',''" + ")");
-        out.println("</script>");
-        out.flush();
-        out.close();
+        return fileUrl;
 	}
 
 	/**
@@ -282,12 +620,25 @@ public class CKEditor3UploadServlet extends HttpServlet {
 	 * @return
 	 */
 	private ArrayList<String> stringToArrayList(String deniedExtensionsStr) {
+		return stringToArrayList(deniedExtensionsStr, true);
+	}
+	
+	/**
+	 * 将以 '|' 分隔的字符串转换成去掉首尾空白的字符串 list.
+	 * 
+	 * @param value
+	 * @param lowerCase
+	 *            是否转换成小写
+	 * @return
+	 */
+	private ArrayList<String> stringToArrayList(String value, boolean lowerCase) {
 		
-		if (StringUtils.isNotBlank(deniedExtensionsStr)) {
-			String[] deniedExtensionsStrArray = StringUtils.split("|");
+		if (StringUtils.isNotBlank(value)) {
+			String[] array = StringUtils.split(value, '|');
 			ArrayList<String> tmpList = new ArrayList<String>();
-			for (String str : deniedExtensionsStrArray) {
-				tmpList.add(str.toLowerCase());
+			for (String str : array) {
+				str = str.trim();
+				tmpList.add(lowerCase ? str.toLowerCase() : str);
 			}
 			return tmpList;
 		}
@@ -5,20 +5,25 @@
  */
 package cn.raytrend.utopiaframework.web.servlet;
 
-import java.awt.Color;
-import java.awt.Font;
-import java.awt.Graphics;
-import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.util.Random;
 
-import javax.imageio.ImageIO;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 
+import org.apache.commons.lang3.StringUtils;
+
+import cn.raytrend.utopiaframework.core.util.codec.EncoderUtil;
+import cn.raytrend.utopiaframework.core.util.codec.EncryptUtil;
 import cn.raytrend.utopiaframework.web.util.Constants;
+import cn.raytrend.utopiaframework.web.util.captcha.CaptchaPool;
+import cn.raytrend.utopiaframework.web.util.captcha.CaptchaTokenSigner;
+import cn.raytrend.utopiaframework.web.util.cookie.CookieUtil;
+import cn.raytrend.utopiaframework.web.util.session.CookieHttpSession;
 
 /**
  * 生成图片验证码的 Servlet. 在 web.xml 文件中可以配置如下:
@@ -27,6 +32,18 @@ import cn.raytrend.utopiaframework.web.util.Constants;
  * <servlet>
  *     <servlet-name>imageServlet</servlet-name><br>
  *     <servlet-class>org.mysterylab.utopiaframework.web.servlet.ImageCaptchaServlet</servlet-class><br>
+ *     <init-param>
+ *         <param-name>poolSize</param-name>
+ *         <param-value>200</param-value>
+ *     </init-param>
+ *     <init-param>
+ *         <param-name>poolWorkers</param-name>
+ *         <param-value>1</param-value>
+ *     </init-param>
+ *     <init-param>
+ *         <param-name>mode</param-name>
+ *         <param-value>session</param-value>
+ *     </init-param>
  * </servlet>
  * <servlet-mapping>
  *     <servlet-name>imageServlet</servlet-name>
@@ -35,19 +52,142 @@ import cn.raytrend.utopiaframework.web.util.Constants;
  * }
  * </pre>
  * 生成验证码成功后会将验证码赋给 session 的 {@link Constants#HTTP_SESSION_CAPTCHA_CODE} 变量中.
+ * <p>
+ * 验证码图片由 {@link CaptchaPool} 在后台预先生成, poolSize 为池的大小, poolWorkers 为后台线程数. 验证码池会被放到
+ * ServletContext 的 {@link #CAPTCHA_POOL_ATTRIBUTE} 属性中, 可以从中读取池的深度和生成速率等统计数据.
+ * </p>
+ * <p>
+ * mode 设置为 token 时使用无状态的令牌模式: 验证码的答案不再保存在 session 中, 而是由 {@link CaptchaTokenSigner} 签名后
+ * 写入名为 {@link Constants#COOKIE_CAPTCHA_TOKEN} 的 cookie, 匿名访问不会创建 session. 此时可以通过 tokenSecret 配置
+ * Base64 编码的签名密钥(集群中的各个节点必须一致), 通过 tokenTtl 配置令牌的有效期(秒). 两种模式下都可以使用
+ * {@link #verifyCaptcha(ServletContext, HttpServletRequest, String)} 校验用户的输入.
+ * </p>
+ * <p>
+ * 使用 {@link cn.raytrend.utopiaframework.web.filter.CookieSessionFilter} 时 session 保存在客户端, 答案会随 cookie 发送给
+ * 客户端, 旧的 cookie 也可以重放, 所以此时 session 模式会拒绝生成和校验验证码, 必须使用令牌模式.
+ * </p>
  * 
  * @author zhouych
  * @see Constants#HTTP_SESSION_CAPTCHA_CODE
  */
 @SuppressWarnings("serial")
 public class ImageCaptchaServlet extends HttpServlet {
+	
+	/**
+	 * 保存 {@link CaptchaPool} 的 ServletContext 属性名
+	 */
+	public static final String CAPTCHA_POOL_ATTRIBUTE = CaptchaPool.class.getName();
+	
+	/**
+	 * 令牌模式下保存 {@link CaptchaTokenSigner} 的 ServletContext 属性名
+	 */
+	public static final String CAPTCHA_TOKEN_SIGNER_ATTRIBUTE = CaptchaTokenSigner.class.getName();
+	
+	/**
+	 * 令牌默认的有效期: 5 分钟
+	 */
+	private static final int DEFAULT_TOKEN_TTL_SECONDS = 300;
+	
+	/**
+	 * 验证码池默认的大小
+	 */
+	private static final int DEFAULT_POOL_SIZE = 200;
+	
+	/**
+	 * 生成验证码的后台线程的默认个数
+	 */
+	private static final int DEFAULT_POOL_WORKERS = 1;
+	
+	private CaptchaPool captchaPool;
+	
+	/**
+	 * 令牌模式下的签名器, 为 null 时使用 session 模式
+	 */
+	private CaptchaTokenSigner tokenSigner;
+	
+	@Override
+	public void init() throws ServletException {
+		
+		// 采用headless工作模式, 必须在第一次使用 AWT 之前设置
+		System.setProperty("java.awt.headless", "true");
+		
+		int poolSize = DEFAULT_POOL_SIZE;
+		int poolWorkers = DEFAULT_POOL_WORKERS;
+		String value = getInitParameter("poolSize");
+		if (StringUtils.isNotBlank(value)) {
+			poolSize = Integer.parseInt(value.trim());
+		}
+		value = getInitParameter("poolWorkers");
+		if (StringUtils.isNotBlank(value)) {
+			poolWorkers = Integer.parseInt(value.trim());
+		}
+		captchaPool = new CaptchaPool(poolSize, poolWorkers);
+		// 放入 ServletContext 中, 以便监控页面读取验证码池的统计数据
+		getServletContext().setAttribute(CAPTCHA_POOL_ATTRIBUTE, captchaPool);
+		
+		if ("token".equalsIgnoreCase(StringUtils.trim(getInitParameter("mode")))) {
+			byte[] secret;
+			value = getInitParameter("tokenSecret");
+			if (StringUtils.isNotBlank(value)) {
+				secret = EncoderUtil.base64Decode(value.trim());
+			} else {
+				// 没有配置密钥时随机生成, 只在单节点下可用, 重启后之前签发的令牌失效
+				secret = EncryptUtil.generateAesKey(32);
+			}
+			int ttlSeconds = DEFAULT_TOKEN_TTL_SECONDS;
+			value = getInitParameter("tokenTtl");
+			if (StringUtils.isNotBlank(value)) {
+				ttlSeconds = Integer.parseInt(value.trim());
+			}
+			tokenSigner = new CaptchaTokenSigner(secret, ttlSeconds * 1000L);
+			getServletContext().setAttribute(CAPTCHA_TOKEN_SIGNER_ATTRIBUTE, tokenSigner);
+		}
+	}
+	
+	/**
+	 * 校验用户输入的验证码, 同时支持 session 模式和令牌模式, 每个验证码只能校验一次.
+	 * 
+	 * @param servletContext
+	 * @param request
+	 * @param answer
+	 *            用户输入的验证码, 不区分大小写
+	 * @return
+	 */
+	public static boolean verifyCaptcha(ServletContext servletContext, HttpServletRequest request, String answer) {
+		
+		if (answer == null) {
+			return false;
+		}
+		CaptchaTokenSigner signer = (CaptchaTokenSigner) servletContext.getAttribute(CAPTCHA_TOKEN_SIGNER_ATTRIBUTE);
+		if (signer != null) {
+			Cookie cookie = CookieUtil.readCookie(request, Constants.COOKIE_CAPTCHA_TOKEN);
+			return cookie != null && signer.verify(cookie.getValue(), answer);
+		}
+		HttpSession session = request.getSession(false);
+		if (session == null || session instanceof CookieHttpSession) {
+			return false;
+		}
+		Object expected = session.getAttribute(Constants.HTTP_SESSION_CAPTCHA_CODE);
+		session.removeAttribute(Constants.HTTP_SESSION_CAPTCHA_CODE);
+		return expected != null && answer.trim().equalsIgnoreCase(expected.toString());
+	}
+	
+	@Override
+	public void destroy() {
+		if (captchaPool != null) {
+			getServletContext().removeAttribute(CAPTCHA_POOL_ATTRIBUTE);
+			captchaPool.shutdown();
+			captchaPool = null;
+		}
+		if (tokenSigner != null) {
+			getServletContext().removeAttribute(CAPTCHA_TOKEN_SIGNER_ATTRIBUTE);
+			tokenSigner = null;
+		}
+	}
 
 	@Override
 	protected void doGet(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
-		
-		// 采用headless工作模式
-		System.setProperty("java.awt.headless", "true");
 
 	    //设置页面不缓存和返回内容格式
 	    response.setHeader("Pragma", "No-cache");
@@ -55,77 +195,27 @@ public class ImageCaptchaServlet extends HttpServlet {
 	    response.setDateHeader("Expires", 0);
 	    response.setContentType("image/jpeg");
 
-	    // 在内存中创建图象
-	    int width = 55, height = 18;
-	    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-
-	    // 获取图形上下文
-	    Graphics g = image.getGraphics();
-
-	    //生成随机类
-	    Random random = new Random();
-
-	    // 设定背景色
-	    g.setColor(new Color(255, 255, 255));
-	    g.fillRect(0, 0, width, height);
-
-	    //设定字体
-	    g.setFont(new Font("Lucida Console", Font.PLAIN, 14));
-
-	    // 随机产生155条干扰线, 使图象中的认证码不易被其它程序探测到(当然也可以将其注释掉)
-	    g.setColor(getRandColor(160, 200));
-	    for (int i = 0; i < 155; i++) {
-	        int x = random.nextInt(width);
-	        int y = random.nextInt(height);
-	        int xl = random.nextInt(12);
-	        int yl = random.nextInt(12);
-	        g.drawLine(x, y, x + xl, y + yl);
+	    // 从验证码池中取出预先生成的验证码
+	    CaptchaPool.Captcha captcha = captchaPool.take();
+
+	    if (tokenSigner != null) {
+	        // 令牌模式: 将签名的令牌写入 cookie, 不创建 session
+	        CookieUtil.addCookie(response, Constants.COOKIE_CAPTCHA_TOKEN,
+	                tokenSigner.createToken(captcha.getAnswer()), (int) (tokenSigner.getTtlMillis() / 1000));
+	    } else {
+	        HttpSession session = request.getSession();
+	        if (session instanceof CookieHttpSession) {
+	            // 答案会保存在客户端的 cookie 中, 验证码就失去了作用
+	            throw new ServletException("session mode can not be used with CookieSessionFilter, set mode to token");
+	        }
+	        // 将认证码存入SESSION
+	        session.setAttribute(Constants.HTTP_SESSION_CAPTCHA_CODE, captcha.getAnswer());
 	    }
 
-	    // 取随机产生的认证码(4位数字)
-	    String sRand = "";
-		String[] ychar = { "0", "1", "2", "3", "4", "5", "6", "7", "8", "9",
-				"A", "B", "C", "D", "E", "F", "G", "H", "I", "J", "K", "L",
-				"M", "N", "O", "P", "Q", "R", "S", "T", "U", "V", "W", "X",
-				"Y", "Z" };
-	    for (int i = 0; i < 4; i++) {
-	        String rand = ychar[random.nextInt(36)];
-	        sRand += rand;
-	        // 将认证码显示到图象中
-	        g.setColor(new Color(20 + random.nextInt(110), 20 + random.nextInt(110), 20 + random.nextInt(110)));
-	        // 调用函数出来的颜色相同，可能是因为种子太接近，所以只能直接生成
-	        g.drawString(rand, 13 * i + 6, 16);
-	    }
-
-	    // 将认证码存入SESSION
-	    request.getSession().setAttribute(Constants.HTTP_SESSION_CAPTCHA_CODE, sRand);
-
-	    // 图象生效
-	    g.dispose();
-
 	    //输出图象到页面
-	    ImageIO.write(image, "JPEG", response.getOutputStream());
-	}
-	
-	/**
-	 * 给定范围获得随机颜色
-	 * 
-	 * @param fc
-	 * @param bc
-	 * @return
-	 */
-	private Color getRandColor(int fc, int bc) {
-		Random random = new Random();
-		if (fc > 255) {
-			fc = 255;
-		}
-		if (bc > 255) {
-			bc = 255;
-		}
-		int r = fc + random.nextInt(bc - fc);
-		int g = fc + random.nextInt(bc - fc);
-		int b = fc + random.nextInt(bc - fc);
-		return new Color(r, g, b);
+	    byte[] image = captcha.getImage();
+	    response.setContentLength(image.length);
+	    response.getOutputStream().write(image);
 	}
 
 	@Override
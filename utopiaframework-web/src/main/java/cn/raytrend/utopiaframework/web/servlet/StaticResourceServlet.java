@@ -0,0 +1,561 @@
+/*
+ * StaticResourceServlet.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.web.servlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.FastDateFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 直接输出静态文件的 Servlet, 不经过 {@link cn.raytrend.utopiaframework.web.filter.GzipFilter} 和
+ * {@link cn.raytrend.utopiaframework.web.filter.ETagFilter} 等需要缓冲整个响应的 Filter. 在 web.xml 中可配置如下:
+ * 
+ * <pre>
+ * {@code
+ * <servlet>
+ *     <servlet-name>staticResource</servlet-name>
+ *     <servlet-class>cn.raytrend.utopiaframework.web.servlet.StaticResourceServlet</servlet-class>
+ *     <init-param>
+ *         <param-name>root</param-name>
+ *         <param-value>/static</param-value>
+ *     </init-param>
+ *     <init-param>
+ *         <param-name>refreshInterval</param-name>
+ *         <param-value>5</param-value>
+ *     </init-param>
+ *     <init-param>
+ *         <param-name>cacheMaxFileSize</param-name>
+ *         <param-value>16384</param-value>
+ *     </init-param>
+ *     <init-param>
+ *         <param-name>cacheMaxSize</param-name>
+ *         <param-value>16777216</param-value>
+ *     </init-param>
+ * </servlet>
+ * <servlet-mapping>
+ *     <servlet-name>staticResource</servlet-name>
+ *     <url-pattern>/static/*</url-pattern>
+ * </servlet-mapping>
+ * }
+ * </pre>
+ * 
+ * <ul>
+ *     <li>1) 文件的长度, 最后修改时间, ETag 和 Content-Type 保存在内存中的索引里, 请求时不需要访问文件系统. 后台线程每隔
+ *     refreshInterval 秒(默认 5 秒, 0 表示不检查)检查一遍索引中的文件, 文件被修改或者删除时更新索引.</li>
+ *     <li>2) 支持 If-None-Match, If-Modified-Since, 以及单个区间的 Range 和 If-Range, 多个区间时返回整个文件.</li>
+ *     <li>3) 不超过 cacheMaxFileSize 字节(默认 0, 不缓存)的文件的内容会缓存在内存中, 缓存的总大小不超过 cacheMaxSize 字节
+ *     (默认 16M). 其他文件通过 {@link FileChannel#transferTo} 输出.</li>
+ * </ul>
+ * root 必须配置, 不能是整个 web 应用的根目录, 否则 /static/index.jsp 这样的请求会输出 JSP 的源代码. 路径中含有 ".."
+ * 或者访问 WEB-INF 和 META-INF 的请求, 以及后缀名在 deniedExtensions(以 '|' 分隔, 默认为 jsp|jspx|jspf|tag|tagx|class|jar,
+ * 不区分大小写)中的文件都返回 404. 需要设置 Expires 时可以把
+ * {@link cn.raytrend.utopiaframework.web.filter.ExpiresFilter} 映射到同样的路径, 它只设置 Header, 不会缓冲响应.
+ * 
+ * @author zhouych
+ */
+@SuppressWarnings("serial")
+public class StaticResourceServlet extends HttpServlet {
+	
+	private static final Logger logger = LoggerFactory.getLogger(StaticResourceServlet.class);
+	
+	/**
+	 * 索引中最多保存多少个文件, 超过之后清空重新建立
+	 */
+	private static final int MAX_INDEX_ENTRIES = 10000;
+	
+	/**
+	 * 默认不允许输出的后缀名, 主要是服务端的源文件
+	 */
+	private static final String DEFAULT_DENIED_EXTENSIONS = "jsp|jspx|jspf|tag|tagx|class|jar";
+	
+	private static final FastDateFormat HTTP_DATE_FORMAT = FastDateFormat.getInstance(
+			"EEE, dd MMM yyyy HH:mm:ss 'GMT'", TimeZone.getTimeZone("GMT"), Locale.US);
+	
+	private File rootDir;
+	
+	private String rootPath;
+	
+	private Set<String> deniedExtensions;
+	
+	private long cacheMaxFileSize = 0;
+	
+	private long cacheMaxSize = 16 * 1024 * 1024;
+	
+	private final AtomicLong cachedSize = new AtomicLong();
+	
+	/**
+	 * 相对于 rootDir 的路径到文件元数据的索引
+	 */
+	private final ConcurrentMap<String, Resource> index = new ConcurrentHashMap<String, Resource>();
+	
+	private ScheduledExecutorService refreshExecutor;
+	
+	@Override
+	public void init() throws ServletException {
+		
+		String root = getInitParameter("root");
+		if (StringUtils.isBlank(root) || "/".equals(root.trim())) {
+			throw new ServletException("init-param root is required and must not be the web application root");
+		}
+		String realPath = getServletContext().getRealPath(root.trim());
+		if (realPath == null) {
+			throw new ServletException("cannot resolve root " + root + ", is the web application unpacked?");
+		}
+		try {
+			rootDir = new File(realPath).getCanonicalFile();
+			String webAppPath = getServletContext().getRealPath("/");
+			if (webAppPath != null && rootDir.equals(new File(webAppPath).getCanonicalFile())) {
+				throw new ServletException("root " + root + " must not be the web application root");
+			}
+		} catch (IOException e) {
+			throw new ServletException(e);
+		}
+		rootPath = rootDir.getPath() + File.separator;
+		
+		String denied = getInitParameter("deniedExtensions");
+		deniedExtensions = new HashSet<String>();
+		for (String extension : StringUtils.split(denied != null ? denied : DEFAULT_DENIED_EXTENSIONS, '|')) {
+			if (StringUtils.isNotBlank(extension)) {
+				deniedExtensions.add(extension.trim().toLowerCase(Locale.ENGLISH));
+			}
+		}
+		
+		String value = getInitParameter("cacheMaxFileSize");
+		if (StringUtils.isNotBlank(value)) {
+			cacheMaxFileSize = Long.parseLong(value.trim());
+		}
+		value = getInitParameter("cacheMaxSize");
+		if (StringUtils.isNotBlank(value)) {
+			cacheMaxSize = Long.parseLong(value.trim());
+		}
+		long refreshInterval = 5;
+		value = getInitParameter("refreshInterval");
+		if (StringUtils.isNotBlank(value)) {
+			refreshInterval = Long.parseLong(value.trim());
+		}
+		if (refreshInterval > 0) {
+			refreshExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "StaticResourceServlet-refresher");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			refreshExecutor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					refresh();
+				}
+			}, refreshInterval, refreshInterval, TimeUnit.SECONDS);
+		}
+	}
+	
+	@Override
+	public void destroy() {
+		if (refreshExecutor != null) {
+			refreshExecutor.shutdownNow();
+			refreshExecutor = null;
+		}
+		index.clear();
+		cachedSize.set(0);
+	}
+	
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		serve(request, response, true);
+	}
+	
+	@Override
+	protected void doHead(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		serve(request, response, false);
+	}
+	
+	@Override
+	protected long getLastModified(HttpServletRequest request) {
+		// 条件请求在 serve 中处理
+		return -1;
+	}
+	
+	/**
+	 * @return 缓存在内存中的文件内容的总字节数
+	 */
+	public long getCachedSize() {
+		return cachedSize.get();
+	}
+	
+	/**
+	 * @return 索引中的文件数
+	 */
+	public int getIndexSize() {
+		return index.size();
+	}
+	
+	private void serve(HttpServletRequest request, HttpServletResponse response, boolean content)
+			throws IOException {
+		
+		String path = request.getPathInfo();
+		if (path == null) {
+			path = request.getServletPath();
+		}
+		Resource resource = lookup(path);
+		if (resource == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		
+		response.setHeader("ETag", resource.etag);
+		response.setHeader("Last-Modified", resource.lastModifiedHeader);
+		response.setHeader("Accept-Ranges", "bytes");
+		if (isNotModified(request, resource)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		response.setContentType(resource.contentType);
+		
+		long start = 0;
+		long end = resource.length - 1;
+		String range = request.getHeader("Range");
+		if (range != null && isIfRangeSatisfied(request, resource)) {
+			long[] bounds = parseRange(range, resource.length);
+			if (bounds == null) {
+				response.setHeader("Content-Range", "bytes */" + resource.length);
+				response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return;
+			}
+			if (bounds.length == 2) {
+				start = bounds[0];
+				end = bounds[1];
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + resource.length);
+			}
+		}
+		long count = end - start + 1;
+		if (count <= Integer.MAX_VALUE) {
+			response.setContentLength((int) count);
+		} else {
+			response.setHeader("Content-Length", String.valueOf(count));
+		}
+		if (!content || count == 0) {
+			return;
+		}
+		
+		OutputStream output = response.getOutputStream();
+		byte[] bytes = resource.content;
+		if (bytes == null && resource.length <= cacheMaxFileSize
+				&& cachedSize.get() + resource.length <= cacheMaxSize) {
+			bytes = loadContent(path, resource);
+		}
+		if (bytes != null) {
+			output.write(bytes, (int) start, (int) count);
+			return;
+		}
+		FileInputStream input;
+		try {
+			input = new FileInputStream(resource.file);
+		} catch (IOException e) {
+			// 文件在索引刷新之前被删除
+			index.remove(resource.key);
+			throw e;
+		}
+		try {
+			FileChannel channel = input.getChannel();
+			WritableByteChannel target = Channels.newChannel(output);
+			long position = start;
+			long remaining = count;
+			while (remaining > 0) {
+				long written = channel.transferTo(position, remaining, target);
+				if (written <= 0) {
+					// 文件在输出过程中被截短
+					break;
+				}
+				position += written;
+				remaining -= written;
+			}
+		} finally {
+			input.close();
+		}
+	}
+	
+	/**
+	 * 从索引中查找文件, 不在索引中时检查文件是否存在并加入索引. 不存在或者不允许访问时返回 null.
+	 */
+	private Resource lookup(String path) {
+		if (path == null || path.length() == 0) {
+			return null;
+		}
+		Resource resource = index.get(path);
+		if (resource != null) {
+			return resource;
+		}
+		if (!isSafePath(path) || isDeniedExtension(path)) {
+			return null;
+		}
+		File file = new File(rootDir, path.replace('/', File.separatorChar));
+		try {
+			if (!file.isFile() || !file.getCanonicalPath().startsWith(rootPath)) {
+				return null;
+			}
+		} catch (IOException e) {
+			return null;
+		}
+		resource = createResource(path, file);
+		if (index.size() >= MAX_INDEX_ENTRIES) {
+			clearIndex();
+		}
+		Resource existing = index.putIfAbsent(path, resource);
+		return existing != null ? existing : resource;
+	}
+	
+	private Resource createResource(String key, File file) {
+		String contentType = getServletContext().getMimeType(file.getName());
+		return new Resource(key, file, file.length(), file.lastModified(),
+				contentType != null ? contentType : "application/octet-stream", null);
+	}
+	
+	/**
+	 * 读取文件内容并缓存, 超过 cacheMaxSize 时不缓存但仍然返回内容.
+	 */
+	private byte[] loadContent(String path, Resource resource) throws IOException {
+		byte[] bytes = new byte[(int) resource.length];
+		FileInputStream input = new FileInputStream(resource.file);
+		try {
+			int offset = 0;
+			int n;
+			while (offset < bytes.length && (n = input.read(bytes, offset, bytes.length - offset)) != -1) {
+				offset += n;
+			}
+			if (offset < bytes.length) {
+				// 文件在索引刷新之前被修改
+				index.remove(path);
+				return null;
+			}
+		} finally {
+			input.close();
+		}
+		if (cachedSize.addAndGet(bytes.length) > cacheMaxSize) {
+			cachedSize.addAndGet(-bytes.length);
+			return bytes;
+		}
+		if (!index.replace(path, resource, resource.withContent(bytes))) {
+			cachedSize.addAndGet(-bytes.length);
+		}
+		return bytes;
+	}
+	
+	/**
+	 * 检查索引中的文件是否被修改或者删除.
+	 */
+	private void refresh() {
+		try {
+			for (Map.Entry<String, Resource> entry : index.entrySet()) {
+				Resource resource = entry.getValue();
+				File file = resource.file;
+				if (!file.isFile()) {
+					if (index.remove(entry.getKey(), resource)) {
+						release(resource);
+					}
+				} else if (file.length() != resource.length || file.lastModified() != resource.lastModified) {
+					if (index.replace(entry.getKey(), resource, createResource(entry.getKey(), file))) {
+						release(resource);
+					}
+				}
+			}
+		} catch (RuntimeException e) {
+			logger.warn("cannot refresh static resource index", e);
+		}
+	}
+	
+	private void clearIndex() {
+		for (Resource resource : index.values()) {
+			if (index.remove(resource.key, resource)) {
+				release(resource);
+			}
+		}
+	}
+	
+	private void release(Resource resource) {
+		if (resource.content != null) {
+			cachedSize.addAndGet(-resource.content.length);
+		}
+	}
+	
+	private static boolean isSafePath(String path) {
+		String normalized = path.replace('\\', '/');
+		if (normalized.indexOf("/../") != -1 || normalized.endsWith("/..") || normalized.startsWith("../")
+				|| normalized.indexOf('\0') != -1) {
+			return false;
+		}
+		String upper = normalized.toUpperCase(Locale.ENGLISH);
+		return upper.indexOf("/WEB-INF") == -1 && upper.indexOf("/META-INF") == -1;
+	}
+	
+	/**
+	 * 后缀名是否被禁止访问. 忽略末尾的 '.' 和空格, 因为在 Windows 上 index.jsp. 与 index.jsp 是同一个文件.
+	 */
+	private boolean isDeniedExtension(String path) {
+		if (deniedExtensions.isEmpty()) {
+			return false;
+		}
+		int end = path.length();
+		while (end > 0 && (path.charAt(end - 1) == '.' || path.charAt(end - 1) == ' ')) {
+			end--;
+		}
+		int dot = path.lastIndexOf('.', end - 1);
+		if (dot == -1 || path.indexOf('/', dot) != -1) {
+			return false;
+		}
+		return deniedExtensions.contains(path.substring(dot + 1, end).toLowerCase(Locale.ENGLISH));
+	}
+	
+	/**
+	 * 根据 If-None-Match 和 If-Modified-Since 判断客户端的缓存是否仍然有效.
+	 */
+	private static boolean isNotModified(HttpServletRequest request, Resource resource) {
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			return "*".equals(ifNoneMatch.trim()) || ifNoneMatch.indexOf(resource.etag) != -1;
+		}
+		long ifModifiedSince;
+		try {
+			ifModifiedSince = request.getDateHeader("If-Modified-Since");
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+		return ifModifiedSince != -1 && resource.lastModified < ifModifiedSince + 1000;
+	}
+	
+	/**
+	 * If-Range 为 ETag 或者日期, 与当前文件一致时才返回区间, 否则返回整个文件.
+	 */
+	private static boolean isIfRangeSatisfied(HttpServletRequest request, Resource resource) {
+		String ifRange = request.getHeader("If-Range");
+		if (ifRange == null) {
+			return true;
+		}
+		ifRange = ifRange.trim();
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+			return ifRange.equals(resource.etag);
+		}
+		try {
+			long date = request.getDateHeader("If-Range");
+			return date != -1 && resource.lastModified / 1000 == date / 1000;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * 解析 Range, 支持 bytes=a-b, bytes=a- 和 bytes=-n 三种形式.
+	 * 
+	 * @return 单个区间时返回 [start, end], 多个区间或者无法解析时返回空数组(返回整个文件), 区间无法满足时返回 null
+	 */
+	static long[] parseRange(String range, long length) {
+		range = range.trim();
+		if (!range.startsWith("bytes=") || range.indexOf(',') != -1) {
+			return new long[0];
+		}
+		String spec = range.substring(6).trim();
+		int dash = spec.indexOf('-');
+		if (dash == -1) {
+			return new long[0];
+		}
+		String first = spec.substring(0, dash).trim();
+		String last = spec.substring(dash + 1).trim();
+		if ((first.length() > 0 && !StringUtils.isNumeric(first)) || (last.length() > 0 && !StringUtils.isNumeric(last))
+				|| first.length() + last.length() == 0 || first.length() > 18 || last.length() > 18) {
+			return new long[0];
+		}
+		long start;
+		long end;
+		if (first.length() == 0) {
+			long suffix = Long.parseLong(last);
+			if (suffix == 0) {
+				return null;
+			}
+			start = Math.max(0, length - suffix);
+			end = length - 1;
+		} else {
+			start = Long.parseLong(first);
+			end = last.length() == 0 ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+			if (last.length() > 0 && Long.parseLong(last) < start) {
+				return new long[0];
+			}
+		}
+		if (start >= length) {
+			return null;
+		}
+		return new long[] {start, end};
+	}
+	
+	/**
+	 * 索引中的文件元数据, 不可变, 文件改变时整个替换.
+	 */
+	private static final class Resource {
+		
+		private final String key;
+		
+		private final File file;
+		
+		private final long length;
+		
+		private final long lastModified;
+		
+		private final String etag;
+		
+		private final String lastModifiedHeader;
+		
+		private final String contentType;
+		
+		/**
+		 * 缓存的文件内容, 没有缓存时为 null
+		 */
+		private final byte[] content;
+		
+		Resource(String key, File file, long length, long lastModified, String contentType, byte[] content) {
+			this.key = key;
+			this.file = file;
+			this.length = length;
+			this.lastModified = lastModified;
+			this.etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+			this.lastModifiedHeader = HTTP_DATE_FORMAT.format(lastModified);
+			this.contentType = contentType;
+			this.content = content;
+		}
+		
+		Resource withContent(byte[] content) {
+			return new Resource(key, file, length, lastModified, contentType, content);
+		}
+	}
+}
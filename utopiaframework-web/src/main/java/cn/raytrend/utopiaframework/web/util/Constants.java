@@ -1,18 +1,18 @@
 package cn.raytrend.utopiaframework.web.util;
 
-import java.text.SimpleDateFormat;
+import org.apache.commons.lang3.time.FastDateFormat;
 
 public class Constants {
     
     /**
-     * 目录命名格式: yyyyMM
+     * 目录命名格式: yyyyMM, {@link FastDateFormat} 是线程安全的, 可以在多个请求中共享
      */
-    public static final SimpleDateFormat FORMATTER_DIR = new SimpleDateFormat("yyyyMM");
+    public static final FastDateFormat FORMATTER_DIR = FastDateFormat.getInstance("yyyyMM");
 
     /**
      * 文件命名格式: yyyyMMddHHmmssSSS
      */
-    public static final SimpleDateFormat FORMATTER_FILE = new SimpleDateFormat("yyyyMMddHHmmssSSS");
+    public static final FastDateFormat FORMATTER_FILE = FastDateFormat.getInstance("yyyyMMddHHmmssSSS");
     
     /**
      * 文件上传路径
@@ -23,4 +23,14 @@ public class Constants {
      * 用于 HTTP session 中保存的验证码, 见 org.mysterylab.utopiaframework.web.servlet.ImageCaptchaServlet
      */
     public final static String HTTP_SESSION_CAPTCHA_CODE = "captcha_code";
+
+    /**
+     * 无状态验证码模式下保存验证码令牌的 cookie 名, 见 cn.raytrend.utopiaframework.web.servlet.ImageCaptchaServlet
+     */
+    public final static String COOKIE_CAPTCHA_TOKEN = "captcha_token";
+
+    /**
+     * 保存 cookie session 的 cookie 名, 见 cn.raytrend.utopiaframework.web.filter.CookieSessionFilter
+     */
+    public final static String COOKIE_SESSION = "usession";
 }
@@ -8,7 +8,7 @@ package cn.raytrend.utopiaframework.web.util;
 import java.io.UnsupportedEncodingException;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -18,6 +18,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang3.StringUtils;
 
+import cn.raytrend.utopiaframework.core.orm.PropertyFilter;
 import cn.raytrend.utopiaframework.core.util.codec.EncoderUtil;
 
 /**
@@ -40,6 +41,13 @@ public class HttpUtil {
 	public static final String HEADER_TYPE_JS	= "text/javascript";
 	
 	public static final String HEADER_TYPE_EXCEL= "application/vnd.ms-excel";
+	
+	/**
+	 * 属性过滤条件参数的前缀, 参见 {@link #buildPropertyFilters(ServletRequest)}
+	 */
+	public static final String FILTER_PREFIX = "filter_";
+	
+	private static final ParameterPrefixIndex FILTER_PARAMETERS = new ParameterPrefixIndex(FILTER_PREFIX);
 
 	/**
 	 * 设置客户端缓存过期时间 的 Header.
@@ -169,7 +177,8 @@ public class HttpUtil {
 	}
 
 	/**
-	 * 取得带相同前缀的 Request Parameters. 返回的结果的 Parameter 名已去除前缀.
+	 * 取得带相同前缀的 Request Parameters. 返回的结果的 Parameter 名已去除前缀, 并按参数名排序. 同一请求需要多次获取,
+	 * 或者不需要排序时使用 {@link ParameterPrefixIndex}.
 	 * 
 	 * @param request
 	 *            客户端请求
@@ -180,28 +189,42 @@ public class HttpUtil {
 	@SuppressWarnings("unchecked")
 	public static Map<String, Object> getParametersStartsWith(ServletRequest request, String prefix) {
 		
-		// 获取参数集, 形如: [method, productid, pageid] 等
-		Enumeration<String> paramNames = request.getParameterNames();
+		// 直接遍历参数表, 不再按参数名逐个调用 getParameterValues
+		Map<String, String[]> parameterMap = request.getParameterMap();
 		Map<String, Object> params = new TreeMap<String, Object>();
+		if (parameterMap == null) {
+			return params;
+		}
 		if (prefix == null) {
 			prefix = "";
 		}
-		while (paramNames != null && paramNames.hasMoreElements()) {
-			String paramName = paramNames.nextElement();
-			if ("".equals(prefix) || paramName.startsWith(prefix)) {
-				String unprefixed = paramName.substring(prefix.length());
-				String[] values = request.getParameterValues(paramName);
+		for (Map.Entry<String, String[]> entry : parameterMap.entrySet()) {
+			String paramName = entry.getKey();
+			if (paramName.startsWith(prefix)) {
+				String[] values = entry.getValue();
 				if (values == null || values.length == 0) {
 					// do nothing
 				} else if (values.length > 1) {
-					params.put(unprefixed, values);
+					params.put(paramName.substring(prefix.length()), values);
 				} else {
-					params.put(unprefixed, values[0]);
+					params.put(paramName.substring(prefix.length()), values[0]);
 				}
 			}
 		}
 		return params;
 	}
+	
+	/**
+	 * 根据请求中以 {@link #FILTER_PREFIX} 开头的参数创建 {@link PropertyFilter} 列表, 比如参数 filter_LIKE_S_NAME=abc,
+	 * 值为空白的参数被忽略. 同一请求中多次调用时只遍历一次参数.
+	 * 
+	 * @param request
+	 *            客户端请求
+	 * @return
+	 */
+	public static List<PropertyFilter> buildPropertyFilters(ServletRequest request) {
+		return FILTER_PARAMETERS.get(request, FILTER_PREFIX).toPropertyFilters();
+	}
 
 	/**
 	 * 对 Http Basic 验证的 Header 进行编码. 这样可以增加安全性 (不推荐使用 Basic 的认证).
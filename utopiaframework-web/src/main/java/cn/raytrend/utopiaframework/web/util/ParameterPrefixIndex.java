@@ -0,0 +1,231 @@
+/*
+ * ParameterPrefixIndex.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.web.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletRequest;
+
+import org.apache.commons.lang3.StringUtils;
+
+import cn.raytrend.utopiaframework.core.orm.PropertyFilter;
+
+/**
+ * 按预先确定的前缀对请求参数建立索引. 每个请求只遍历一次参数表, 把参数按前缀分组后缓存在 request 的属性中, 之后对同一请求
+ * 的查询不再遍历参数. 与 {@link HttpUtil#getParametersStartsWith(ServletRequest, String)} 不同, 这里不会为每个参数截取
+ * 去掉前缀的参数名, 也不会排序, 只有在需要时才生成. 实例是线程安全的, 一般作为常量使用:
+ * 
+ * <pre>
+ * private static final ParameterPrefixIndex PARAMETERS = new ParameterPrefixIndex("filter_", "sort_");
+ * 
+ * List&lt;PropertyFilter&gt; filters = PARAMETERS.get(request, "filter_").toPropertyFilters();
+ * </pre>
+ * 
+ * @author zhouych
+ */
+public class ParameterPrefixIndex {
+	
+	private static final AtomicInteger COUNTER = new AtomicInteger();
+	
+	private final String[] prefixes;
+	
+	/**
+	 * 缓存每个请求的索引的属性名, 每个实例不同
+	 */
+	private final String attributeName;
+	
+	/**
+	 * @param prefixes
+	 *            需要建立索引的参数前缀, 一个参数可以同时属于多个前缀
+	 */
+	public ParameterPrefixIndex(String... prefixes) {
+		if (prefixes == null || prefixes.length == 0) {
+			throw new IllegalArgumentException("at least one prefix is required");
+		}
+		this.prefixes = new String[prefixes.length];
+		for (int i = 0; i < prefixes.length; i++) {
+			this.prefixes[i] = prefixes[i] == null ? "" : prefixes[i];
+		}
+		this.attributeName = ParameterPrefixIndex.class.getName() + "." + COUNTER.incrementAndGet();
+	}
+	
+	/**
+	 * 获取请求中带有指定前缀的参数, prefix 必须是构造时指定的前缀之一.
+	 * 
+	 * @param request
+	 *            客户端请求
+	 * @param prefix
+	 *            参数前缀
+	 * @return
+	 */
+	public Parameters get(ServletRequest request, String prefix) {
+		int index = indexOfPrefix(prefix == null ? "" : prefix);
+		if (index == -1) {
+			throw new IllegalArgumentException("prefix " + prefix + " is not indexed");
+		}
+		return getIndex(request).parameters[index];
+	}
+	
+	private int indexOfPrefix(String prefix) {
+		for (int i = 0; i < prefixes.length; i++) {
+			if (prefixes[i].equals(prefix)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * 获取缓存的索引. forward 等情况下参数表可能会改变, 所以按参数表的引用判断缓存是否有效.
+	 */
+	@SuppressWarnings("unchecked")
+	private RequestIndex getIndex(ServletRequest request) {
+		Map<String, String[]> parameterMap = request.getParameterMap();
+		Object cached = request.getAttribute(attributeName);
+		if (cached instanceof RequestIndex && ((RequestIndex) cached).parameterMap == parameterMap) {
+			return (RequestIndex) cached;
+		}
+		RequestIndex index = new RequestIndex(parameterMap);
+		request.setAttribute(attributeName, index);
+		return index;
+	}
+	
+	/**
+	 * 一个请求的参数按前缀分组的结果.
+	 */
+	private class RequestIndex {
+		
+		private final Map<String, String[]> parameterMap;
+		
+		private final Parameters[] parameters;
+		
+		RequestIndex(Map<String, String[]> parameterMap) {
+			this.parameterMap = parameterMap;
+			this.parameters = new Parameters[prefixes.length];
+			for (int i = 0; i < prefixes.length; i++) {
+				parameters[i] = new Parameters(prefixes[i]);
+			}
+			if (parameterMap == null) {
+				return;
+			}
+			for (Map.Entry<String, String[]> entry : parameterMap.entrySet()) {
+				String name = entry.getKey();
+				for (int i = 0; i < prefixes.length; i++) {
+					if (name.startsWith(prefixes[i])) {
+						parameters[i].add(entry);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 带有同一前缀的请求参数, 按下标访问, 参数的顺序为参数表的遍历顺序. 只有调用 {@link #getName(int)} 时才会截取去掉前缀
+	 * 的参数名.
+	 */
+	public static class Parameters {
+		
+		private final String prefix;
+		
+		private List<Map.Entry<String, String[]>> entries = Collections.emptyList();
+		
+		Parameters(String prefix) {
+			this.prefix = prefix;
+		}
+		
+		void add(Map.Entry<String, String[]> entry) {
+			if (entries.isEmpty()) {
+				entries = new ArrayList<Map.Entry<String, String[]>>(4);
+			}
+			entries.add(entry);
+		}
+		
+		public String getPrefix() {
+			return prefix;
+		}
+		
+		public int size() {
+			return entries.size();
+		}
+		
+		public boolean isEmpty() {
+			return entries.isEmpty();
+		}
+		
+		/**
+		 * 获取完整的参数名.
+		 */
+		public String getParameterName(int index) {
+			return entries.get(index).getKey();
+		}
+		
+		/**
+		 * 获取去掉前缀的参数名.
+		 */
+		public String getName(int index) {
+			return entries.get(index).getKey().substring(prefix.length());
+		}
+		
+		/**
+		 * 获取参数的第一个值, 没有时返回 null.
+		 */
+		public String getValue(int index) {
+			String[] values = entries.get(index).getValue();
+			return values == null || values.length == 0 ? null : values[0];
+		}
+		
+		public String[] getValues(int index) {
+			return entries.get(index).getValue();
+		}
+		
+		/**
+		 * 转换为与 {@link HttpUtil#getParametersStartsWith(ServletRequest, String)} 相同的 Map, 只有一个值的参数为
+		 * String, 多个值的参数为 String[].
+		 * 
+		 * @param sorted
+		 *            是否按参数名排序
+		 * @return
+		 */
+		public Map<String, Object> toMap(boolean sorted) {
+			Map<String, Object> params = sorted ? new TreeMap<String, Object>()
+					: new LinkedHashMap<String, Object>(entries.size() * 4 / 3 + 1);
+			for (int i = 0; i < entries.size(); i++) {
+				String[] values = entries.get(i).getValue();
+				if (values == null || values.length == 0) {
+					// do nothing
+				} else if (values.length > 1) {
+					params.put(getName(i), values);
+				} else {
+					params.put(getName(i), values[0]);
+				}
+			}
+			return params;
+		}
+		
+		/**
+		 * 把参数转换为 {@link PropertyFilter}, 参数名去掉前缀后为比较属性字符串, 比如 filter_LIKE_S_NAME, 值为空白的参数
+		 * 被忽略.
+		 * 
+		 * @return
+		 */
+		public List<PropertyFilter> toPropertyFilters() {
+			List<PropertyFilter> filters = new ArrayList<PropertyFilter>(entries.size());
+			for (int i = 0; i < entries.size(); i++) {
+				String value = getValue(i);
+				if (StringUtils.isNotBlank(value)) {
+					filters.add(new PropertyFilter(getParameterName(i), prefix.length(), value));
+				}
+			}
+			return filters;
+		}
+	}
+}
@@ -0,0 +1,327 @@
+/*
+ * ExpiresRules.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.web.util.cache;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.FastDateFormat;
+
+/**
+ * 静态资源的缓存规则, 在初始化时编译, 匹配请求路径时不分配任何对象. 支持三种规则:
+ * <ul>
+ *     <li>1) 后缀规则, 比如 ".css" 和 ".min.js", 不区分大小写, 保存在按反向字符建立的 trie 中, 从路径末尾向前匹配.</li>
+ *     <li>2) 前缀规则, 比如 "/static/", 路径不包括 context path, 区分大小写, 保存在正向的 trie 中.</li>
+ *     <li>3) 指纹规则, 匹配文件名中带有内容散列的资源, 比如 app.3f2a9c1e.js, app-3f2a9c1e.css 以及以 32 位以上的散列命名的
+ *     文件(参见 ContentAddressedStore). 散列部分至少 8 位且同时包含数字和 a-f 字母, 所以 photo_20231015.jpg 这样以日期
+ *     或编号结尾的文件名不会被当作指纹. 这些文件的内容不会改变, 所以会自动加上 immutable.</li>
+ * </ul>
+ * 匹配的优先级为: 指纹规则, 最长的前缀规则, 最长的后缀规则.
+ * <p>
+ * 每条规则的 Cache-Control 的值在创建时计算好; Expires 的值每条规则每秒最多格式化一次, 同一秒内的请求共用同一个字符串.
+ * </p>
+ * 
+ * @author zhouych
+ */
+public final class ExpiresRules {
+	
+	/**
+	 * HTTP 日期格式, 比如 Sun, 06 Nov 1994 08:49:37 GMT
+	 */
+	private static final FastDateFormat HTTP_DATE_FORMAT = FastDateFormat.getInstance(
+			"EEE, dd MMM yyyy HH:mm:ss 'GMT'", TimeZone.getTimeZone("GMT"), Locale.US);
+	
+	/**
+	 * 指纹中散列的最小长度
+	 */
+	private static final int MIN_FINGERPRINT_LENGTH = 8;
+	
+	/**
+	 * 整个文件名都是散列时散列的最小长度
+	 */
+	private static final int MIN_HASH_NAME_LENGTH = 32;
+	
+	private final Node suffixes = new Node();
+	
+	private final Node prefixes = new Node();
+	
+	private Rule fingerprintRule;
+	
+	/**
+	 * 添加后缀规则.
+	 * 
+	 * @param suffix
+	 *            比如 ".css"
+	 * @param rule
+	 */
+	public void addSuffix(String suffix, Rule rule) {
+		if (StringUtils.isEmpty(suffix)) {
+			throw new IllegalArgumentException("suffix must not be empty");
+		}
+		Node node = suffixes;
+		for (int i = suffix.length() - 1; i >= 0; i--) {
+			node = node.getOrCreate(Character.toLowerCase(suffix.charAt(i)));
+		}
+		node.rule = rule;
+	}
+	
+	/**
+	 * 添加前缀规则.
+	 * 
+	 * @param prefix
+	 *            不包括 context path 的路径前缀, 比如 "/static/"
+	 * @param rule
+	 */
+	public void addPrefix(String prefix, Rule rule) {
+		if (StringUtils.isEmpty(prefix)) {
+			throw new IllegalArgumentException("prefix must not be empty");
+		}
+		Node node = prefixes;
+		for (int i = 0; i < prefix.length(); i++) {
+			node = node.getOrCreate(prefix.charAt(i));
+		}
+		node.rule = rule;
+	}
+	
+	/**
+	 * 设置指纹规则, rule 中没有 immutable 时会自动加上.
+	 * 
+	 * @param rule
+	 */
+	public void setFingerprintRule(Rule rule) {
+		this.fingerprintRule = rule.isImmutable() ? rule : new Rule(rule.getMaxAgeSeconds(), rule.directives
+				+ ", immutable");
+	}
+	
+	/**
+	 * 查找 path 中 [start, end) 部分匹配的规则, 没有匹配时返回 null.
+	 * 
+	 * @param path
+	 * @param start
+	 *            路径开始的位置, 一般为 context path 的长度
+	 * @param end
+	 *            路径结束的位置, 一般为 ';' 的位置或者 path 的长度
+	 * @return
+	 */
+	public Rule match(CharSequence path, int start, int end) {
+		if (fingerprintRule != null && isFingerprinted(path, start, end)) {
+			return fingerprintRule;
+		}
+		Rule rule = null;
+		Node node = prefixes;
+		for (int i = start; i < end && (node = node.get(path.charAt(i))) != null;) {
+			i++;
+			if (node.rule != null) {
+				rule = node.rule;
+			}
+		}
+		if (rule != null) {
+			return rule;
+		}
+		node = suffixes;
+		for (int i = end - 1; i >= start && (node = node.get(Character.toLowerCase(path.charAt(i)))) != null;) {
+			i--;
+			if (node.rule != null) {
+				rule = node.rule;
+			}
+		}
+		return rule;
+	}
+	
+	/**
+	 * 判断文件名中是否带有内容散列, 比如 name.hash.ext, name-hash.ext 或者 hash.ext.
+	 */
+	static boolean isFingerprinted(CharSequence path, int start, int end) {
+		int nameStart = start;
+		int dot = -1;
+		for (int i = end - 1; i >= start; i--) {
+			char c = path.charAt(i);
+			if (c == '/') {
+				nameStart = i + 1;
+				break;
+			}
+			if (c == '.' && dot == -1) {
+				dot = i;
+			}
+		}
+		if (dot <= nameStart) {
+			return false;
+		}
+		int hashStart = dot;
+		boolean hasDigit = false;
+		boolean hasLetter = false;
+		while (hashStart > nameStart && isHex(path.charAt(hashStart - 1))) {
+			hashStart--;
+			if (path.charAt(hashStart) <= '9') {
+				hasDigit = true;
+			} else {
+				hasLetter = true;
+			}
+		}
+		int length = dot - hashStart;
+		// 纯数字的通常是日期或编号, 纯字母的通常是单词, 误判为指纹会让可能改变的文件被缓存一年, 所以两者都要有
+		if (!hasDigit || !hasLetter || length < MIN_FINGERPRINT_LENGTH) {
+			return false;
+		}
+		if (hashStart == nameStart) {
+			return length >= MIN_HASH_NAME_LENGTH;
+		}
+		char separator = path.charAt(hashStart - 1);
+		return separator == '.' || separator == '-' || separator == '_';
+	}
+	
+	private static boolean isHex(char c) {
+		return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+	}
+	
+	/**
+	 * 解析规则的配置, 格式为 "秒数[, 其他 Cache-Control 指令]", 比如 "86400" 或者 "31536000, public, immutable".
+	 * 格式不正确时返回 null.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public static Rule parseRule(String value) {
+		if (StringUtils.isBlank(value)) {
+			return null;
+		}
+		String[] parts = StringUtils.split(value, ',');
+		String seconds = parts[0].trim();
+		if (!StringUtils.isNumeric(seconds) || seconds.length() == 0) {
+			return null;
+		}
+		long maxAge = Long.parseLong(seconds);
+		StringBuilder directives = new StringBuilder("max-age=").append(maxAge);
+		for (int i = 1; i < parts.length; i++) {
+			String directive = parts[i].trim();
+			if (directive.length() > 0) {
+				directives.append(", ").append(directive);
+			}
+		}
+		return new Rule(maxAge, directives.toString());
+	}
+	
+	/**
+	 * 一条缓存规则, 包括预先计算好的 Cache-Control 的值.
+	 */
+	public static final class Rule {
+		
+		private final long maxAgeSeconds;
+		
+		private final String directives;
+		
+		private final boolean immutable;
+		
+		private volatile ExpiresValue expires = new ExpiresValue(-1, null);
+		
+		/**
+		 * @param maxAgeSeconds
+		 * @param directives
+		 *            完整的 Cache-Control 的值
+		 */
+		public Rule(long maxAgeSeconds, String directives) {
+			this.maxAgeSeconds = maxAgeSeconds;
+			this.directives = directives;
+			this.immutable = directives.indexOf("immutable") != -1;
+		}
+		
+		public long getMaxAgeSeconds() {
+			return maxAgeSeconds;
+		}
+		
+		/**
+		 * Cache-Control 的值.
+		 */
+		public String getCacheControl() {
+			return directives;
+		}
+		
+		public boolean isImmutable() {
+			return immutable;
+		}
+		
+		/**
+		 * 当前时间加上 maxAgeSeconds 的 HTTP 日期, 同一秒内返回同一个字符串.
+		 */
+		public String getExpires() {
+			long now = System.currentTimeMillis() / 1000;
+			ExpiresValue current = expires;
+			if (current.second != now) {
+				current = new ExpiresValue(now, HTTP_DATE_FORMAT.format((now + maxAgeSeconds) * 1000));
+				expires = current;
+			}
+			return current.value;
+		}
+		
+		/**
+		 * 设置 Cache-Control 和 Expires 的 Header.
+		 * 
+		 * @param response
+		 */
+		public void apply(HttpServletResponse response) {
+			response.setHeader("Cache-Control", directives);
+			response.setHeader("Expires", getExpires());
+		}
+		
+		@Override
+		public String toString() {
+			return directives;
+		}
+	}
+	
+	private static final class ExpiresValue {
+		
+		private final long second;
+		
+		private final String value;
+		
+		ExpiresValue(long second, String value) {
+			this.second = second;
+			this.value = value;
+		}
+	}
+	
+	/**
+	 * trie 的节点, 子节点按字符排序, 查找时二分查找.
+	 */
+	private static final class Node {
+		
+		private char[] chars = new char[0];
+		
+		private Node[] children = new Node[0];
+		
+		private Rule rule;
+		
+		Node get(char c) {
+			int index = Arrays.binarySearch(chars, c);
+			return index >= 0 ? children[index] : null;
+		}
+		
+		Node getOrCreate(char c) {
+			int index = Arrays.binarySearch(chars, c);
+			if (index >= 0) {
+				return children[index];
+			}
+			int insert = -index - 1;
+			char[] newChars = new char[chars.length + 1];
+			Node[] newChildren = new Node[children.length + 1];
+			System.arraycopy(chars, 0, newChars, 0, insert);
+			System.arraycopy(children, 0, newChildren, 0, insert);
+			System.arraycopy(chars, insert, newChars, insert + 1, chars.length - insert);
+			System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+			Node node = new Node();
+			newChars[insert] = c;
+			newChildren[insert] = node;
+			chars = newChars;
+			children = newChildren;
+			return node;
+		}
+	}
+}
@@ -0,0 +1,256 @@
+/*
+ * CaptchaPool.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.web.util.captcha;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 预先生成的图片验证码池. 后台线程不断地生成验证码图片并编码成 JPEG, 放入一个有界的队列中, 队列满了的时候后台线程阻塞等待;
+ * 处理请求时只需要从队列中取出一个验证码并输出其字节. 每个验证码只会被取出一次. 队列为空时(比如遭遇大量请求)则在当前线程中
+ * 直接生成.
+ * <p>
+ * 提供了队列深度, 生成速率, 命中与未命中次数等统计数据, 可以用于监控或者调整池的大小.
+ * </p>
+ * 
+ * @author zhouych
+ * @see cn.raytrend.utopiaframework.web.servlet.ImageCaptchaServlet
+ */
+public class CaptchaPool {
+	
+	private static final Logger logger = LoggerFactory.getLogger(CaptchaPool.class);
+	
+	private static final int WIDTH = 55;
+	
+	private static final int HEIGHT = 18;
+	
+	private static final char[] CHARS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+	
+	private static final Font FONT = new Font("Lucida Console", Font.PLAIN, 14);
+	
+	/**
+	 * 后台线程生成验证码出错后等待的毫秒数
+	 */
+	private static final long ERROR_BACKOFF_MILLIS = 1000;
+	
+	private final BlockingQueue<Captcha> queue;
+	
+	private final ExecutorService workers;
+	
+	private final long startTime = System.currentTimeMillis();
+	
+	private final AtomicLong renderedCount = new AtomicLong();
+	
+	private final AtomicLong hitCount = new AtomicLong();
+	
+	private final AtomicLong missCount = new AtomicLong();
+	
+	private final AtomicLong errorCount = new AtomicLong();
+	
+	/**
+	 * @param capacity
+	 *            池中最多保存的验证码个数
+	 * @param workerCount
+	 *            生成验证码的后台线程数
+	 */
+	public CaptchaPool(int capacity, int workerCount) {
+		if (capacity <= 0 || workerCount <= 0) {
+			throw new IllegalArgumentException("capacity and workerCount must be positive");
+		}
+		this.queue = new ArrayBlockingQueue<Captcha>(capacity);
+		this.workers = Executors.newFixedThreadPool(workerCount, new ThreadFactory() {
+			
+			private final AtomicInteger count = new AtomicInteger();
+			
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "CaptchaPool-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				// 生成验证码的优先级低于处理请求
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+		for (int i = 0; i < workerCount; i++) {
+			workers.execute(new Runnable() {
+				@Override
+				public void run() {
+					Random random = new Random();
+					try {
+						while (!Thread.currentThread().isInterrupted()) {
+							Captcha captcha;
+							try {
+								captcha = render(random);
+							} catch (RuntimeException e) {
+								// 比如字体或者 ImageIO 暂时不可用, 等待一会儿再继续生成, 期间请求线程会直接生成
+								errorCount.incrementAndGet();
+								logger.error("render captcha error, retry in " + ERROR_BACKOFF_MILLIS + "ms", e);
+								Thread.sleep(ERROR_BACKOFF_MILLIS);
+								continue;
+							}
+							queue.put(captcha);
+						}
+					} catch (InterruptedException e) {
+						// 池被关闭
+					}
+				}
+			});
+		}
+	}
+	
+	/**
+	 * 取出一个验证码, 池为空时在当前线程中生成.
+	 * 
+	 * @return
+	 */
+	public Captcha take() {
+		Captcha captcha = queue.poll();
+		if (captcha != null) {
+			hitCount.incrementAndGet();
+			return captcha;
+		}
+		missCount.incrementAndGet();
+		return render(new Random());
+	}
+	
+	/**
+	 * 停止后台线程.
+	 */
+	public void shutdown() {
+		workers.shutdownNow();
+	}
+	
+	/**
+	 * @return 池中当前的验证码个数
+	 */
+	public int getDepth() {
+		return queue.size();
+	}
+	
+	/**
+	 * @return 已经生成的验证码总数, 包括池为空时在请求线程中生成的
+	 */
+	public long getRenderedCount() {
+		return renderedCount.get();
+	}
+	
+	/**
+	 * @return 平均每秒生成的验证码个数
+	 */
+	public double getRefillRate() {
+		long elapsed = System.currentTimeMillis() - startTime;
+		return elapsed <= 0 ? 0d : renderedCount.get() * 1000d / elapsed;
+	}
+	
+	/**
+	 * @return 从池中取到验证码的次数
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+	
+	/**
+	 * @return 池为空, 在请求线程中生成验证码的次数
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+	
+	/**
+	 * @return 后台线程生成验证码出错的次数
+	 */
+	public long getErrorCount() {
+		return errorCount.get();
+	}
+	
+	/**
+	 * 生成一个 4 位的验证码图片, 并编码成 JPEG.
+	 * 
+	 * @param random
+	 * @return
+	 */
+	private Captcha render(Random random) {
+		
+		BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		Graphics g = image.getGraphics();
+		
+		// 设定背景色
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, WIDTH, HEIGHT);
+		g.setFont(FONT);
+		
+		// 随机产生155条干扰线, 使图象中的认证码不易被其它程序探测到
+		g.setColor(new Color(160 + random.nextInt(40), 160 + random.nextInt(40), 160 + random.nextInt(40)));
+		for (int i = 0; i < 155; i++) {
+			int x = random.nextInt(WIDTH);
+			int y = random.nextInt(HEIGHT);
+			int xl = random.nextInt(12);
+			int yl = random.nextInt(12);
+			g.drawLine(x, y, x + xl, y + yl);
+		}
+		
+		// 随机产生的认证码(4位)
+		char[] answer = new char[4];
+		for (int i = 0; i < answer.length; i++) {
+			answer[i] = CHARS[random.nextInt(CHARS.length)];
+			g.setColor(new Color(20 + random.nextInt(110), 20 + random.nextInt(110), 20 + random.nextInt(110)));
+			g.drawString(String.valueOf(answer[i]), 13 * i + 6, 16);
+		}
+		g.dispose();
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+		try {
+			ImageIO.write(image, "JPEG", out);
+		} catch (IOException e) {
+			throw new RuntimeException("Unexpected Checked Exception.", e);
+		}
+		renderedCount.incrementAndGet();
+		return new Captcha(new String(answer), out.toByteArray());
+	}
+	
+	/**
+	 * 一个已经生成的验证码, 包括答案和 JPEG 图片.
+	 */
+	public static final class Captcha {
+		
+		private final String answer;
+		
+		private final byte[] image;
+		
+		Captcha(String answer, byte[] image) {
+			this.answer = answer;
+			this.image = image;
+		}
+		
+		public String getAnswer() {
+			return answer;
+		}
+		
+		/**
+		 * @return JPEG 编码的图片, 不要修改其内容
+		 */
+		public byte[] getImage() {
+			return image;
+		}
+	}
+}
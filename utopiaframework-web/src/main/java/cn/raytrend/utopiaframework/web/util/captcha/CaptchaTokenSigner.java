@@ -0,0 +1,207 @@
+/*
+ * CaptchaTokenSigner.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.web.util.captcha;
+
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import cn.raytrend.utopiaframework.core.util.codec.EncoderUtil;
+import cn.raytrend.utopiaframework.core.util.codec.EncryptUtil;
+
+/**
+ * 无状态的验证码令牌, 用于代替将验证码答案保存在 HttpSession 中. 令牌中不包含答案本身, 只包含过期时间, 一个随机数以及两个
+ * HMAC-SHA256 签名(各取前 16 字节), 经过 URL 安全的 Base64 编码后可以放在 cookie 或者表单的隐藏域中:
+ * <pre>
+ * 过期时间(8 字节, 毫秒) || 随机数(8 字节) || HMAC(过期时间 || 随机数) || HMAC(过期时间 || 随机数 || 答案)
+ * </pre>
+ * 校验时先用第一个签名确认令牌是本服务签发的, 然后将令牌的随机数记入防重放过滤器, 所以每个令牌只能校验一次, 无论答案是否
+ * 正确, 防止对同一个令牌反复猜测答案; 最后检查过期时间和答案的签名. 签名的比较耗时与内容无关.
+ * <p>
+ * 防重放过滤器只保存在内存中, 由两代集合组成, 每隔一个有效期轮换一次, 所以只需要保存最近两个有效期内使用过的随机数. 集群中
+ * 的多个节点需要使用相同的密钥, 并且各自的过滤器互不相通, 同一个令牌最多可以在每个节点上各使用一次.
+ * </p>
+ * 
+ * @author zhouych
+ * @see cn.raytrend.utopiaframework.web.servlet.ImageCaptchaServlet
+ */
+public class CaptchaTokenSigner {
+	
+	private static final int TIME_LENGTH = 8;
+	
+	private static final int NONCE_LENGTH = 8;
+	
+	private static final int MAC_LENGTH = 16;
+	
+	private static final int TOKEN_LENGTH = TIME_LENGTH + NONCE_LENGTH + MAC_LENGTH * 2;
+	
+	private static final SecureRandom RANDOM = new SecureRandom();
+	
+	private static final ThreadLocal<Mac> MAC = new ThreadLocal<Mac>() {
+		@Override
+		protected Mac initialValue() {
+			try {
+				return Mac.getInstance(EncryptUtil.HMAC_SHA256);
+			} catch (GeneralSecurityException e) {
+				throw new RuntimeException("Unexpected Checked Exception.", e);
+			}
+		}
+	};
+	
+	private final SecretKeySpec key;
+	
+	private final long ttlMillis;
+	
+	private volatile ConcurrentMap<Long, Boolean> currentNonces = new ConcurrentHashMap<Long, Boolean>();
+	
+	private volatile ConcurrentMap<Long, Boolean> previousNonces = new ConcurrentHashMap<Long, Boolean>();
+	
+	private volatile long rotateTime;
+	
+	/**
+	 * @param secret
+	 *            签名的密钥, 至少 16 字节
+	 * @param ttlMillis
+	 *            令牌的有效期, 以毫秒为单位
+	 */
+	public CaptchaTokenSigner(byte[] secret, long ttlMillis) {
+		if (secret == null || secret.length < 16) {
+			throw new IllegalArgumentException("secret must be at least 16 bytes");
+		}
+		if (ttlMillis <= 0) {
+			throw new IllegalArgumentException("ttlMillis must be positive");
+		}
+		this.key = new SecretKeySpec(secret, EncryptUtil.HMAC_SHA256);
+		this.ttlMillis = ttlMillis;
+		this.rotateTime = System.currentTimeMillis() + ttlMillis;
+	}
+	
+	/**
+	 * 为答案签发一个令牌.
+	 * 
+	 * @param answer
+	 * @return
+	 */
+	public String createToken(String answer) {
+		byte[] token = new byte[TOKEN_LENGTH];
+		long expires = System.currentTimeMillis() + ttlMillis;
+		for (int i = 0; i < TIME_LENGTH; i++) {
+			token[i] = (byte) (expires >>> (56 - i * 8));
+		}
+		byte[] nonce = new byte[NONCE_LENGTH];
+		RANDOM.nextBytes(nonce);
+		System.arraycopy(nonce, 0, token, TIME_LENGTH, NONCE_LENGTH);
+		Mac mac = MAC.get();
+		sign(mac, token, null, token, TIME_LENGTH + NONCE_LENGTH);
+		sign(mac, token, normalize(answer), token, TIME_LENGTH + NONCE_LENGTH + MAC_LENGTH);
+		return EncoderUtil.base64UrlSafeEncode(token);
+	}
+	
+	/**
+	 * 校验令牌和用户输入的答案, 答案不区分大小写. 每个令牌只能校验一次.
+	 * 
+	 * @param token
+	 * @param answer
+	 * @return
+	 */
+	public boolean verify(String token, String answer) {
+		if (token == null || answer == null) {
+			return false;
+		}
+		byte[] bytes = EncoderUtil.base64Decode(token);
+		if (bytes == null || bytes.length != TOKEN_LENGTH) {
+			return false;
+		}
+		Mac mac = MAC.get();
+		byte[] expected = new byte[TOKEN_LENGTH];
+		sign(mac, bytes, null, expected, TIME_LENGTH + NONCE_LENGTH);
+		if (!equals(expected, bytes, TIME_LENGTH + NONCE_LENGTH)) {
+			return false;
+		}
+		long expires = 0L;
+		for (int i = 0; i < TIME_LENGTH; i++) {
+			expires = (expires << 8) | (bytes[i] & 0xff);
+		}
+		long now = System.currentTimeMillis();
+		if (now > expires || !markUsed(readNonce(bytes), now)) {
+			return false;
+		}
+		sign(mac, bytes, normalize(answer), expected, TIME_LENGTH + NONCE_LENGTH + MAC_LENGTH);
+		return equals(expected, bytes, TIME_LENGTH + NONCE_LENGTH + MAC_LENGTH);
+	}
+	
+	/**
+	 * @return 令牌的有效期, 以毫秒为单位
+	 */
+	public long getTtlMillis() {
+		return ttlMillis;
+	}
+	
+	/**
+	 * 对令牌的过期时间和随机数(以及答案)签名, 写入 output 的 offset 处.
+	 */
+	private void sign(Mac mac, byte[] token, byte[] answer, byte[] output, int offset) {
+		try {
+			mac.init(key);
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException("Unexpected Checked Exception.", e);
+		}
+		mac.update(token, 0, TIME_LENGTH + NONCE_LENGTH);
+		if (answer != null) {
+			mac.update(answer);
+		}
+		System.arraycopy(mac.doFinal(), 0, output, offset, MAC_LENGTH);
+	}
+	
+	/**
+	 * 记录使用过的随机数, 已经使用过则返回 false.
+	 */
+	private boolean markUsed(Long nonce, long now) {
+		if (now >= rotateTime) {
+			synchronized (this) {
+				if (now >= rotateTime) {
+					previousNonces = currentNonces;
+					currentNonces = new ConcurrentHashMap<Long, Boolean>();
+					rotateTime = now + ttlMillis;
+				}
+			}
+		}
+		return !previousNonces.containsKey(nonce) && currentNonces.putIfAbsent(nonce, Boolean.TRUE) == null;
+	}
+	
+	private static Long readNonce(byte[] token) {
+		long nonce = 0L;
+		for (int i = TIME_LENGTH; i < TIME_LENGTH + NONCE_LENGTH; i++) {
+			nonce = (nonce << 8) | (token[i] & 0xff);
+		}
+		return Long.valueOf(nonce);
+	}
+	
+	private static byte[] normalize(String answer) {
+		try {
+			return answer.trim().toUpperCase(Locale.ENGLISH).getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException("Unexpected Checked Exception.", e);
+		}
+	}
+	
+	/**
+	 * 比较两个数组中 offset 开始的 {@link #MAC_LENGTH} 个字节, 耗时与内容无关.
+	 */
+	private static boolean equals(byte[] a, byte[] b, int offset) {
+		int diff = 0;
+		for (int i = offset; i < offset + MAC_LENGTH; i++) {
+			diff |= a[i] ^ b[i];
+		}
+		return diff == 0;
+	}
+}
@@ -7,7 +7,10 @@ package cn.raytrend.utopiaframework.web.util.codec;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
 
 /**
  * 提供各种压缩和解压缩方法的工具类, 比如 zip, gzip 等.
@@ -44,4 +47,69 @@ public class CompressUtil {
 		}
 		return output.toByteArray();
 	}
+	
+	/**
+	 * 采用不带 zlib 头和校验和的 Deflate 格式压缩数据, 比 GZip 少 18 个字节的开销, 适合压缩 cookie 之类的小数据.
+	 * 
+	 * @param data
+	 *            待压缩的字节数组数据
+	 * @return
+	 * @see #inflate(byte[], int)
+	 */
+	public static byte[] deflate(byte[] data) {
+		
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 2 + 16);
+			byte[] buffer = new byte[Math.min(Math.max(data.length, 64), 8192)];
+			while (!deflater.finished()) {
+				int n = deflater.deflate(buffer);
+				output.write(buffer, 0, n);
+			}
+			return output.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+	
+	/**
+	 * 解压 {@link #deflate(byte[])} 压缩的数据.
+	 * 
+	 * @param data
+	 *            压缩后的数据
+	 * @param maxLength
+	 *            解压后的最大字节数, 防止压缩炸弹
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             数据不完整或者格式错误, 以及解压后超过 maxLength
+	 */
+	public static byte[] inflate(byte[] data, int maxLength) {
+		
+		Inflater inflater = new Inflater(true);
+		try {
+			// nowrap 模式下需要在末尾多提供一个字节
+			byte[] input = new byte[data.length + 1];
+			System.arraycopy(data, 0, input, 0, data.length);
+			inflater.setInput(input);
+			ByteArrayOutputStream output = new ByteArrayOutputStream(data.length * 2);
+			byte[] buffer = new byte[Math.min(Math.max(data.length * 2, 64), 8192)];
+			while (!inflater.finished()) {
+				int n = inflater.inflate(buffer);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IllegalArgumentException("truncated deflate data");
+				}
+				if (output.size() + n > maxLength) {
+					throw new IllegalArgumentException("inflated data exceeds " + maxLength + " bytes");
+				}
+				output.write(buffer, 0, n);
+			}
+			return output.toByteArray();
+		} catch (DataFormatException e) {
+			throw new IllegalArgumentException("corrupt deflate data", e);
+		} finally {
+			inflater.end();
+		}
+	}
 }
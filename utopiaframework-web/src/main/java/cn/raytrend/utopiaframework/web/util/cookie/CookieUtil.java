@@ -5,7 +5,9 @@
  */
 package cn.raytrend.utopiaframework.web.util.cookie;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import javax.servlet.http.Cookie;
@@ -14,6 +16,11 @@ import javax.servlet.http.HttpServletResponse;
 
 /**
  * 读写客户端 cookie 的工具类.
+ * <p>
+ * cookie 的数量不超过 {@link #LINEAR_SCAN_THRESHOLD} 时直接遍历 {@link HttpServletRequest#getCookies()}, 不创建任何对象;
+ * 更多的时候第一次读取会建立一个按名称索引的 Map 并保存在 request 的属性中, 同一个请求之后的读取直接使用. 同名的 cookie
+ * 以最后一个为准. 需要读写多个 cookie 时可以使用 {@link #readCookies}, {@link #addCookies} 和 {@link #deleteCookies}.
+ * </p>
  * 
  * @author zhouych
  */
@@ -23,6 +30,16 @@ public class CookieUtil {
 	 * 注意, 如果要操作同一个 cookie, 除了名称一致外, 还需要保持 path 一致
 	 */
 	public static final String DEFAULT_COOKIE_PATH = "/";
+	
+	/**
+	 * cookie 数量不超过这个值时直接遍历查找
+	 */
+	public static final int LINEAR_SCAN_THRESHOLD = 8;
+	
+	/**
+	 * 保存 cookie 索引的 request 属性名
+	 */
+	private static final String COOKIE_INDEX_ATTRIBUTE = CookieUtil.class.getName() + ".INDEX";
 
 	/**
 	 * 往客户端添加一个 cookie.
@@ -46,6 +63,23 @@ public class CookieUtil {
 		response.addCookie(cookie);
 	}
 	
+	/**
+	 * 往客户端添加多个 cookie.
+	 * 
+	 * @param response
+	 *            服务端响应
+	 * @param cookies
+	 *            cookie 名称到值的 Map
+	 * @param cookieMaxAage
+	 *            cookie 的最大过期时间, 设置为 -1 表示随着浏览器关闭而删除
+	 */
+	public static void addCookies(HttpServletResponse response, Map<String, String> cookies, int cookieMaxAage) {
+		
+		for (Map.Entry<String, String> entry : cookies.entrySet()) {
+			addCookie(response, entry.getKey(), entry.getValue(), cookieMaxAage);
+		}
+	}
+	
 	/**
 	 * 修改 cookie 的值.
 	 * 
@@ -108,6 +142,28 @@ public class CookieUtil {
 		return false;
 	}
 	
+	/**
+	 * 删除客户端的多个 cookie, 只读取一次请求中的 cookie.
+	 * 
+	 * @param request
+	 * @param response
+	 * @param cookieNames
+	 *            被删除的 cookie 的名称
+	 * @return 实际删除的 cookie 数量
+	 */
+	public static int deleteCookies(HttpServletRequest request, HttpServletResponse response, String... cookieNames) {
+		
+		int count = 0;
+		for (Cookie cookie : readCookies(request, cookieNames).values()) {
+			cookie.setPath(DEFAULT_COOKIE_PATH);
+			cookie.setMaxAge(0);
+			cookie.setValue("");
+			response.addCookie(cookie);
+			count++;
+		}
+		return count;
+	}
+	
 	/**
 	 * 从客户端读取一个 cookie, 读取失败则返回 null.
 	 * 
@@ -119,28 +175,101 @@ public class CookieUtil {
 	 */
 	public static Cookie readCookie(HttpServletRequest request, String cookieName) {
 		
-		Map<String, Cookie> cookieMap = setCookiesToMap(request);
-		if (cookieMap.containsKey(cookieName)) {
-			return cookieMap.get(cookieName);
+		Cookie[] cookies = request.getCookies();
+		if (cookies == null || cookieName == null) {
+			return null;
 		}
-		return null;
+		if (cookies.length <= LINEAR_SCAN_THRESHOLD) {
+			// 从后往前找, 与 Map 中同名的 cookie 以最后一个为准保持一致
+			for (int i = cookies.length - 1; i >= 0; i--) {
+				if (cookieName.equals(cookies[i].getName())) {
+					return cookies[i];
+				}
+			}
+			return null;
+		}
+		return getCookieIndex(request, cookies).get(cookieName);
 	}
 	
 	/**
-	 * 将客户端的所有的 cookie 封装到一个 Map 当中.
+	 * 从客户端读取多个 cookie, 只读取一次请求中的 cookie.
 	 * 
 	 * @param request
-	 * @return
+	 *            客户端请求
+	 * @param cookieNames
+	 *            cookie 名称
+	 * @return cookie 名称到 cookie 的 Map, 按 cookieNames 的顺序, 不包括不存在的 cookie
 	 */
-	private static Map<String, Cookie> setCookiesToMap(HttpServletRequest request) {
+	public static Map<String, Cookie> readCookies(HttpServletRequest request, String... cookieNames) {
 		
-		Map<String, Cookie> cookieMap = new HashMap<String, Cookie>();
-		Cookie[] cookies = request.getCookies();
-		if (cookies != null) {
-			for (Cookie cookie : cookies) {
-				cookieMap.put(cookie.getName(), cookie);
+		Map<String, Cookie> cookieIndex = getCookieMap(request);
+		Map<String, Cookie> result = new LinkedHashMap<String, Cookie>(cookieNames.length * 2);
+		for (String cookieName : cookieNames) {
+			Cookie cookie = cookieIndex.get(cookieName);
+			if (cookie != null) {
+				result.put(cookieName, cookie);
 			}
 		}
-		return cookieMap;
+		return result;
+	}
+	
+	/**
+	 * 获取客户端的所有 cookie, 同一个请求中只建立一次.
+	 * 
+	 * @param request
+	 *            客户端请求
+	 * @return 只读的 cookie 名称到 cookie 的 Map
+	 */
+	public static Map<String, Cookie> getCookieMap(HttpServletRequest request) {
+		
+		Cookie[] cookies = request.getCookies();
+		if (cookies == null || cookies.length == 0) {
+			return Collections.emptyMap();
+		}
+		return getCookieIndex(request, cookies);
+	}
+	
+	/**
+	 * 获取保存在 request 属性中的 cookie 索引, 不存在或者 request 的 cookie 数组已经改变时重新建立.
+	 */
+	private static Map<String, Cookie> getCookieIndex(HttpServletRequest request, Cookie[] cookies) {
+		
+		Object attribute = request.getAttribute(COOKIE_INDEX_ATTRIBUTE);
+		if (attribute instanceof CookieIndex && ((CookieIndex) attribute).source == cookies) {
+			return ((CookieIndex) attribute).cookieMap;
+		}
+		CookieIndex index = new CookieIndex(cookies, setCookiesToMap(cookies));
+		request.setAttribute(COOKIE_INDEX_ATTRIBUTE, index);
+		return index.cookieMap;
+	}
+	
+	/**
+	 * 将客户端的所有的 cookie 封装到一个 Map 当中.
+	 * 
+	 * @param cookies
+	 * @return
+	 */
+	private static Map<String, Cookie> setCookiesToMap(Cookie[] cookies) {
+		
+		Map<String, Cookie> cookieMap = new HashMap<String, Cookie>(cookies.length * 2);
+		for (Cookie cookie : cookies) {
+			cookieMap.put(cookie.getName(), cookie);
+		}
+		return Collections.unmodifiableMap(cookieMap);
+	}
+	
+	/**
+	 * 保存在 request 属性中的 cookie 索引, 记录建立索引时的 cookie 数组.
+	 */
+	private static final class CookieIndex {
+		
+		private final Cookie[] source;
+		
+		private final Map<String, Cookie> cookieMap;
+		
+		CookieIndex(Cookie[] source, Map<String, Cookie> cookieMap) {
+			this.source = source;
+			this.cookieMap = cookieMap;
+		}
 	}
 }
@@ -0,0 +1,260 @@
+/*
+ * CookieHttpSession.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.web.util.session;
+
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
+
+import cn.raytrend.utopiaframework.core.util.codec.EncoderUtil;
+
+/**
+ * 保存在 cookie 中的 {@link HttpSession}, 服务端不保存任何状态. 只有调用了 setAttribute, removeAttribute,
+ * setMaxInactiveInterval 或者 invalidate 之后才会在响应中重新写入 cookie, 所以修改了通过 getAttribute 取出的可变对象之后需要
+ * 再调用一次 setAttribute. 属性值只能是 {@link CookieSessionCodec#isSupportedValue(Object)} 支持的类型, 其他类型在
+ * setAttribute 时就抛出 {@link IllegalArgumentException}.
+ * 
+ * @author zhouych
+ * @see CookieSessionCodec
+ */
+@SuppressWarnings("deprecation")
+public class CookieHttpSession implements HttpSession {
+	
+	private static final SecureRandom RANDOM = new SecureRandom();
+	
+	private static final int ID_LENGTH = 12;
+	
+	private final ServletContext servletContext;
+	
+	private String id;
+	
+	private long creationTime;
+	
+	/**
+	 * 上次写入 cookie 的时间
+	 */
+	private long lastAccessedTime;
+	
+	private int maxInactiveInterval;
+	
+	private Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+	
+	private boolean isNew;
+	
+	private boolean dirty;
+	
+	private boolean invalidated;
+	
+	CookieHttpSession(ServletContext servletContext, int maxInactiveInterval) {
+		this.servletContext = servletContext;
+		this.maxInactiveInterval = maxInactiveInterval;
+	}
+	
+	/**
+	 * 初始化为一个新的 session.
+	 */
+	void create() {
+		byte[] bytes = new byte[ID_LENGTH];
+		RANDOM.nextBytes(bytes);
+		this.id = EncoderUtil.base64UrlSafeEncode(bytes);
+		this.creationTime = System.currentTimeMillis();
+		this.lastAccessedTime = creationTime;
+		this.attributes = new LinkedHashMap<String, Object>();
+		this.isNew = true;
+		this.dirty = true;
+		this.invalidated = false;
+	}
+	
+	/**
+	 * 从 cookie 中恢复.
+	 */
+	void restore(String id, long creationTime, long lastAccessedTime, int maxInactiveInterval,
+			Map<String, Object> attributes) {
+		this.id = id;
+		this.creationTime = creationTime;
+		this.lastAccessedTime = lastAccessedTime;
+		this.maxInactiveInterval = maxInactiveInterval;
+		this.attributes = attributes;
+	}
+	
+	/**
+	 * 是否已经超过最大不活动时间.
+	 */
+	boolean isExpired(long now) {
+		return maxInactiveInterval > 0 && now - lastAccessedTime > maxInactiveInterval * 1000L;
+	}
+	
+	boolean isDirty() {
+		return dirty;
+	}
+	
+	boolean isInvalidated() {
+		return invalidated;
+	}
+	
+	/**
+	 * 写入 cookie 之后调用.
+	 */
+	void markSaved(long now) {
+		lastAccessedTime = now;
+		dirty = false;
+	}
+	
+	synchronized Map<String, Object> getAttributeMap() {
+		return new LinkedHashMap<String, Object>(attributes);
+	}
+	
+	@Override
+	public long getCreationTime() {
+		checkValid();
+		return creationTime;
+	}
+	
+	@Override
+	public String getId() {
+		return id;
+	}
+	
+	@Override
+	public long getLastAccessedTime() {
+		checkValid();
+		return lastAccessedTime;
+	}
+	
+	@Override
+	public ServletContext getServletContext() {
+		return servletContext;
+	}
+	
+	@Override
+	public synchronized void setMaxInactiveInterval(int interval) {
+		if (interval != maxInactiveInterval) {
+			maxInactiveInterval = interval;
+			dirty = true;
+		}
+	}
+	
+	@Override
+	public int getMaxInactiveInterval() {
+		return maxInactiveInterval;
+	}
+	
+	@Override
+	public javax.servlet.http.HttpSessionContext getSessionContext() {
+		return null;
+	}
+	
+	@Override
+	public synchronized Object getAttribute(String name) {
+		checkValid();
+		return attributes.get(name);
+	}
+	
+	@Override
+	public Object getValue(String name) {
+		return getAttribute(name);
+	}
+	
+	@Override
+	public synchronized Enumeration<String> getAttributeNames() {
+		checkValid();
+		return Collections.enumeration(new LinkedHashMap<String, Object>(attributes).keySet());
+	}
+	
+	@Override
+	public synchronized String[] getValueNames() {
+		checkValid();
+		return attributes.keySet().toArray(new String[attributes.size()]);
+	}
+	
+	@Override
+	public void setAttribute(String name, Object value) {
+		if (value == null) {
+			removeAttribute(name);
+			return;
+		}
+		if (!CookieSessionCodec.isSupportedValue(value)) {
+			throw new IllegalArgumentException(value.getClass().getName() + " can not be stored in a cookie session");
+		}
+		Object old;
+		synchronized (this) {
+			checkValid();
+			old = attributes.put(name, value);
+			dirty = true;
+		}
+		if (old != value) {
+			if (value instanceof HttpSessionBindingListener) {
+				((HttpSessionBindingListener) value).valueBound(new HttpSessionBindingEvent(this, name, value));
+			}
+			if (old instanceof HttpSessionBindingListener) {
+				((HttpSessionBindingListener) old).valueUnbound(new HttpSessionBindingEvent(this, name, old));
+			}
+		}
+	}
+	
+	@Override
+	public void putValue(String name, Object value) {
+		setAttribute(name, value);
+	}
+	
+	@Override
+	public void removeAttribute(String name) {
+		Object old;
+		synchronized (this) {
+			checkValid();
+			if (!attributes.containsKey(name)) {
+				return;
+			}
+			old = attributes.remove(name);
+			dirty = true;
+		}
+		if (old instanceof HttpSessionBindingListener) {
+			((HttpSessionBindingListener) old).valueUnbound(new HttpSessionBindingEvent(this, name, old));
+		}
+	}
+	
+	@Override
+	public void removeValue(String name) {
+		removeAttribute(name);
+	}
+	
+	@Override
+	public void invalidate() {
+		Map<String, Object> old;
+		synchronized (this) {
+			checkValid();
+			invalidated = true;
+			dirty = true;
+			old = attributes;
+			attributes = new LinkedHashMap<String, Object>();
+		}
+		for (Map.Entry<String, Object> entry : old.entrySet()) {
+			if (entry.getValue() instanceof HttpSessionBindingListener) {
+				((HttpSessionBindingListener) entry.getValue()).valueUnbound(new HttpSessionBindingEvent(this,
+						entry.getKey(), entry.getValue()));
+			}
+		}
+	}
+	
+	@Override
+	public boolean isNew() {
+		checkValid();
+		return isNew;
+	}
+	
+	private void checkValid() {
+		if (invalidated) {
+			throw new IllegalStateException("session has been invalidated");
+		}
+	}
+}
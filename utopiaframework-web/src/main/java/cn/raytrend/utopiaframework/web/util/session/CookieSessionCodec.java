@@ -0,0 +1,359 @@
+/*
+ * CookieSessionCodec.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.web.util.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import cn.raytrend.utopiaframework.core.util.codec.EncoderUtil;
+import cn.raytrend.utopiaframework.core.util.codec.EncryptUtil;
+import cn.raytrend.utopiaframework.web.util.codec.CompressUtil;
+
+/**
+ * 将 {@link CookieHttpSession} 编码为 cookie 值的编解码器. 编码后的格式为:
+ * <pre>
+ * 版本(1 字节) || 标志(1 字节) || 密钥 id(1 字节) || 内容 || HMAC-SHA256(前面所有字节) 的前 16 字节
+ * </pre>
+ * 再经过 URL 安全的 Base64 编码. 内容为紧凑的二进制格式: session id, 创建时间, 签发时间, 最大不活动时间, 以及各个属性.
+ * 整数使用变长编码, 属性值按类型编码, 只支持 String, Integer, Long, Boolean, Double 和 byte[], 不使用 Java 序列化, 这样即使
+ * 签名密钥泄露, 伪造的 cookie 也不能在服务端实例化任意的类. 内容超过 compressThreshold 字节且压缩后更短时使用
+ * {@link CompressUtil#deflate} 压缩.
+ * <p>
+ * 签名使用 id 为 activeKeyId 的密钥; 通过 {@link #addKey(int, byte[])} 添加的其他密钥只用于校验, 轮换密钥时先在所有节点上
+ * 添加新密钥, 再把新密钥设为 activeKeyId, 旧密钥签发的 cookie 过期后再删除旧密钥. 签名校验通过之后才会解析内容.
+ * </p>
+ * 注意内容只是签名而没有加密, 客户端可以看到属性值, 不要在其中保存敏感的数据.
+ * 
+ * @author zhouych
+ * @see CookieHttpSession
+ */
+public class CookieSessionCodec {
+	
+	private static final int VERSION = 1;
+	
+	private static final int FLAG_DEFLATED = 1;
+	
+	private static final int HEADER_LENGTH = 3;
+	
+	private static final int MAC_LENGTH = 16;
+	
+	/**
+	 * 解压后内容的最大字节数
+	 */
+	private static final int MAX_CONTENT_LENGTH = 64 * 1024;
+	
+	private static final int TYPE_NULL = 0;
+	
+	private static final int TYPE_STRING = 1;
+	
+	private static final int TYPE_INTEGER = 2;
+	
+	private static final int TYPE_LONG = 3;
+	
+	private static final int TYPE_TRUE = 4;
+	
+	private static final int TYPE_FALSE = 5;
+	
+	private static final int TYPE_DOUBLE = 6;
+	
+	private static final int TYPE_BYTES = 7;
+	
+	private static final ThreadLocal<Mac> MAC = new ThreadLocal<Mac>() {
+		@Override
+		protected Mac initialValue() {
+			try {
+				return Mac.getInstance(EncryptUtil.HMAC_SHA256);
+			} catch (GeneralSecurityException e) {
+				throw new RuntimeException("Unexpected Checked Exception.", e);
+			}
+		}
+	};
+	
+	private final SecretKeySpec[] keys = new SecretKeySpec[256];
+	
+	private final int activeKeyId;
+	
+	private final int compressThreshold;
+	
+	/**
+	 * @param activeKeyId
+	 *            签名使用的密钥的 id, 0 到 255
+	 * @param activeKey
+	 *            签名使用的密钥, 至少 16 字节
+	 * @param compressThreshold
+	 *            内容超过多少字节时尝试压缩, 小于 0 表示不压缩
+	 */
+	public CookieSessionCodec(int activeKeyId, byte[] activeKey, int compressThreshold) {
+		addKey(activeKeyId, activeKey);
+		this.activeKeyId = activeKeyId;
+		this.compressThreshold = compressThreshold;
+	}
+	
+	/**
+	 * 添加一个只用于校验的密钥.
+	 * 
+	 * @param keyId
+	 *            0 到 255
+	 * @param key
+	 *            至少 16 字节
+	 */
+	public void addKey(int keyId, byte[] key) {
+		if (keyId < 0 || keyId > 255) {
+			throw new IllegalArgumentException("keyId must be between 0 and 255");
+		}
+		if (key == null || key.length < 16) {
+			throw new IllegalArgumentException("key must be at least 16 bytes");
+		}
+		keys[keyId] = new SecretKeySpec(key, EncryptUtil.HMAC_SHA256);
+	}
+	
+	/**
+	 * 编码 session.
+	 * 
+	 * @param session
+	 * @return URL 安全的 Base64 字符串
+	 * @throws IllegalArgumentException
+	 *             属性值的类型不支持
+	 */
+	public String encode(CookieHttpSession session) {
+		byte[] content;
+		try {
+			content = writeContent(session);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("cannot encode session attributes", e);
+		}
+		int flags = 0;
+		if (compressThreshold >= 0 && content.length > compressThreshold) {
+			byte[] deflated = CompressUtil.deflate(content);
+			if (deflated.length < content.length) {
+				content = deflated;
+				flags |= FLAG_DEFLATED;
+			}
+		}
+		byte[] token = new byte[HEADER_LENGTH + content.length + MAC_LENGTH];
+		token[0] = VERSION;
+		token[1] = (byte) flags;
+		token[2] = (byte) activeKeyId;
+		System.arraycopy(content, 0, token, HEADER_LENGTH, content.length);
+		byte[] mac = sign(keys[activeKeyId], token, HEADER_LENGTH + content.length);
+		System.arraycopy(mac, 0, token, HEADER_LENGTH + content.length, MAC_LENGTH);
+		return EncoderUtil.base64UrlSafeEncode(token);
+	}
+	
+	/**
+	 * 解码 cookie 的值, 格式错误, 签名不正确或者密钥未知时返回 null. 不检查是否过期.
+	 * 
+	 * @param value
+	 * @param session
+	 *            解码的结果写入这个 session
+	 * @return 是否解码成功
+	 */
+	public boolean decode(String value, CookieHttpSession session) {
+		if (value == null || value.length() == 0) {
+			return false;
+		}
+		byte[] token = EncoderUtil.base64Decode(value);
+		if (token.length < HEADER_LENGTH + MAC_LENGTH || token[0] != VERSION) {
+			return false;
+		}
+		SecretKeySpec key = keys[token[2] & 0xff];
+		if (key == null) {
+			return false;
+		}
+		int signedLength = token.length - MAC_LENGTH;
+		if (!equals(sign(key, token, signedLength), token, signedLength)) {
+			return false;
+		}
+		byte[] content = new byte[signedLength - HEADER_LENGTH];
+		System.arraycopy(token, HEADER_LENGTH, content, 0, content.length);
+		try {
+			if ((token[1] & FLAG_DEFLATED) != 0) {
+				content = CompressUtil.inflate(content, MAX_CONTENT_LENGTH);
+			}
+			readContent(content, session);
+			return true;
+		} catch (IOException e) {
+			return false;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * 判断属性值的类型是否可以保存在 cookie 中, 只支持 null, String, Integer, Long, Boolean, Double 和 byte[].
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public static boolean isSupportedValue(Object value) {
+		return value == null || value instanceof String || value instanceof Integer || value instanceof Long
+				|| value instanceof Boolean || value instanceof Double || value instanceof byte[];
+	}
+	
+	private static byte[] writeContent(CookieHttpSession session) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+		DataOutputStream output = new DataOutputStream(buffer);
+		byte[] id = EncoderUtil.base64Decode(session.getId());
+		writeVarLong(output, id.length);
+		output.write(id);
+		writeVarLong(output, session.getCreationTime());
+		writeVarLong(output, session.getLastAccessedTime());
+		writeVarLong(output, session.getMaxInactiveInterval() + 1L);
+		Map<String, Object> attributes = session.getAttributeMap();
+		writeVarLong(output, attributes.size());
+		for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+			writeBytes(output, entry.getKey().getBytes("UTF-8"));
+			writeValue(output, entry.getValue());
+		}
+		output.flush();
+		return buffer.toByteArray();
+	}
+	
+	private static void readContent(byte[] content, CookieHttpSession session) throws IOException {
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(content));
+		String id = EncoderUtil.base64UrlSafeEncode(readBytes(input));
+		long creationTime = readVarLong(input);
+		long issuedTime = readVarLong(input);
+		int maxInactiveInterval = (int) (readVarLong(input) - 1);
+		long count = readVarLong(input);
+		Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+		for (long i = 0; i < count; i++) {
+			String name = new String(readBytes(input), "UTF-8");
+			attributes.put(name, readValue(input));
+		}
+		if (input.read() != -1) {
+			throw new IOException("trailing bytes");
+		}
+		session.restore(id, creationTime, issuedTime, maxInactiveInterval, attributes);
+	}
+	
+	private static void writeValue(DataOutputStream output, Object value) throws IOException {
+		if (value == null) {
+			output.writeByte(TYPE_NULL);
+		} else if (value instanceof String) {
+			output.writeByte(TYPE_STRING);
+			writeBytes(output, ((String) value).getBytes("UTF-8"));
+		} else if (value instanceof Integer) {
+			output.writeByte(TYPE_INTEGER);
+			writeVarLong(output, zigZag(((Integer) value).longValue()));
+		} else if (value instanceof Long) {
+			output.writeByte(TYPE_LONG);
+			writeVarLong(output, zigZag(((Long) value).longValue()));
+		} else if (value instanceof Boolean) {
+			output.writeByte(((Boolean) value).booleanValue() ? TYPE_TRUE : TYPE_FALSE);
+		} else if (value instanceof Double) {
+			output.writeByte(TYPE_DOUBLE);
+			output.writeDouble(((Double) value).doubleValue());
+		} else if (value instanceof byte[]) {
+			output.writeByte(TYPE_BYTES);
+			writeBytes(output, (byte[]) value);
+		} else {
+			throw new IOException(value.getClass().getName() + " can not be stored in a cookie session");
+		}
+	}
+	
+	private static Object readValue(DataInputStream input) throws IOException {
+		int type = input.readUnsignedByte();
+		switch (type) {
+			case TYPE_NULL:
+				return null;
+			case TYPE_STRING:
+				return new String(readBytes(input), "UTF-8");
+			case TYPE_INTEGER:
+				return Integer.valueOf((int) unZigZag(readVarLong(input)));
+			case TYPE_LONG:
+				return Long.valueOf(unZigZag(readVarLong(input)));
+			case TYPE_TRUE:
+				return Boolean.TRUE;
+			case TYPE_FALSE:
+				return Boolean.FALSE;
+			case TYPE_DOUBLE:
+				return Double.valueOf(input.readDouble());
+			case TYPE_BYTES:
+				return readBytes(input);
+			default:
+				throw new IOException("unknown type " + type);
+		}
+	}
+	
+	private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+		writeVarLong(output, bytes.length);
+		output.write(bytes);
+	}
+	
+	private static byte[] readBytes(DataInputStream input) throws IOException {
+		long length = readVarLong(input);
+		if (length > input.available()) {
+			throw new EOFException();
+		}
+		byte[] bytes = new byte[(int) length];
+		input.readFully(bytes);
+		return bytes;
+	}
+	
+	/**
+	 * 每个字节保存 7 位, 最高位表示后面还有字节.
+	 */
+	private static void writeVarLong(DataOutputStream output, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			output.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		output.writeByte((int) value);
+	}
+	
+	private static long readVarLong(DataInputStream input) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = input.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("malformed varint");
+	}
+	
+	private static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+	
+	private static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+	private static byte[] sign(SecretKeySpec key, byte[] data, int length) {
+		Mac mac = MAC.get();
+		try {
+			mac.init(key);
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException("Unexpected Checked Exception.", e);
+		}
+		mac.update(data, 0, length);
+		return mac.doFinal();
+	}
+	
+	/**
+	 * 比较 mac 的前 {@link #MAC_LENGTH} 个字节与 token 中从 offset 开始的字节, 耗时与内容无关.
+	 */
+	private static boolean equals(byte[] mac, byte[] token, int offset) {
+		int result = 0;
+		for (int i = 0; i < MAC_LENGTH; i++) {
+			result |= mac[i] ^ token[offset + i];
+		}
+		return result == 0;
+	}
+}
@@ -0,0 +1,226 @@
+/*
+ * CookieSessionRequestWrapper.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.web.util.session;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cn.raytrend.utopiaframework.web.util.cookie.CookieUtil;
+
+/**
+ * 用 {@link CookieHttpSession} 代替容器的 {@link HttpSession} 的请求包装器. 第一次调用 getSession 时才读取和校验 cookie,
+ * 没有调用过 getSession 的请求不会解析也不会写入 cookie.
+ * 
+ * @author zhouych
+ * @see cn.raytrend.utopiaframework.web.filter.CookieSessionFilter
+ */
+public class CookieSessionRequestWrapper extends HttpServletRequestWrapper {
+	
+	private static final Logger logger = LoggerFactory.getLogger(CookieSessionRequestWrapper.class);
+	
+	/**
+	 * cookie 的最大长度, 超过时浏览器可能会丢弃
+	 */
+	private static final int MAX_COOKIE_LENGTH = 4000;
+	
+	private final ServletContext servletContext;
+	
+	private final CookieSessionCodec codec;
+	
+	private final String cookieName;
+	
+	private final String cookiePath;
+	
+	private final boolean secure;
+	
+	private final int maxInactiveInterval;
+	
+	private CookieHttpSession session;
+	
+	private boolean loaded;
+	
+	/**
+	 * 请求中是否带有有效的 session cookie
+	 */
+	private boolean requestedSessionIdValid;
+	
+	private String requestedSessionId;
+	
+	private boolean committed;
+	
+	/**
+	 * @param request
+	 * @param servletContext
+	 * @param codec
+	 * @param cookieName
+	 * @param cookiePath
+	 * @param secure
+	 *            是否只通过 HTTPS 发送 cookie
+	 * @param maxInactiveInterval
+	 *            新 session 的最大不活动时间, 以秒为单位, 小于等于 0 表示不过期
+	 */
+	public CookieSessionRequestWrapper(HttpServletRequest request, ServletContext servletContext,
+			CookieSessionCodec codec, String cookieName, String cookiePath, boolean secure, int maxInactiveInterval) {
+		super(request);
+		this.servletContext = servletContext;
+		this.codec = codec;
+		this.cookieName = cookieName;
+		this.cookiePath = cookiePath;
+		this.secure = secure;
+		this.maxInactiveInterval = maxInactiveInterval;
+	}
+	
+	@Override
+	public HttpSession getSession() {
+		return getSession(true);
+	}
+	
+	@Override
+	public HttpSession getSession(boolean create) {
+		load();
+		if (session != null && !session.isInvalidated()) {
+			return session;
+		}
+		if (!create) {
+			return null;
+		}
+		if (committed) {
+			throw new IllegalStateException("cannot create a session after the response has been committed");
+		}
+		if (session == null) {
+			session = new CookieHttpSession(servletContext, maxInactiveInterval);
+		}
+		session.create();
+		session.setMaxInactiveInterval(maxInactiveInterval);
+		return session;
+	}
+	
+	@Override
+	public String getRequestedSessionId() {
+		load();
+		return requestedSessionId;
+	}
+	
+	@Override
+	public boolean isRequestedSessionIdValid() {
+		load();
+		return requestedSessionIdValid && session != null && !session.isInvalidated()
+				&& session.getId().equals(requestedSessionId);
+	}
+	
+	@Override
+	public boolean isRequestedSessionIdFromCookie() {
+		return getRequestedSessionId() != null;
+	}
+	
+	@Override
+	public boolean isRequestedSessionIdFromURL() {
+		return false;
+	}
+	
+	@Override
+	@Deprecated
+	public boolean isRequestedSessionIdFromUrl() {
+		return false;
+	}
+	
+	/**
+	 * 在响应提交之前写入 cookie: session 被修改过, 或者距离上次写入已经超过最大不活动时间的一半(延长有效期)时写入, session
+	 * 被 invalidate 时删除 cookie, 否则什么都不做. 只有第一次调用有效.
+	 * 
+	 * @param response
+	 *            原始的响应
+	 */
+	public void commitSession(HttpServletResponse response) {
+		if (committed) {
+			return;
+		}
+		committed = true;
+		if (session == null) {
+			return;
+		}
+		if (session.isInvalidated()) {
+			if (requestedSessionIdValid || getCookieValue() != null) {
+				response.addHeader("Set-Cookie", buildCookieHeader("", 0));
+			}
+			return;
+		}
+		long now = System.currentTimeMillis();
+		int interval = session.getMaxInactiveInterval();
+		boolean refresh = interval > 0 && now - session.getLastAccessedTime() > interval * 500L;
+		if (!session.isDirty() && !refresh) {
+			return;
+		}
+		session.markSaved(now);
+		String value = codec.encode(session);
+		if (value.length() + cookieName.length() > MAX_COOKIE_LENGTH) {
+			logger.warn("session {} is {} bytes encoded, too large for a cookie, not saved", session.getId(),
+					value.length());
+			return;
+		}
+		response.addHeader("Set-Cookie", buildCookieHeader(value, -1));
+	}
+	
+	/**
+	 * 响应提交之后 session 是否又被修改过, 这些修改不会被保存.
+	 */
+	public boolean isModifiedAfterCommit() {
+		return committed && session != null && session.isDirty();
+	}
+	
+	private void load() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		String value = getCookieValue();
+		if (value == null) {
+			return;
+		}
+		CookieHttpSession restored = new CookieHttpSession(servletContext, maxInactiveInterval);
+		if (!codec.decode(value, restored)) {
+			logger.debug("invalid session cookie ignored");
+			return;
+		}
+		requestedSessionId = restored.getId();
+		if (restored.isExpired(System.currentTimeMillis())) {
+			return;
+		}
+		requestedSessionIdValid = true;
+		session = restored;
+	}
+	
+	private String getCookieValue() {
+		Cookie cookie = CookieUtil.readCookie((HttpServletRequest) getRequest(), cookieName);
+		return cookie != null ? cookie.getValue() : null;
+	}
+	
+	/**
+	 * Servlet 2.5 的 {@link Cookie} 不支持 HttpOnly, 所以直接拼接 Set-Cookie.
+	 */
+	private String buildCookieHeader(String value, int maxAge) {
+		StringBuilder header = new StringBuilder(cookieName.length() + value.length() + 64);
+		header.append(cookieName).append('=').append(value).append("; Path=").append(cookiePath);
+		if (maxAge >= 0) {
+			header.append("; Max-Age=").append(maxAge);
+			if (maxAge == 0) {
+				header.append("; Expires=Thu, 01 Jan 1970 00:00:00 GMT");
+			}
+		}
+		if (secure) {
+			header.append("; Secure");
+		}
+		header.append("; HttpOnly");
+		return header.toString();
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * CookieSessionResponseWrapper.java
+ * 
+ * Created on 19/10/2026
+ */
+package cn.raytrend.utopiaframework.web.util.session;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * 在响应开始输出内容之前写入 session cookie 的响应包装器. 获取输出流, 重定向, 发送错误以及 flushBuffer 时先调用
+ * {@link CookieSessionRequestWrapper#commitSession(HttpServletResponse)}, 之后对 session 的修改不会被保存.
+ * 
+ * @author zhouych
+ * @see CookieSessionRequestWrapper
+ */
+public class CookieSessionResponseWrapper extends HttpServletResponseWrapper {
+	
+	private final CookieSessionRequestWrapper request;
+	
+	public CookieSessionResponseWrapper(HttpServletResponse response, CookieSessionRequestWrapper request) {
+		super(response);
+		this.request = request;
+	}
+	
+	@Override
+	public ServletOutputStream getOutputStream() throws IOException {
+		commitSession();
+		return super.getOutputStream();
+	}
+	
+	@Override
+	public PrintWriter getWriter() throws IOException {
+		commitSession();
+		return super.getWriter();
+	}
+	
+	@Override
+	public void sendRedirect(String location) throws IOException {
+		commitSession();
+		super.sendRedirect(location);
+	}
+	
+	@Override
+	public void sendError(int sc) throws IOException {
+		commitSession();
+		super.sendError(sc);
+	}
+	
+	@Override
+	public void sendError(int sc, String msg) throws IOException {
+		commitSession();
+		super.sendError(sc, msg);
+	}
+	
+	@Override
+	public void flushBuffer() throws IOException {
+		commitSession();
+		super.flushBuffer();
+	}
+	
+	private void commitSession() {
+		request.commitSession((HttpServletResponse) getResponse());
+	}
+}